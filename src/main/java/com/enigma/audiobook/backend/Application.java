@@ -1,9 +1,11 @@
 package com.enigma.audiobook.backend;
 
 import com.enigma.audiobook.backend.jobs.ContentEncodingScheduler;
+import com.enigma.audiobook.backend.jobs.CountersReconciliation;
 import com.enigma.audiobook.backend.jobs.CuratedDarshanHandler;
 import com.enigma.audiobook.backend.jobs.CuratedFeedCleanup;
 import com.enigma.audiobook.backend.jobs.CuratedFeedHandler;
+import com.enigma.audiobook.backend.jobs.UploadSessionCleanup;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
@@ -20,6 +22,10 @@ public class Application {
     CuratedFeedHandler curatedFeedHandler;
     @Autowired
     CuratedFeedCleanup curatedFeedCleanup;
+    @Autowired
+    UploadSessionCleanup uploadSessionCleanup;
+    @Autowired
+    CountersReconciliation countersReconciliation;
 
     @EventListener(ApplicationReadyEvent.class)
     public void onApplicationStarted() {
@@ -32,8 +38,8 @@ public class Application {
         curatedDarshanHandler.run();
     }
 
-    // every day at 10pm
-    @Scheduled(cron = "0 0 22 * * ?", scheduler = "appJobsScheduler")
+    // rescores the posts with new views since the previous run
+    @Scheduled(fixedDelayString = "${feed-config.rescoringDelayMs:300000}", scheduler = "appJobsScheduler")
     public void runCuratedFeed() {
         curatedFeedHandler.run();
     }
@@ -43,4 +49,16 @@ public class Application {
         curatedFeedCleanup.run();
     }
 
+    // every hour, aborts the multipart uploads of the expired upload sessions
+    @Scheduled(cron = "0 30 * * * ?", scheduler = "appJobsScheduler")
+    public void runUploadSessionCleanup() {
+        uploadSessionCleanup.run();
+    }
+
+    // every day at 3am, recounts the follower and post counters
+    @Scheduled(cron = "0 0 3 * * ?", scheduler = "appJobsScheduler")
+    public void runCountersReconciliation() {
+        countersReconciliation.run();
+    }
+
 }
@@ -11,17 +11,14 @@ import com.enigma.audiobook.backend.models.requests.UploadInitReq;
 import com.enigma.audiobook.backend.models.responses.UploadCompletionRes;
 import com.enigma.audiobook.backend.models.responses.UploadFileInitRes;
 import com.enigma.audiobook.backend.models.responses.UploadInitRes;
+import com.enigma.audiobook.backend.proxies.FileRegionEntity;
 import com.enigma.audiobook.backend.proxies.RestClient;
 import com.enigma.audiobook.backend.utils.SerDe;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.util.Pair;
 import org.apache.http.NameValuePair;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -30,6 +27,9 @@ public class S3MPUClientMain {
     static RestClient restClient = new RestClient();
     static SerDe serDe = new SerDe();
     static ExecutorService executorService = Executors.newFixedThreadPool(5);
+    static final int CONCURRENT_PART_UPLOADS = 5;
+    static final int MAX_PART_UPLOAD_ATTEMPTS = 4;
+    static final long PART_UPLOAD_BASE_BACKOFF_MS = 500;
 
     public static void main(String[] args) {
         String filePath = args[0];
@@ -86,96 +86,84 @@ public class S3MPUClientMain {
         return response;
     }
 
+    /**
+     * Uploads the parts straight from their file regions, keeping up to CONCURRENT_PART_UPLOADS parts in flight:
+     * the next part starts as soon as any one completes.
+     */
     public static List<S3MPUCompletedPart> uploadParts(S3MPUPreSignedUrlsResponse s3MPUPreSignedUrlsResponse, File file) {
         long chunkSize = s3MPUPreSignedUrlsResponse.getChunkSize();
         long totalNumOfParts = s3MPUPreSignedUrlsResponse.getTotalNumOfParts();
         Map<Integer, String> partNumToUrl = s3MPUPreSignedUrlsResponse.getPartNumToUrl();
 
+        long fileLength = file.length();
+        long expectedNumOfParts = (fileLength + chunkSize - 1) / chunkSize;
+        if (totalNumOfParts != expectedNumOfParts) {
+            throw new IllegalStateException(String.format("parts count is different, fileLength:%s, chunkSize:%s, totalParts:%s",
+                    fileLength, chunkSize, totalNumOfParts));
+        }
 
-        int concurrentPacketUploads = 3;
-        List<Future<S3MPUCompletedPart>> packets = new ArrayList<>();
+        CompletionService<S3MPUCompletedPart> completionService = new ExecutorCompletionService<>(executorService);
         List<S3MPUCompletedPart> completedParts = new ArrayList<>();
-        int partNum = 1;
-
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buffer = new byte[(int) chunkSize];
-            int len;
-            while ((len = fis.read(buffer)) > 0) {
-                Pair<Integer, byte[]> pair = new Pair<>(partNum++, Arrays.copyOf(buffer, len));
-
-                // add to futures of uploads
-                Future<S3MPUCompletedPart> s3MPUCompletedPartFuture = uploadPart(pair, partNumToUrl);
-                packets.add(s3MPUCompletedPartFuture);
-
-                if (packets.size() == concurrentPacketUploads) {
-                    // wait for completion
-                    completedParts.addAll(waitForCompletion(packets));
-                    packets.clear();
+        int nextPartNum = 1;
+        int inFlightParts = 0;
+        try {
+            while (nextPartNum <= totalNumOfParts || inFlightParts > 0) {
+                while (inFlightParts < CONCURRENT_PART_UPLOADS && nextPartNum <= totalNumOfParts) {
+                    long offset = (nextPartNum - 1) * chunkSize;
+                    long length = Math.min(chunkSize, fileLength - offset);
+                    completionService.submit(
+                            new UploadPartCallable(nextPartNum, file, offset, length, partNumToUrl.get(nextPartNum)));
+                    nextPartNum++;
+                    inFlightParts++;
                 }
-            }
-            if (!packets.isEmpty()) {
-                // wait for completion
-                completedParts.addAll(waitForCompletion(packets));
-                packets.clear();
-            }
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
 
-        if (totalNumOfParts != partNum - 1 || completedParts.size() != totalNumOfParts) {
-            throw new IllegalStateException(String.format("parts count is different, partNum:%s, totalParts:%s, completeParts:%s",
-                    partNum - 1, totalNumOfParts, completedParts));
-        }
-        return completedParts;
-    }
-
-    private static List<S3MPUCompletedPart> waitForCompletion(List<Future<S3MPUCompletedPart>> packets) {
-        List<S3MPUCompletedPart> completedParts = new ArrayList<>();
-        for (Future<S3MPUCompletedPart> completedPartFuture : packets) {
-            try {
-                S3MPUCompletedPart completedPart = completedPartFuture.get();
-                completedParts.add(completedPart);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
+                completedParts.add(completionService.take().get());
+                inFlightParts--;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
         }
 
+        completedParts.sort(Comparator.comparingInt(S3MPUCompletedPart::getPartNum));
         return completedParts;
     }
 
-    private static Future<S3MPUCompletedPart> uploadPart(Pair<Integer, byte[]> partNumAndData, Map<Integer, String> partNumToUrl) {
-        return executorService.submit(
-                new UploadPartCallable(
-                        partNumAndData.getKey(),
-                        partNumAndData.getValue(),
-                        partNumToUrl.get(partNumAndData.getKey())));
-
-    }
-
     @Data
     public static class UploadPartCallable implements Callable<S3MPUCompletedPart> {
         final int partNum;
-        final byte[] data;
+        final File file;
+        final long offset;
+        final long length;
         final String url;
 
         @Override
         public S3MPUCompletedPart call() throws Exception {
-            // TODO: add retries
-            RestClient.HeaderAndEntity response = restClient.doPut(url, data);
-            Optional<String> ETag = response.getHeaders().stream().filter(header -> header.getName().equals("ETag"))
-                    .map(NameValuePair::getValue)
-                    .findFirst();
-
-            S3MPUCompletedPart completedPart = new S3MPUCompletedPart();
-            completedPart.setPartNum(partNum);
-            completedPart.setSize(data.length);
-            completedPart.setETag(ETag.orElseThrow(() -> new IllegalStateException("no etag found from upload")));
-
-            return completedPart;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    RestClient.HeaderAndEntity response = restClient.doPut(url, new FileRegionEntity(file, offset, length));
+                    Optional<String> ETag = response.getHeaders().stream().filter(header -> header.getName().equals("ETag"))
+                            .map(NameValuePair::getValue)
+                            .findFirst();
+
+                    S3MPUCompletedPart completedPart = new S3MPUCompletedPart();
+                    completedPart.setPartNum(partNum);
+                    completedPart.setSize(length);
+                    completedPart.setETag(ETag.orElseThrow(() -> new IllegalStateException("no etag found from upload")));
+
+                    return completedPart;
+                } catch (RuntimeException e) {
+                    if (attempt == MAX_PART_UPLOAD_ATTEMPTS) {
+                        throw e;
+                    }
+                    long backoffMs = PART_UPLOAD_BASE_BACKOFF_MS * (1L << (attempt - 1)) +
+                            ThreadLocalRandom.current().nextLong(PART_UPLOAD_BASE_BACKOFF_MS);
+                    log.warn("unable to upload part:{}, attempt:{}, retrying in:{}ms", partNum, attempt, backoffMs, e);
+                    Thread.sleep(backoffMs);
+                }
+            }
         }
     }
 
@@ -1,9 +1,12 @@
 package com.enigma.audiobook.backend.aws;
 
 import com.enigma.audiobook.backend.aws.models.S3MPUCompletedPart;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
@@ -11,6 +14,11 @@ import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequ
 import software.amazon.awssdk.services.s3.presigner.model.PresignedUploadPartRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileDownload;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileUpload;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
 
 import java.io.File;
 import java.net.URI;
@@ -20,16 +28,38 @@ import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Object transfers (getObject, putObject) go through the CRT based async client, which splits large objects
+ * into ranged GETs and multipart PUTs run concurrently, buffering at most a bounded number of parts in
+ * memory. The other requests use the sync client.
+ */
 @Component
 @Slf4j
 public class S3Proxy {
     private final S3Client s3Client;
     private final S3Presigner s3Presigner;
+    private final S3AsyncClient s3CrtClient;
+    private final S3TransferManager transferManager;
 
-    public S3Proxy() {
+    public S3Proxy(@Value("${s3-config.transferPartSizeMb:8}") long transferPartSizeMb,
+                   @Value("${s3-config.transferMaxConcurrency:64}") int transferMaxConcurrency,
+                   @Value("${s3-config.transferTargetThroughputGbps:5}") double transferTargetThroughputGbps) {
         this.s3Client = S3Client.builder().region(Region.AP_SOUTH_1)
                 .build();
         this.s3Presigner = S3Presigner.builder().region(Region.AP_SOUTH_1).build();
+        this.s3CrtClient = S3AsyncClient.crtBuilder()
+                .region(Region.AP_SOUTH_1)
+                .minimumPartSizeInBytes(transferPartSizeMb * 1024 * 1024)
+                .maxConcurrency(transferMaxConcurrency)
+                .targetThroughputInGbps(transferTargetThroughputGbps)
+                .build();
+        this.transferManager = S3TransferManager.builder().s3Client(s3CrtClient).build();
+    }
+
+    @PreDestroy
+    public void close() {
+        transferManager.close();
+        s3CrtClient.close();
     }
 
 
@@ -177,8 +207,13 @@ public class S3Proxy {
 
         contentType.ifPresent(putObjectRequest::contentType);
 
-        PutObjectResponse response = s3Client.putObject(putObjectRequest.build(), Path.of(file.toURI()));
-        log.info("added object to bucket:{}, key:{}, eTag:{}", bucket, objectKey, response.eTag());
+        UploadFileRequest uploadFileRequest =
+                UploadFileRequest.builder()
+                        .putObjectRequest(putObjectRequest.build())
+                        .source(Path.of(file.toURI()))
+                        .build();
+        CompletedFileUpload upload = transferManager.uploadFile(uploadFileRequest).completionFuture().join();
+        log.info("added object to bucket:{}, key:{}, eTag:{}", bucket, objectKey, upload.response().eTag());
     }
 
     public void getObject(String s3ObjectUri, URI fileOutputLocation) {
@@ -197,7 +232,13 @@ public class S3Proxy {
                         .bucket(bucket)
                         .key(objectKey)
                         .build();
-        GetObjectResponse response = s3Client.getObject(getObjectRequest, Path.of(fileOutputLocation));
+        DownloadFileRequest downloadFileRequest =
+                DownloadFileRequest.builder()
+                        .getObjectRequest(getObjectRequest)
+                        .destination(Path.of(fileOutputLocation))
+                        .build();
+        CompletedFileDownload download = transferManager.downloadFile(downloadFileRequest).completionFuture().join();
+        log.info("got object from bucket:{}, key:{}, size:{}", bucket, objectKey, download.response().contentLength());
     }
 
     public void deleteObject(String bucket, String objectKey) {
@@ -2,25 +2,37 @@ package com.enigma.audiobook.backend.aws;
 
 import com.enigma.audiobook.backend.aws.models.*;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.util.Pair;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 @Slf4j
 @Component
 public class S3UploadHandler {
 
+    private static final long ONE_MB = 1024 * 1024;
+    private static final long SINGLE_PART_MAX_SIZE = 16 * ONE_MB;
+    // s3 minimum for all the parts but the last
+    private static final long MIN_CHUNK_SIZE = 5 * ONE_MB;
+    public static final int MAX_PRESIGNED_PARTS_PER_WINDOW = 100;
+    private static final ExecutorService presignExecutor =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
     private final S3Proxy s3Proxy;
+    private final int targetNumOfParts;
+    private final int initialPresignedParts;
 
-    public S3UploadHandler(S3Proxy s3Proxy) {
+    public S3UploadHandler(S3Proxy s3Proxy,
+                           @Value("${s3-config.uploadTargetNumOfParts:100}") int targetNumOfParts,
+                           @Value("${s3-config.uploadInitialPresignedParts:100}") int initialPresignedParts) {
         this.s3Proxy = s3Proxy;
+        this.targetNumOfParts = targetNumOfParts;
+        this.initialPresignedParts = initialPresignedParts;
     }
 
     public S3MPUInitiationResponse initiateMultipartUploadRequest(String bucket,
@@ -79,11 +91,13 @@ public class S3UploadHandler {
         return response;
     }
 
+    /**
+     * Presigns the first window of parts, the rest are issued on demand with generatePreSignedS3UrlsWindow.
+     */
     public S3MPUPreSignedUrlsResponse generatePreSignedS3Urls(String bucket,
                                                               String objectKey,
                                                               String uploadId,
                                                               long totalSize,
-                                                              long chunkSize,
                                                               long allowedTotalSize) {
         if (totalSize > allowedTotalSize) {
             S3MPUPreSignedUrlsResponse response = new S3MPUPreSignedUrlsResponse();
@@ -92,27 +106,73 @@ public class S3UploadHandler {
             return response;
         }
 
-        AtomicLong numOfChunks = new AtomicLong(totalSize / chunkSize);
-        long lastChunkSize = totalSize % chunkSize;
-        if (lastChunkSize > 0) {
-            // last chunk
-            numOfChunks.incrementAndGet();
+        return generatePreSignedS3UrlsWindow(bucket, objectKey, uploadId, totalSize, getChunkSize(totalSize),
+                1, initialPresignedParts);
+    }
+
+    /**
+     * @return urls of the parts from fromPartNum, at most count and MAX_PRESIGNED_PARTS_PER_WINDOW of them
+     * @throws IllegalArgumentException if fromPartNum is not a part of the upload or count is not positive
+     */
+    public S3MPUPreSignedUrlsResponse generatePreSignedS3UrlsWindow(String bucket,
+                                                                    String objectKey,
+                                                                    String uploadId,
+                                                                    long totalSize,
+                                                                    long chunkSize,
+                                                                    int fromPartNum,
+                                                                    int count) {
+        List<Integer> partNums = getPartNumsWindow(getNumOfChunks(totalSize, chunkSize), fromPartNum, count);
+        return generatePreSignedS3Urls(bucket, objectKey, uploadId, totalSize, chunkSize, partNums);
+    }
+
+    /**
+     * @return part numbers from fromPartNum, at most count and MAX_PRESIGNED_PARTS_PER_WINDOW of them and none
+     * past the last part
+     * @throws IllegalArgumentException if fromPartNum is not a part of the upload or count is not positive
+     */
+    public List<Integer> getPartNumsWindow(long numOfChunks, int fromPartNum, int count) {
+        if (fromPartNum < 1 || fromPartNum > numOfChunks) {
+            throw new IllegalArgumentException(
+                    String.format("part:%s out of the upload parts:1-%s", fromPartNum, numOfChunks));
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("count of parts not positive:" + count);
         }
 
-        Map<Integer, String> partNumToUrl =
-                IntStream.range(1, (int) numOfChunks.get() + 1) // exclusive upper bound
-                        .mapToObj(partNum -> {
-                                    long contentLength = (partNum != numOfChunks.get()) ? chunkSize : lastChunkSize;
-                                    String url =
-                                            s3Proxy.preSignMultipartUploadPartsRequests(bucket, objectKey, uploadId,
-                                                    partNum, contentLength);
-                                    return new Pair<>(partNum, url);
-                                }
-                        ).collect(Collectors.toMap(Pair::getKey, Pair::getValue));
+        int to = (int) Math.min(numOfChunks, (long) fromPartNum + Math.min(count, MAX_PRESIGNED_PARTS_PER_WINDOW) - 1);
+        List<Integer> partNums = new ArrayList<>();
+        for (int partNum = fromPartNum; partNum <= to; partNum++) {
+            partNums.add(partNum);
+        }
+        return partNums;
+    }
+
+    /**
+     * @return urls of the given parts only, the total number of parts and the chunk size are of the whole upload
+     */
+    public S3MPUPreSignedUrlsResponse generatePreSignedS3Urls(String bucket,
+                                                              String objectKey,
+                                                              String uploadId,
+                                                              long totalSize,
+                                                              long chunkSize,
+                                                              List<Integer> partNums) {
+        long numOfChunks = getNumOfChunks(totalSize, chunkSize);
+        long lastChunkSize = totalSize - (numOfChunks - 1) * chunkSize;
+
+        // signing is cpu bound, the parts are signed in parallel
+        Map<Integer, CompletableFuture<String>> partNumToUrlFuture = new LinkedHashMap<>();
+        for (int partNum : partNums) {
+            long contentLength = (partNum != numOfChunks) ? chunkSize : lastChunkSize;
+            partNumToUrlFuture.put(partNum, CompletableFuture.supplyAsync(() ->
+                    s3Proxy.preSignMultipartUploadPartsRequests(bucket, objectKey, uploadId,
+                            partNum, contentLength), presignExecutor));
+        }
+        Map<Integer, String> partNumToUrl = new HashMap<>();
+        partNumToUrlFuture.forEach((partNum, url) -> partNumToUrl.put(partNum, url.join()));
 
         S3MPUPreSignedUrlsResponse response = new S3MPUPreSignedUrlsResponse();
         response.setChunkSize(chunkSize);
-        response.setTotalNumOfParts(numOfChunks.get());
+        response.setTotalNumOfParts(numOfChunks);
         response.setPartNumToUrl(partNumToUrl);
 
         response.setRequestStatus(MPURequestStatus.COMPLETED);
@@ -121,6 +181,27 @@ public class S3UploadHandler {
         return response;
     }
 
+    public long getNumOfChunks(long totalSize, long chunkSize) {
+        return Math.max(1, (totalSize + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * One part up to SINGLE_PART_MAX_SIZE, above it parts grow with the size so that there are about
+     * targetNumOfParts of them, in whole MBs and not below the S3 minimum part size.
+     */
+    public long getChunkSize(long totalSize) {
+        if (totalSize <= SINGLE_PART_MAX_SIZE) {
+            return Math.max(1, totalSize);
+        }
+        long chunkSize = (totalSize + targetNumOfParts - 1) / targetNumOfParts;
+        chunkSize = ((chunkSize + ONE_MB - 1) / ONE_MB) * ONE_MB;
+        return Math.max(MIN_CHUNK_SIZE, chunkSize);
+    }
+
+    public List<S3MPUCompletedPart> listUploadedParts(String bucket, String objectKey, String uploadId) {
+        return s3Proxy.listMPUParts(bucket, objectKey, uploadId);
+    }
+
     public void abort(String bucket,
                       String objectKey,
                       String uploadId) {
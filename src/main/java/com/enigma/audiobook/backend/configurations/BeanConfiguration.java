@@ -2,10 +2,18 @@ package com.enigma.audiobook.backend.configurations;
 
 import com.enigma.audiobook.backend.dao.*;
 import com.enigma.audiobook.backend.models.MandirAuth;
+import com.enigma.audiobook.backend.service.InboxFeedPaginationKey;
+import com.enigma.audiobook.backend.utils.JacksonBsonCodecProvider;
+import com.enigma.audiobook.backend.utils.SerDe;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -23,7 +31,20 @@ public class BeanConfiguration {
 
     @Bean
     public MongoClient mongoClient(@Value("${mongo.url}") String url) {
-        return MongoClients.create(url);
+        // models are decoded directly from BSON, see JacksonBsonCodecProvider
+        CodecRegistry codecRegistry = CodecRegistries.fromRegistries(
+                MongoClientSettings.getDefaultCodecRegistry(),
+                CodecRegistries.fromProviders(new JacksonBsonCodecProvider(new SerDe())));
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(url))
+                .codecRegistry(codecRegistry)
+                .build();
+        return MongoClients.create(settings);
+    }
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer feedPaginationKeyCustomizer() {
+        return InboxFeedPaginationKey::registerDeserializer;
     }
 
     @Bean
@@ -52,13 +73,20 @@ public class BeanConfiguration {
     }
 
     @Bean
-    public FollowingsDao followingsDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
-        return new FollowingsDao(mongoClient, database);
+    public FollowingsDao followingsDao(MongoClient mongoClient, @Value("${mongo.database}") String database,
+                                       CountersDao countersDao) {
+        return new FollowingsDao(mongoClient, database, countersDao);
     }
 
     @Bean
-    public PostsDao postsDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
-        return new PostsDao(mongoClient, database);
+    public PostsDao postsDao(MongoClient mongoClient, @Value("${mongo.database}") String database,
+                             CountersDao countersDao) {
+        return new PostsDao(mongoClient, database, countersDao);
+    }
+
+    @Bean
+    public CountersDao countersDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
+        return new CountersDao(mongoClient, database);
     }
 
     @Bean
@@ -106,6 +134,26 @@ public class BeanConfiguration {
         return new DarshanViewsDao(mongoClient, database);
     }
 
+    @Bean
+    public UserFeedInboxDao userFeedInboxDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
+        return new UserFeedInboxDao(mongoClient, database);
+    }
+
+    @Bean
+    public CuratedFeedCursorDao curatedFeedCursorDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
+        return new CuratedFeedCursorDao(mongoClient, database);
+    }
+
+    @Bean
+    public UploadSessionDao uploadSessionDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
+        return new UploadSessionDao(mongoClient, database);
+    }
+
+    @Bean
+    public SeenPostsDao seenPostsDao(MongoClient mongoClient, @Value("${mongo.database}") String database) {
+        return new SeenPostsDao(mongoClient, database);
+    }
+
     @Bean
     @Qualifier(value = "appJobsScheduler")
     public ScheduledExecutorService appJobsScheduler() {
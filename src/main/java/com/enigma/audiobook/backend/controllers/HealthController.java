@@ -1,15 +1,36 @@
 package com.enigma.audiobook.backend.controllers;
 
+import com.enigma.audiobook.backend.dao.GodDao;
+import com.enigma.audiobook.backend.dao.InfluencerDao;
+import com.enigma.audiobook.backend.dao.MandirDao;
+import com.enigma.audiobook.backend.jobs.ContentEncodingScheduler;
+import com.enigma.audiobook.backend.jobs.EncodingLane;
 import com.enigma.audiobook.backend.service.OneGodService;
+import com.google.common.cache.CacheStats;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @RestController
 public class HealthController {
 
     @Autowired
     OneGodService oneGodService;
 
+    @Autowired
+    GodDao godDao;
+
+    @Autowired
+    MandirDao mandirDao;
+
+    @Autowired
+    InfluencerDao influencerDao;
+
+    @Autowired
+    ContentEncodingScheduler contentEncodingScheduler;
+
     @GetMapping("/health")
     @ResponseBody
     public String health() {
@@ -22,4 +43,32 @@ public class HealthController {
             @RequestHeader("registration-token") String registrationToken) {
         oneGodService.initCollsAndIndexes(registrationToken);
     }
+
+    @GetMapping("/health/entity-caches")
+    @ResponseBody
+    public Map<String, Map<String, Object>> entityCacheStats() {
+        Map<String, Map<String, Object>> statsByCache = new LinkedHashMap<>();
+        statsByCache.put("god", toMap(godDao.getCacheStats()));
+        statsByCache.put("mandir", toMap(mandirDao.getCacheStats()));
+        statsByCache.put("influencer", toMap(influencerDao.getCacheStats()));
+        return statsByCache;
+    }
+
+    @GetMapping("/health/encoding-lanes")
+    @ResponseBody
+    public Map<ContentEncodingScheduler.Lane, EncodingLane.LaneStats> encodingLaneStats() {
+        return contentEncodingScheduler.getLaneStats();
+    }
+
+    private static Map<String, Object> toMap(CacheStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("loadCount", stats.loadCount());
+        map.put("loadExceptionCount", stats.loadExceptionCount());
+        map.put("averageLoadPenaltyMs", stats.averageLoadPenalty() / 1_000_000);
+        map.put("evictionCount", stats.evictionCount());
+        return map;
+    }
 }
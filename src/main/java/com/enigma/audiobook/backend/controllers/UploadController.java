@@ -5,6 +5,7 @@ import com.enigma.audiobook.backend.aws.S3Proxy;
 import com.enigma.audiobook.backend.aws.S3UploadHandler;
 import com.enigma.audiobook.backend.aws.models.MPURequestStatus;
 import com.enigma.audiobook.backend.aws.models.S3MPUCompletedPart;
+import com.enigma.audiobook.backend.aws.models.S3MPUPreSignedUrlsResponse;
 import com.enigma.audiobook.backend.models.requests.*;
 import com.enigma.audiobook.backend.models.responses.*;
 import com.enigma.audiobook.backend.service.OneGodService;
@@ -95,6 +96,28 @@ public class UploadController {
         return res;
     }
 
+    @GetMapping("/uploads/parts/urls")
+    @ResponseBody
+    public S3MPUPreSignedUrlsResponse getUploadPartUrls(
+            @RequestHeader("registration-token") String registrationToken,
+            @RequestParam("objectKey") String objectKey,
+            @RequestParam("uploadId") String uploadId,
+            @RequestParam("totalSize") long totalSize,
+            @RequestParam("from") int from,
+            @RequestParam("count") int count) {
+        oneGodService.checkValidRegistrationToken(registrationToken);
+        return contentUploadUtils.getPreSignedUrls(objectKey, uploadId, totalSize, from, count);
+    }
+
+    @GetMapping("/uploads/resume")
+    @ResponseBody
+    public UploadFileInitRes resumeUpload(
+            @RequestHeader("registration-token") String registrationToken,
+            @RequestParam("uploadId") String uploadId) {
+        oneGodService.checkValidRegistrationToken(registrationToken);
+        return contentUploadUtils.resumeUpload(uploadId);
+    }
+
     @PostMapping("/uploads/parts")
     @ResponseBody
     public UploadPartsResponse uploadParts(
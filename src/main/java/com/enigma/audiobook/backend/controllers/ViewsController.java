@@ -3,29 +3,163 @@ package com.enigma.audiobook.backend.controllers;
 import com.enigma.audiobook.backend.models.DarshanView;
 import com.enigma.audiobook.backend.models.View;
 import com.enigma.audiobook.backend.service.OneGodService;
+import com.google.common.base.Preconditions;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RestController
 @Slf4j
 public class ViewsController {
+    // views of a batch, clients with more views send them in several batches
+    public static final int MAX_BATCH_SIZE = 500;
 
     @Autowired
     OneGodService oneGodService;
 
+    /**
+     * 503 when the views buffer is full, the client retries the view later.
+     */
     @PostMapping("/views/posts")
     public void addViewForUser(@RequestBody View view) {
         log.info("views request:" + view);
-        oneGodService.addViewForUser(view);
+        checkAccepted(oneGodService.addViewForUser(view));
     }
 
 
+    /**
+     * 503 like addViewForUser.
+     */
     @PostMapping("/views/darshans")
     public void addDarshanViewForUser(@RequestBody DarshanView view) {
         log.info("darshan views request:" + view);
-        oneGodService.addDarshanViewForUser(view);
+        checkAccepted(oneGodService.addDarshanViewForUser(view));
+    }
+
+    /**
+     * 400 for an empty batch, a batch of more than MAX_BATCH_SIZE views or a view with a missing field,
+     * 503 when the views buffer doesn't have room for the whole batch. None of the views of such a batch is
+     * added, the client retries the whole batch on a 503.
+     */
+    @PostMapping("/views/posts/batch")
+    public void addViewsForUser(@RequestBody PostViewsBatchRequest request) {
+        List<View> views = checkedBatch(request::toViews, View::getUserId, View::getPostId);
+        log.debug("views batch request, size:{}", views.size());
+        checkAccepted(badRequestOnInvalid(() -> oneGodService.addViewsForUser(views)));
+    }
+
+    /**
+     * 400 and 503 like addViewsForUser.
+     */
+    @PostMapping("/views/darshans/batch")
+    public void addDarshanViewsForUser(@RequestBody DarshanViewsBatchRequest request) {
+        List<DarshanView> views = checkedBatch(request::toDarshanViews, DarshanView::getUserId,
+                DarshanView::getDarshanId);
+        log.debug("darshan views batch request, size:{}", views.size());
+        checkAccepted(badRequestOnInvalid(() -> oneGodService.addDarshanViewsForUser(views)));
+    }
+
+    private static void checkAccepted(boolean accepted) {
+        if (!accepted) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "views buffer full, retry later");
+        }
+    }
+
+    private static <T> List<T> checkedBatch(Supplier<List<T>> toViews, Function<T, String> userId,
+                                            Function<T, String> id) {
+        return badRequestOnInvalid(() -> {
+            List<T> batch = toViews.get();
+            Preconditions.checkArgument(!batch.isEmpty(), "empty batch");
+            Preconditions.checkArgument(batch.size() <= MAX_BATCH_SIZE, "batch of %s views, max:%s",
+                    batch.size(), MAX_BATCH_SIZE);
+            for (T view : batch) {
+                Preconditions.checkArgument(view != null && userId.apply(view) != null && id.apply(view) != null,
+                        "view with a missing field:%s", view);
+            }
+            return batch;
+        });
+    }
+
+    private static <T> T badRequestOnInvalid(Supplier<T> supplier) {
+        try {
+            return supplier.get();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Either full views, or the views of a single user in columns: the i-th entries of postIds,
+     * viewDurationSecs and totalLengthSecs make a view. Both can be given in the same request.
+     */
+    @Data
+    public static class PostViewsBatchRequest {
+        List<View> views = new ArrayList<>();
+        String userId;
+        List<String> postIds = new ArrayList<>();
+        List<Integer> viewDurationSecs = new ArrayList<>();
+        List<Integer> totalLengthSecs = new ArrayList<>();
+
+        List<View> toViews() {
+            checkColumns(views, userId, postIds, viewDurationSecs, totalLengthSecs);
+            List<View> allViews = new ArrayList<>(views);
+            for (int i = 0; i < postIds.size(); i++) {
+                View view = new View();
+                view.setUserId(userId);
+                view.setPostId(postIds.get(i));
+                view.setViewDurationSec(viewDurationSecs.get(i));
+                view.setTotalLengthSec(totalLengthSecs.get(i));
+                allViews.add(view);
+            }
+            return allViews;
+        }
+    }
+
+    /**
+     * Like PostViewsBatchRequest, with darshanIds as the id column.
+     */
+    @Data
+    public static class DarshanViewsBatchRequest {
+        List<DarshanView> views = new ArrayList<>();
+        String userId;
+        List<String> darshanIds = new ArrayList<>();
+        List<Integer> viewDurationSecs = new ArrayList<>();
+        List<Integer> totalLengthSecs = new ArrayList<>();
+
+        List<DarshanView> toDarshanViews() {
+            checkColumns(views, userId, darshanIds, viewDurationSecs, totalLengthSecs);
+            List<DarshanView> allViews = new ArrayList<>(views);
+            for (int i = 0; i < darshanIds.size(); i++) {
+                DarshanView view = new DarshanView();
+                view.setUserId(userId);
+                view.setDarshanId(darshanIds.get(i));
+                view.setViewDurationSec(viewDurationSecs.get(i));
+                view.setTotalLengthSec(totalLengthSecs.get(i));
+                allViews.add(view);
+            }
+            return allViews;
+        }
+    }
+
+    private static void checkColumns(List<?> views, String userId, List<String> ids, List<Integer> viewDurationSecs,
+                                     List<Integer> totalLengthSecs) {
+        Preconditions.checkArgument(views != null && ids != null && viewDurationSecs != null && totalLengthSecs != null,
+                "null views or columns");
+        Preconditions.checkArgument(ids.isEmpty() || userId != null, "userId is required with the id column");
+        Preconditions.checkArgument(ids.size() == viewDurationSecs.size() && ids.size() == totalLengthSecs.size(),
+                "columns of different sizes, ids:%s, viewDurationSecs:%s, totalLengthSecs:%s",
+                ids.size(), viewDurationSecs.size(), totalLengthSecs.size());
+        Preconditions.checkArgument(!ids.contains(null) && !viewDurationSecs.contains(null) &&
+                !totalLengthSecs.contains(null), "null entries in the columns");
     }
 }
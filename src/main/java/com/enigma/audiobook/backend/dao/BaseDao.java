@@ -1,16 +1,136 @@
 package com.enigma.audiobook.backend.dao;
 
 import com.enigma.audiobook.backend.utils.SerDe;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
+@Slf4j
 public class BaseDao {
     static final SerDe serde = new SerDe();
+    static final String ENCODING_LEASE_TOKEN = "encodingLeaseToken";
+    static final String ENCODING_LEASE_EXPIRY = "encodingLeaseExpiry";
 
     Date getCurrentTime() {
         LocalDateTime ldt = LocalDateTime.now(ZoneId.of(ZoneId.SHORT_IDS.get("IST")));
         return Date.from(ldt.atZone(ZoneId.of(ZoneId.SHORT_IDS.get("IST"))).toInstant());
     }
+
+    /**
+     * entries never leased or whose lease expired, i.e. the node holding it went away
+     */
+    Bson getNoActiveEncodingLeaseFilter() {
+        return Filters.or(
+                Filters.exists(ENCODING_LEASE_EXPIRY, false),
+                Filters.lt(ENCODING_LEASE_EXPIRY, getCurrentTime()));
+    }
+
+    /**
+     * the query of an update made while encoding, the update matches nothing once the lease is lost to another
+     * node. Without a lease token the query is left as is.
+     */
+    Bson withEncodingLease(Bson query, Optional<String> leaseToken) {
+        return leaseToken
+                .map(token -> Filters.and(query, Filters.eq(ENCODING_LEASE_TOKEN, token)))
+                .orElse(query);
+    }
+
+    /**
+     * @return true if this node now holds the encoding lease of the entry, false if another node holds it or
+     * the entry doesn't match the pendingFilter anymore
+     */
+    boolean claimEncodingLease(MongoCollection<Document> collection, String id, Bson pendingFilter,
+                               String leaseToken, long leaseMs) {
+        Bson query = Filters.and(
+                Filters.eq("_id", new ObjectId(id)),
+                pendingFilter,
+                getNoActiveEncodingLeaseFilter());
+        Bson updates = Updates.combine(
+                Updates.set(ENCODING_LEASE_TOKEN, leaseToken),
+                Updates.set(ENCODING_LEASE_EXPIRY, new Date(getCurrentTime().getTime() + leaseMs)));
+
+        try {
+            UpdateResult result = collection.updateOne(query, updates);
+            log.info("Modified document count: " + result.getModifiedCount());
+            return result.getModifiedCount() > 0;
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error: ", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return false if the lease is not held with the leaseToken anymore
+     */
+    boolean extendEncodingLease(MongoCollection<Document> collection, String id, String leaseToken, long leaseMs) {
+        Bson query = Filters.and(
+                Filters.eq("_id", new ObjectId(id)),
+                Filters.eq(ENCODING_LEASE_TOKEN, leaseToken));
+        Bson updates = Updates.set(ENCODING_LEASE_EXPIRY, new Date(getCurrentTime().getTime() + leaseMs));
+
+        try {
+            UpdateResult result = collection.updateOne(query, updates);
+            return result.getMatchedCount() > 0;
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error: ", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    void releaseEncodingLease(MongoCollection<Document> collection, String id, String leaseToken) {
+        Bson query = Filters.and(
+                Filters.eq("_id", new ObjectId(id)),
+                Filters.eq(ENCODING_LEASE_TOKEN, leaseToken));
+        Bson updates = Updates.combine(
+                Updates.unset(ENCODING_LEASE_TOKEN),
+                Updates.unset(ENCODING_LEASE_EXPIRY));
+
+        try {
+            UpdateResult result = collection.updateOne(query, updates);
+            log.info("Modified document count: " + result.getModifiedCount());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error: ", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Change stream of the entries inserted with or updated to the given status, with the current version of
+     * the entries as the full document.
+     */
+    MongoChangeStreamCursor<ChangeStreamDocument<Document>> watchStatus(MongoCollection<Document> collection,
+                                                                        String statusField, String status,
+                                                                        Optional<BsonDocument> resumeToken) {
+        Bson match = Aggregates.match(Filters.or(
+                Filters.and(
+                        Filters.in("operationType", OperationType.INSERT.getValue(), OperationType.REPLACE.getValue()),
+                        Filters.eq("fullDocument." + statusField, status)),
+                Filters.and(
+                        Filters.eq("operationType", OperationType.UPDATE.getValue()),
+                        Filters.eq("updateDescription.updatedFields." + statusField, status))));
+
+        ChangeStreamIterable<Document> changeStream = collection.watch(List.of(match))
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+        resumeToken.ifPresent(changeStream::resumeAfter);
+        return changeStream.cursor();
+    }
 }
@@ -10,10 +10,12 @@ import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.UpdateResult;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.Optional;
 
 import static com.mongodb.client.model.Filters.eq;
@@ -68,6 +70,87 @@ public class CollectionConfigDao extends BaseDao {
         }
     }
 
+    public void updateScoringCheckpoint(Date checkpoint) {
+        MongoCollection<Document> collection = getCollection();
+        Document query = new Document().append("key", "scoringCheckpoint");
+
+        Bson updates = Updates.combine(
+                Updates.set("key", "scoringCheckpoint"),
+                Updates.set("value", checkpoint),
+                Updates.set("updateTime", getCurrentTime())
+        );
+
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        try {
+
+            UpdateResult result = collection.updateOne(query, updates, options);
+
+            log.info("Modified document count: " + result.getModifiedCount());
+            log.info("Upserted id: " + result.getUpsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the time up to which the views have been scored
+     */
+    public Optional<Date> getScoringCheckpoint() {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find(eq("key", "scoringCheckpoint"))
+                .first();
+        if (doc == null) {
+            return Optional.empty();
+        } else {
+            return Optional.of(doc.getDate("value"));
+        }
+    }
+
+    public void updateChangeStreamResumeToken(String streamName, BsonDocument resumeToken) {
+        MongoCollection<Document> collection = getCollection();
+        String key = getChangeStreamResumeTokenKey(streamName);
+        Document query = new Document().append("key", key);
+
+        Bson updates = Updates.combine(
+                Updates.set("key", key),
+                Updates.set("value", resumeToken.toJson()),
+                Updates.set("updateTime", getCurrentTime())
+        );
+
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        try {
+
+            UpdateResult result = collection.updateOne(query, updates, options);
+
+            log.info("Modified document count: " + result.getModifiedCount());
+            log.info("Upserted id: " + result.getUpsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the resume token of the last change processed from the stream
+     */
+    public Optional<BsonDocument> getChangeStreamResumeToken(String streamName) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find(eq("key", getChangeStreamResumeTokenKey(streamName)))
+                .first();
+        if (doc == null) {
+            return Optional.empty();
+        } else {
+            return Optional.of(BsonDocument.parse(doc.getString("value")));
+        }
+    }
+
+    private static String getChangeStreamResumeTokenKey(String streamName) {
+        return "changeStreamResumeToken_" + streamName;
+    }
+
     public void initCollectionAndIndexes() {
         MongoDatabase db = mongoClient.getDatabase(database);
         db.createCollection(COLLECTION_CONFIG_COLLECTION);
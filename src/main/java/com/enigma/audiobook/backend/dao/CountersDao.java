@@ -0,0 +1,185 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.enigma.audiobook.backend.models.FollowingType;
+import com.mongodb.MongoException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.*;
+import com.mongodb.client.result.UpdateResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * Denormalized counts of the entities, read instead of counting the followings and posts on every page view.
+ * A counter only exists once it has been read, it is seeded with a count of the source collection and then
+ * moved with $inc by the writes, see EntityCounters. The increments of a missing counter are dropped, the
+ * seeding count already includes them.
+ */
+@Slf4j
+@Repository
+public class CountersDao extends BaseDao {
+    private final MongoClient mongoClient;
+    private final String database;
+    private static final String COUNTERS_COLLECTION = "counters";
+
+    public CountersDao(MongoClient mongoClient, String database) {
+        this.mongoClient = mongoClient;
+        this.database = database;
+    }
+
+    public Optional<Long> getCount(String entityId, Counter counter) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find(getKeyFilter(entityId, counter)).first();
+        return Optional.ofNullable(doc).map(d -> d.get("value", Number.class).longValue());
+    }
+
+    /**
+     * Creates the counter with the given count, unless it was created meanwhile.
+     */
+    public void seedCount(String entityId, Counter counter, long count) {
+        MongoCollection<Document> collection = getCollection();
+        Bson updates = Updates.combine(
+                Updates.setOnInsert("entityId", new ObjectId(entityId)),
+                Updates.setOnInsert("counter", counter.name()),
+                Updates.setOnInsert("value", count),
+                Updates.setOnInsert("updateTime", getCurrentTime()));
+
+        try {
+            UpdateResult result = collection.updateOne(getKeyFilter(entityId, counter), updates,
+                    new UpdateOptions().upsert(true));
+            log.info("Upserted id: " + result.getUpsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void increment(String entityId, Counter counter, long delta) {
+        MongoCollection<Document> collection = getCollection();
+        Bson updates = Updates.combine(
+                Updates.inc("value", delta),
+                Updates.set("updateTime", getCurrentTime()));
+
+        try {
+            UpdateResult result = collection.updateOne(getKeyFilter(entityId, counter), updates,
+                    new UpdateOptions().upsert(false));
+            log.info("Modified document count: " + result.getModifiedCount());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return true if the count was different
+     */
+    public boolean setCount(String entityId, Counter counter, long count) {
+        MongoCollection<Document> collection = getCollection();
+        Bson query = Filters.and(
+                getKeyFilter(entityId, counter),
+                Filters.ne("value", count));
+        Bson updates = Updates.combine(
+                Updates.set("value", count),
+                Updates.set("updateTime", getCurrentTime()));
+
+        try {
+            UpdateResult result = collection.updateOne(query, updates);
+            return result.getModifiedCount() > 0;
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Pages over all the counters in _id order.
+     */
+    public List<CounterKey> getCounterKeysNext(int limit, Optional<String> lastCounterId) {
+        MongoCollection<Document> collection = getCollection();
+        Bson filter = lastCounterId
+                .map(id -> Filters.gt("_id", new ObjectId(id)))
+                .orElse(new Document());
+
+        FindIterable<Document> docs = collection.find(filter)
+                .projection(Projections.include("entityId", "counter"))
+                .sort(ascending("_id"))
+                .limit(limit);
+
+        List<CounterKey> keys = new ArrayList<>();
+        try (MongoCursor<Document> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                Document doc = iter.next();
+                keys.add(new CounterKey(doc.getObjectId("_id").toHexString(),
+                        doc.getObjectId("entityId").toHexString(),
+                        Counter.valueOf(doc.getString("counter"))));
+            }
+        }
+        return keys;
+    }
+
+    public void initCollectionAndIndexes() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        db.createCollection(COUNTERS_COLLECTION);
+
+        MongoCollection<Document> collection = db.getCollection(COUNTERS_COLLECTION);
+
+        IndexOptions indexOptions = new IndexOptions()
+                .unique(true)
+                .name("entity_id_and_counter_index");
+        String resultCreateIndex = collection.createIndex(Indexes.ascending("entityId", "counter"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+    }
+
+    private static Bson getKeyFilter(String entityId, Counter counter) {
+        return Filters.and(
+                eq("entityId", new ObjectId(entityId)),
+                eq("counter", counter.name()));
+    }
+
+    private MongoCollection<Document> getCollection() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        return db.getCollection(COUNTERS_COLLECTION);
+    }
+
+    public enum Counter {
+        MANDIR_FOLLOWERS,
+        GOD_FOLLOWERS,
+        INFLUENCER_FOLLOWERS,
+        // processed posts from or associated to the influencer
+        INFLUENCER_POSTS;
+
+        public static Counter followersOf(FollowingType followingType) {
+            return switch (followingType) {
+                case MANDIR -> MANDIR_FOLLOWERS;
+                case GOD -> GOD_FOLLOWERS;
+                case INFLUENCER -> INFLUENCER_FOLLOWERS;
+                default -> throw new IllegalStateException("unhandled followingType:" + followingType);
+            };
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class CounterKey {
+        String counterId;
+        String entityId;
+        Counter counter;
+    }
+}
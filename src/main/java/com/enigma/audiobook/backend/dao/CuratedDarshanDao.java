@@ -39,7 +39,7 @@ public class CuratedDarshanDao extends BaseDao {
         MongoCollection<Document> collection = getCollection();
         try {
             // Inserts a sample document describing a movie into the collection
-            InsertOneResult result = collection.insertOne(Document.parse(serde.toJson(curatedDarshan))
+            InsertOneResult result = collection.insertOne(serde.toDocument(curatedDarshan)
                     .append("_id", new ObjectId())
                     .append("createTime", getCurrentTime())
                     .append("updateTime", getCurrentTime())
@@ -55,32 +55,45 @@ public class CuratedDarshanDao extends BaseDao {
 
     public List<CuratedDarshan> getLastNCuratedDarshan(int n) {
         MongoCollection<Document> collection = getCollection();
-        FindIterable<Document> docs = collection.find()
+        FindIterable<CuratedDarshan> docs = collection.find(CuratedDarshan.class)
                 .sort(descending("_id"))
                 .limit(n);
 
         List<CuratedDarshan> curatedDarshans = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<CuratedDarshan> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                curatedDarshans.add(serde.fromJson(doc.toJson(), CuratedDarshan.class));
+                curatedDarshans.add(iter.next());
             }
         }
 
         return curatedDarshans;
     }
 
+    public Optional<String> getLatestCuratedDarshanId() {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find()
+                .projection(Projections.include("_id"))
+                .sort(descending("_id"))
+                .first();
+        if (doc == null) {
+            return Optional.empty();
+        } else {
+            return Optional.of(doc.getObjectId("_id").toHexString());
+        }
+    }
+
     public Optional<CuratedDarshan> getCuratedDarshan(String curatedDarshanId) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("_id", new ObjectId(curatedDarshanId)))
+        CuratedDarshan doc = collection.find(eq("_id", new ObjectId(curatedDarshanId)), CuratedDarshan.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), CuratedDarshan.class));
+            return Optional.of(doc);
         }
     }
 
@@ -0,0 +1,141 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.result.UpdateResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Server side state of the curated feed pagination. The client only carries the last mandir, influencer and
+ * god post ids of the page it got, the cursor stored under those ids has the per followee pointers and the
+ * posts already served so that the next page resumes the merge where the previous one stopped.
+ */
+@Slf4j
+@Repository
+public class CuratedFeedCursorDao extends BaseDao {
+    private final MongoClient mongoClient;
+    private final String database;
+    private static final String CURATED_FEED_CURSORS_COLLECTION = "curatedFeedCursors";
+    private static final long CURSOR_TTL_HOURS = 24;
+
+    public CuratedFeedCursorDao(MongoClient mongoClient, String database) {
+        this.mongoClient = mongoClient;
+        this.database = database;
+    }
+
+    public void saveCursor(String userId, CursorKey cursorKey, CuratedFeedCursor cursor) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = serde.toDocument(cursor)
+                .append("userId", new ObjectId(userId))
+                .append("mandirLastPostId", cursorKey.getMandirLastPostId())
+                .append("influencerLastPostId", cursorKey.getInfluencerLastPostId())
+                .append("godLastPostId", cursorKey.getGodLastPostId())
+                .append("createTime", getCurrentTime());
+        try {
+            UpdateResult result = collection.replaceOne(getKeyFilter(userId, cursorKey), doc,
+                    new ReplaceOptions().upsert(true));
+
+            log.info("Modified document count: " + result.getModifiedCount());
+            log.info("Upserted id: " + result.getUpsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<CuratedFeedCursor> getCursor(String userId, CursorKey cursorKey) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find(getKeyFilter(userId, cursorKey)).first();
+        if (doc == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new CuratedFeedCursor(
+                toStringMap(doc.get("lastPostIdByMandir", Document.class)),
+                toStringMap(doc.get("lastPostIdByInfluencer", Document.class)),
+                toStringMap(doc.get("lastPostIdByGod", Document.class)),
+                new ArrayList<>(doc.getList("servedPostIds", String.class, new ArrayList<>()))));
+    }
+
+    public void initCollectionAndIndexes() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        db.createCollection(CURATED_FEED_CURSORS_COLLECTION);
+
+        MongoCollection<Document> collection = db.getCollection(CURATED_FEED_CURSORS_COLLECTION);
+
+        IndexOptions indexOptions = new IndexOptions()
+                .name("cursor_key_index");
+        String resultCreateIndex = collection.createIndex(
+                Indexes.ascending("userId", "mandirLastPostId", "influencerLastPostId", "godLastPostId"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+
+        indexOptions = new IndexOptions()
+                .name("create_time_ttl_index")
+                .expireAfter(CURSOR_TTL_HOURS, TimeUnit.HOURS);
+        resultCreateIndex = collection.createIndex(Indexes.ascending("createTime"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+    }
+
+    private static Bson getKeyFilter(String userId, CursorKey cursorKey) {
+        return and(
+                eq("userId", new ObjectId(userId)),
+                eq("mandirLastPostId", cursorKey.getMandirLastPostId()),
+                eq("influencerLastPostId", cursorKey.getInfluencerLastPostId()),
+                eq("godLastPostId", cursorKey.getGodLastPostId()));
+    }
+
+    private static Map<String, String> toStringMap(Document doc) {
+        Map<String, String> map = new HashMap<>();
+        if (doc != null) {
+            doc.forEach((key, value) -> map.put(key, (String) value));
+        }
+        return map;
+    }
+
+    private MongoCollection<Document> getCollection() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        return db.getCollection(CURATED_FEED_CURSORS_COLLECTION);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class CursorKey {
+        String mandirLastPostId;
+        String influencerLastPostId;
+        String godLastPostId;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CuratedFeedCursor {
+        // last post read so far, by followee id
+        Map<String, String> lastPostIdByMandir = new HashMap<>();
+        Map<String, String> lastPostIdByInfluencer = new HashMap<>();
+        Map<String, String> lastPostIdByGod = new HashMap<>();
+        // posts served in the earlier pages, a post can be reachable from more than one followee
+        List<String> servedPostIds = new ArrayList<>();
+    }
+}
@@ -5,17 +5,17 @@ import com.enigma.audiobook.backend.models.Darshan;
 import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.result.InsertOneResult;
 import com.mongodb.client.result.UpdateResult;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Sorts.ascending;
@@ -46,7 +46,7 @@ public class DarshanDao extends BaseDao {
             darshan.setVideoUploadStatus(ContentUploadStatus.PENDING);
 
             // Inserts a sample document describing a movie into the collection
-            Document doc = Document.parse(serde.toJson(darshan))
+            Document doc = serde.toDocument(darshan)
                     .append("_id", id)
                     .append("mandirId", new ObjectId(darshan.getMandirId()))
                     .append("godId", new ObjectId(darshan.getGodId()))
@@ -89,9 +89,14 @@ public class DarshanDao extends BaseDao {
         }
     }
 
-    public Darshan updateDarshan(String darshanId, String thumbnailUrl, String videoUrl, ContentUploadStatus status) {
+    /**
+     * @param encodingLeaseToken the lease the darshan is encoded under, the darshan is then updated only while
+     *                           the lease is held
+     */
+    public Darshan updateDarshan(String darshanId, String thumbnailUrl, String videoUrl, ContentUploadStatus status,
+                                 Optional<String> encodingLeaseToken) {
         MongoCollection<Document> collection = getCollection();
-        Document query = new Document().append("_id", new ObjectId(darshanId));
+        Bson query = withEncodingLease(new Document().append("_id", new ObjectId(darshanId)), encodingLeaseToken);
         Bson updates = Updates.combine(
                 Updates.set("videoUploadStatus", status.name()),
                 Updates.set("thumbnailUrl", thumbnailUrl),
@@ -107,7 +112,8 @@ public class DarshanDao extends BaseDao {
             log.info("Upserted id: " + result.getUpsertedId());
 
             if (result.getModifiedCount() <= 0) {
-                throw new IllegalStateException("unable to update darshan:" + darshanId);
+                throw new IllegalStateException("unable to update darshan:" + darshanId
+                        + ", encodingLeaseToken:" + encodingLeaseToken.orElse(null));
             }
 
             return getDarshan(darshanId).get();
@@ -120,14 +126,44 @@ public class DarshanDao extends BaseDao {
     public Optional<Darshan> getDarshan(String darshanId) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("_id", new ObjectId(darshanId)))
+        Darshan doc = collection.find(eq("_id", new ObjectId(darshanId)), Darshan.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), Darshan.class));
+            return Optional.of(doc);
+        }
+    }
+
+    /**
+     * @return the darshans found for the ids, in the order of the ids
+     */
+    public List<Darshan> getDarshansByIds(List<String> darshanIds) {
+        if (darshanIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        MongoCollection<Document> collection = getCollection();
+
+        List<ObjectId> ids = darshanIds.stream().distinct().map(ObjectId::new).toList();
+        FindIterable<Darshan> docs = collection.find(Filters.in("_id", ids), Darshan.class);
+
+        Map<String, Darshan> darshansById = new HashMap<>();
+        try (MongoCursor<Darshan> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                Darshan darshan = iter.next();
+                darshansById.put(darshan.getDarshanId(), darshan);
+            }
+        }
+
+        List<Darshan> darshans = new ArrayList<>();
+        for (String darshanId : darshanIds) {
+            Darshan darshan = darshansById.get(darshanId);
+            if (darshan != null) {
+                darshans.add(darshan);
+            }
         }
+        return darshans;
     }
 
     public List<Darshan> getDarshans(String mandirId, String godId, ContentUploadStatus status) {
@@ -137,16 +173,15 @@ public class DarshanDao extends BaseDao {
                 Filters.eq("godId", new ObjectId(godId)),
                 Filters.eq("videoUploadStatus", status.name()));
 
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Darshan> docs = collection.find(filter, Darshan.class)
                 .sort(descending("createTime"))
                 .limit(10);
 
         List<Darshan> darshans = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Darshan> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                darshans.add(serde.fromJson(doc.toJson(), Darshan.class));
+                darshans.add(iter.next());
             }
         }
 
@@ -172,16 +207,15 @@ public class DarshanDao extends BaseDao {
                     filter);
         }
 
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Darshan> docs = collection.find(filter, Darshan.class)
                 .sort(ascending("_id"))
                 .limit(limit);
 
         List<Darshan> darshans = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Darshan> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                darshans.add(serde.fromJson(doc.toJson(), Darshan.class));
+                darshans.add(iter.next());
             }
         }
 
@@ -193,22 +227,59 @@ public class DarshanDao extends BaseDao {
         MongoCollection<Document> collection = getCollection();
         Bson filter = Filters.eq("videoUploadStatus", status.name());
 
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Darshan> docs = collection.find(filter, Darshan.class)
+                .sort(ascending("_id"))
+                .limit(limit);
+
+        List<Darshan> darshans = new ArrayList<>();
+
+        try (MongoCursor<Darshan> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                darshans.add(iter.next());
+            }
+        }
+
+        return darshans;
+    }
+
+    /**
+     * @return raw uploaded darshans which no node is encoding at the moment
+     */
+    public List<Darshan> getDarshansPendingEncoding(int limit) {
+        MongoCollection<Document> collection = getCollection();
+        Bson filter = Filters.and(getPendingEncodingFilter(), getNoActiveEncodingLeaseFilter());
+
+        FindIterable<Darshan> docs = collection.find(filter, Darshan.class)
                 .sort(ascending("_id"))
                 .limit(limit);
 
         List<Darshan> darshans = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Darshan> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                darshans.add(serde.fromJson(doc.toJson(), Darshan.class));
+                darshans.add(iter.next());
             }
         }
 
         return darshans;
     }
 
+    public MongoChangeStreamCursor<ChangeStreamDocument<Document>> watchRawUploads(Optional<BsonDocument> resumeToken) {
+        return watchStatus(getCollection(), "videoUploadStatus", ContentUploadStatus.RAW_UPLOADED.name(), resumeToken);
+    }
+
+    public boolean claimEncodingLease(String darshanId, String leaseToken, long leaseMs) {
+        return claimEncodingLease(getCollection(), darshanId, getPendingEncodingFilter(), leaseToken, leaseMs);
+    }
+
+    public boolean extendEncodingLease(String darshanId, String leaseToken, long leaseMs) {
+        return extendEncodingLease(getCollection(), darshanId, leaseToken, leaseMs);
+    }
+
+    public void releaseEncodingLease(String darshanId, String leaseToken) {
+        releaseEncodingLease(getCollection(), darshanId, leaseToken);
+    }
+
     public void initCollectionAndIndexes() {
         MongoDatabase db = mongoClient.getDatabase(database);
         db.createCollection(DARSHAN_REG_COLLECTION);
@@ -240,6 +311,10 @@ public class DarshanDao extends BaseDao {
         log.info(String.format("Index created: %s", resultCreateIndex));
     }
 
+    private static Bson getPendingEncodingFilter() {
+        return Filters.eq("videoUploadStatus", ContentUploadStatus.RAW_UPLOADED.name());
+    }
+
     private MongoCollection<Document> getCollection() {
         MongoDatabase db = mongoClient.getDatabase(database);
         return db.getCollection(DARSHAN_REG_COLLECTION);
@@ -1,65 +1,117 @@
 package com.enigma.audiobook.backend.dao;
 
 import com.enigma.audiobook.backend.models.DarshanView;
+import com.google.common.base.Preconditions;
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.IndexOptions;
-import com.mongodb.client.model.Indexes;
-import com.mongodb.client.model.UpdateOptions;
-import com.mongodb.client.model.Updates;
-import com.mongodb.client.result.UpdateResult;
+import com.mongodb.client.model.*;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Repository
 @Slf4j
 public class DarshanViewsDao extends BaseDao {
+    private static final int VIEWS_BUFFER_SHARDS = 16;
+    private static final int VIEWS_BUFFER_BATCH_SIZE = 500;
+    private static final int VIEWS_BUFFER_MAX_PENDING = 100000;
+    private static final int VIEWS_BUFFER_MAX_ATTEMPTS = 3;
+    private static final long VIEWS_BUFFER_FLUSH_INTERVAL_MS = 1000;
 
     private final MongoClient mongoClient;
     private final String database;
     private static final String DARSHAN_VIEWS_COLLECTION = "darshanViews";
+    private final WriteBehindBuffer<String, DarshanView> viewsBuffer;
 
     public DarshanViewsDao(MongoClient mongoClient, String database) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.viewsBuffer = new WriteBehindBuffer<>("darshanViews", VIEWS_BUFFER_SHARDS, VIEWS_BUFFER_BATCH_SIZE,
+                VIEWS_BUFFER_MAX_PENDING, VIEWS_BUFFER_MAX_ATTEMPTS, VIEWS_BUFFER_FLUSH_INTERVAL_MS,
+                DarshanViewsDao::mergeViews, this::bulkUpsertViews);
+    }
+
+    /**
+     * Buffered like ViewsDao.upsertView, the reports of the same user and darshan are coalesced.
+     *
+     * @return false if the view was refused as the buffer is full
+     */
+    public boolean upsertView(DarshanView darshanView) {
+        Preconditions.checkArgument(
+                ObjectId.isValid(darshanView.getDarshanId()) && ObjectId.isValid(darshanView.getUserId()),
+                "invalid darshan view:" + darshanView);
+        return viewsBuffer.add(getBufferKey(darshanView), darshanView);
     }
 
-    public void upsertView(DarshanView darshanView) {
+    /**
+     * Validates all the views before buffering any, like ViewsDao.upsertViews.
+     *
+     * @return false if the batch was refused as the buffer is full
+     */
+    public boolean upsertViews(List<DarshanView> darshanViews) {
+        for (DarshanView darshanView : darshanViews) {
+            Preconditions.checkArgument(
+                    ObjectId.isValid(darshanView.getDarshanId()) && ObjectId.isValid(darshanView.getUserId()),
+                    "invalid darshan view:" + darshanView);
+        }
+        return viewsBuffer.addAll(darshanViews, DarshanViewsDao::getBufferKey);
+    }
+
+    private static String getBufferKey(DarshanView darshanView) {
+        return darshanView.getUserId() + ":" + darshanView.getDarshanId();
+    }
+
+    @PreDestroy
+    public void flushViews() {
+        viewsBuffer.close();
+    }
+
+    private void bulkUpsertViews(List<DarshanView> darshanViews) {
         MongoCollection<Document> collection = getCollection();
-        Document query = new Document()
-                .append("darshanId", new ObjectId(darshanView.getDarshanId()))
-                .append("userId", new ObjectId(darshanView.getUserId()));
-
-        Bson updates = Updates.combine(
-                Updates.set("darshanId", new ObjectId(darshanView.getDarshanId())),
-                Updates.set("userId", new ObjectId(darshanView.getUserId())),
-                Updates.min("createTime", getCurrentTime()),
-                Updates.set("updateTime", getCurrentTime()),
-                Updates.max("viewDurationSec", darshanView.getViewDurationSec()),
-                Updates.max("totalLengthSec", darshanView.getTotalLengthSec())
-        );
-
-        UpdateOptions options = new UpdateOptions().upsert(true);
-        try {
 
-            UpdateResult result = collection.updateOne(query, updates, options);
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        for (DarshanView darshanView : darshanViews) {
+            Document query = new Document()
+                    .append("darshanId", new ObjectId(darshanView.getDarshanId()))
+                    .append("userId", new ObjectId(darshanView.getUserId()));
+
+            Bson updates = Updates.combine(
+                    Updates.set("darshanId", new ObjectId(darshanView.getDarshanId())),
+                    Updates.set("userId", new ObjectId(darshanView.getUserId())),
+                    Updates.min("createTime", getCurrentTime()),
+                    Updates.set("updateTime", getCurrentTime()),
+                    Updates.max("viewDurationSec", darshanView.getViewDurationSec()),
+                    Updates.max("totalLengthSec", darshanView.getTotalLengthSec())
+            );
+            writes.add(new UpdateOneModel<>(query, updates, new UpdateOptions().upsert(true)));
+        }
+
+        try {
+            BulkWriteResult result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
 
+            log.info("Upserted document count: " + result.getUpserts().size());
             log.info("Modified document count: " + result.getModifiedCount());
-            log.info("Upserted id: " + result.getUpsertedId());
-            if (result.getModifiedCount() <= 0 && result.getUpsertedId() == null) {
-                throw new RuntimeException("unable to upsert darshan view:" + darshanView);
-            }
         } catch (MongoException e) {
-            log.error("Unable to update due to an error", e);
+            log.error("Unable to bulk update due to an error", e);
             throw new RuntimeException(e);
         }
     }
 
+    private static DarshanView mergeViews(DarshanView darshanView, DarshanView newerDarshanView) {
+        darshanView.setViewDurationSec(Math.max(darshanView.getViewDurationSec(), newerDarshanView.getViewDurationSec()));
+        darshanView.setTotalLengthSec(Math.max(darshanView.getTotalLengthSec(), newerDarshanView.getTotalLengthSec()));
+        return darshanView;
+    }
+
     public void initCollectionAndIndexes() {
         MongoDatabase db = mongoClient.getDatabase(database);
         db.createCollection(DARSHAN_VIEWS_COLLECTION);
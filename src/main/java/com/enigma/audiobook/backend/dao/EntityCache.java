@@ -0,0 +1,93 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of rarely changing entities by id. Missing entities are cached as empty so repeated
+ * lookups of unknown ids don't go to mongo either, writes of an entity have to invalidate its id.
+ * <p>
+ * The cache is per node and the invalidation only applies to the node doing the write, the other nodes serve
+ * the previous entity, or miss a new one, for up to the ttl. Keep the ttl short.
+ */
+@Slf4j
+class EntityCache<T> {
+    private final String name;
+    private final LoadingCache<String, Optional<T>> cache;
+
+    EntityCache(String name, long maxSize, Duration ttl,
+                Function<String, Optional<T>> loader,
+                Function<Collection<String>, Map<String, T>> bulkLoader) {
+        this.name = name;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public Optional<T> load(String id) {
+                        return loader.apply(id);
+                    }
+
+                    @Override
+                    public Map<String, Optional<T>> loadAll(Iterable<? extends String> ids) {
+                        List<String> idsToLoad = new ArrayList<>();
+                        ids.forEach(idsToLoad::add);
+
+                        Map<String, T> loaded = bulkLoader.apply(idsToLoad);
+                        Map<String, Optional<T>> entities = new HashMap<>();
+                        idsToLoad.forEach(id -> entities.put(id, Optional.ofNullable(loaded.get(id))));
+                        return entities;
+                    }
+                });
+    }
+
+    Optional<T> get(String id) {
+        return cache.getUnchecked(id);
+    }
+
+    /**
+     * @return the entities found for the ids, in the order of the ids, only the ids not cached are loaded and
+     * in a single query. The ids not found are logged and left out.
+     */
+    List<T> getAll(Collection<String> ids) {
+        Set<String> uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Optional<T>> entities;
+        try {
+            entities = cache.getAll(uniqueIds);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        List<String> missingIds = uniqueIds.stream()
+                .filter(id -> entities.get(id).isEmpty())
+                .toList();
+        if (!missingIds.isEmpty()) {
+            log.warn("{} ids not found:{}", name, missingIds);
+        }
+        return uniqueIds.stream()
+                .map(entities::get)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .toList();
+    }
+
+    void invalidate(String id) {
+        cache.invalidate(id);
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+}
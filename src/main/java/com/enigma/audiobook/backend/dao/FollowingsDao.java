@@ -6,7 +6,6 @@ import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.InsertOneResult;
-import com.mongodb.client.result.UpdateResult;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -25,18 +24,20 @@ public class FollowingsDao extends BaseDao {
 
     private final MongoClient mongoClient;
     private final String database;
+    private final CountersDao countersDao;
     private static final String FOLLOWINGS_COLLECTION = "followings";
 
-    public FollowingsDao(MongoClient mongoClient, String database) {
+    public FollowingsDao(MongoClient mongoClient, String database, CountersDao countersDao) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.countersDao = countersDao;
     }
 
     public void addFollowing(Following following) {
         MongoCollection<Document> collection = getCollection();
 
         try {
-            Document doc = Document.parse(serde.toJson(following));
+            Document doc = serde.toDocument(following);
             doc
                     .append("_id", new ObjectId())
                     .append("followeeId", new ObjectId(doc.getString("followeeId")))
@@ -68,20 +69,21 @@ public class FollowingsDao extends BaseDao {
                 Updates.set("updateTime", getCurrentTime()),
                 Updates.set("isDeleted", false));
 
-        UpdateOptions options = new UpdateOptions().upsert(true);
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .upsert(true)
+                .returnDocument(ReturnDocument.BEFORE);
+        Document before;
         try {
-
-            UpdateResult result = collection.updateOne(query, updates, options);
-
-            log.info("Modified document count: " + result.getModifiedCount());
-            log.info("Upserted id: " + result.getUpsertedId());
-            if (result.getModifiedCount() <= 0 && result.getUpsertedId() == null) {
-                throw new RuntimeException("unable to upsert");
-            }
+            before = collection.findOneAndUpdate(query, updates, options);
+            log.info("Upserted following:{}, previous:{}", following, before);
         } catch (MongoException e) {
             log.error("Unable to update due to an error", e);
             throw new RuntimeException(e);
         }
+
+        if (before == null || before.getBoolean("isDeleted", false)) {
+            incrementFollowersCount(following, 1);
+        }
     }
 
     public void removeFollowing(Following following) {
@@ -96,38 +98,52 @@ public class FollowingsDao extends BaseDao {
                         Updates.set("isDeleted", true),
                         Updates.set("updateTime", getCurrentTime()));
 
-        UpdateOptions options = new UpdateOptions().upsert(false);
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .upsert(false)
+                .returnDocument(ReturnDocument.BEFORE);
+        Document before;
         try {
-
-            UpdateResult result = collection.updateOne(query, updates, options);
-
-            log.info("Modified document count: " + result.getModifiedCount());
-            log.info("Upserted id: " + result.getUpsertedId());
-            if (result.getModifiedCount() <= 0 && result.getUpsertedId() == null) {
-                throw new RuntimeException("unable to update");
-            }
+            before = collection.findOneAndUpdate(query, updates, options);
+            log.info("Removed following:{}, previous:{}", following, before);
         } catch (MongoException e) {
             log.error("Unable to update due to an error", e);
             throw new RuntimeException(e);
         }
+
+        if (before == null) {
+            throw new RuntimeException("unable to update");
+        }
+        if (!before.getBoolean("isDeleted", false)) {
+            incrementFollowersCount(following, -1);
+        }
+    }
+
+    private void incrementFollowersCount(Following following, int delta) {
+        // the following is already written, a lost increment is corrected by the reconciliation
+        try {
+            countersDao.increment(following.getFolloweeId(),
+                    CountersDao.Counter.followersOf(following.getFollowingType()), delta);
+        } catch (RuntimeException e) {
+            log.error("unable to update followers count for following:" + following, e);
+        }
     }
 
     public List<Following> getFollowingsForUser(String userId) {
         MongoCollection<Document> collection = getCollection();
 
-        FindIterable<Document> docs = collection.find(
+        FindIterable<Following> docs = collection.find(
                 Filters.and(
                         eq("followerUserId", new ObjectId(userId)),
                         eq("isDeleted", false)
-                )
+                ),
+                Following.class
         );
 
         List<Following> followings = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Following> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                followings.add(serde.fromJson(doc.toJson(), Following.class));
+                followings.add(iter.next());
             }
         }
 
@@ -175,23 +191,45 @@ public class FollowingsDao extends BaseDao {
         return (int) count;
     }
 
-    public List<Following> getFollowingsForUser(String userId, FollowingType followingType) {
+    public List<String> getFollowerIdsForFollowee(String followeeId, FollowingType followingType) {
         MongoCollection<Document> collection = getCollection();
 
         FindIterable<Document> docs = collection.find(
+                        Filters.and(
+                                eq("followeeId", new ObjectId(followeeId)),
+                                eq("followingType", followingType.name()),
+                                eq("isDeleted", false)
+                        ))
+                .projection(Projections.include("followerUserId"));
+
+        List<String> followerIds = new ArrayList<>();
+
+        try (MongoCursor<Document> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                followerIds.add(iter.next().getObjectId("followerUserId").toHexString());
+            }
+        }
+
+        return followerIds;
+    }
+
+    public List<Following> getFollowingsForUser(String userId, FollowingType followingType) {
+        MongoCollection<Document> collection = getCollection();
+
+        FindIterable<Following> docs = collection.find(
                 Filters.and(
                         eq("followerUserId", new ObjectId(userId)),
                         eq("followingType", followingType.name()),
                         eq("isDeleted", false)
-                )
+                ),
+                Following.class
         );
 
         List<Following> followings = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Following> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                followings.add(serde.fromJson(doc.toJson(), Following.class));
+                followings.add(iter.next());
             }
         }
 
@@ -2,6 +2,7 @@ package com.enigma.audiobook.backend.dao;
 
 import com.enigma.audiobook.backend.models.ContentUploadStatus;
 import com.enigma.audiobook.backend.models.God;
+import com.google.common.cache.CacheStats;
 import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
@@ -13,9 +14,8 @@ import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.gt;
@@ -28,10 +28,15 @@ public class GodDao extends BaseDao {
     private final MongoClient mongoClient;
     private final String database;
     private static final String GOD_REG_COLLECTION = "godReg";
+    private static final long GOD_CACHE_MAX_SIZE = 10000;
+    private static final Duration GOD_CACHE_TTL = Duration.ofMinutes(1);
+    private final EntityCache<God> godCache;
 
     public GodDao(MongoClient mongoClient, String database) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.godCache = new EntityCache<>("god", GOD_CACHE_MAX_SIZE, GOD_CACHE_TTL,
+                this::loadGod, this::loadGods);
     }
 
     public String generateId() {
@@ -42,7 +47,7 @@ public class GodDao extends BaseDao {
         MongoCollection<Document> collection = getCollection();
 
         try {
-            Document doc = Document.parse(serde.toJson(god))
+            Document doc = serde.toDocument(god)
                     .append("_id", new ObjectId(id))
                     .append("createTime", getCurrentTime())
                     .append("updateTime", getCurrentTime())
@@ -51,6 +56,7 @@ public class GodDao extends BaseDao {
             InsertOneResult result = collection.insertOne(doc);
 
             log.info("Success! Inserted document id: " + result.getInsertedId());
+            godCache.invalidate(id);
             return getGod(result.getInsertedId().asObjectId().getValue().toString()).get();
         } catch (MongoException e) {
             log.error("Unable to insert into god registration", e);
@@ -71,6 +77,7 @@ public class GodDao extends BaseDao {
         try {
 
             UpdateResult result = collection.updateOne(query, updates, options);
+            godCache.invalidate(godId);
 
             log.info("Modified document count: " + result.getModifiedCount());
             log.info("Upserted id: " + result.getUpsertedId());
@@ -99,6 +106,7 @@ public class GodDao extends BaseDao {
         try {
 
             UpdateResult result = collection.updateOne(query, updates, options);
+            godCache.invalidate(godId);
 
             log.info("Modified document count: " + result.getModifiedCount());
             log.info("Upserted id: " + result.getUpsertedId());
@@ -121,17 +129,16 @@ public class GodDao extends BaseDao {
                 Filters.eq("contentUploadStatus", ContentUploadStatus.PROCESSED),
                 Filters.eq("contentUploadStatus", ContentUploadStatus.SUCCESS_NO_CONTENT)
         );
-        FindIterable<Document> docs = collection.find(contentFilter)
+        FindIterable<God> docs = collection.find(contentFilter, God.class)
 //                .projection(projectionFields)
                 .sort(ascending("_id"))
                 .limit(limit);
 
         List<God> gods = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<God> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                gods.add(serde.fromJson(doc.toJson(), God.class));
+                gods.add(iter.next());
             }
         }
 
@@ -148,17 +155,16 @@ public class GodDao extends BaseDao {
         );
         Bson filter = Filters.and(gt("_id", new ObjectId(lastGodId)),
                 contentFilter);
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<God> docs = collection.find(filter, God.class)
 //                .projection(projectionFields)
                 .sort(ascending("_id"))
                 .limit(limit);
 
         List<God> gods = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<God> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                gods.add(serde.fromJson(doc.toJson(), God.class));
+                gods.add(iter.next());
             }
         }
 
@@ -166,28 +172,58 @@ public class GodDao extends BaseDao {
     }
 
     public Optional<God> getGod(String godId) {
+        return godCache.get(godId);
+    }
+
+    public List<God> getGods(Collection<String> godIds) {
+        return godCache.getAll(godIds);
+    }
+
+    public CacheStats getCacheStats() {
+        return godCache.stats();
+    }
+
+    private Optional<God> loadGod(String godId) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("_id", new ObjectId(godId)))
+        God doc = collection.find(eq("_id", new ObjectId(godId)), God.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), God.class));
+            return Optional.of(doc);
+        }
+    }
+
+    private Map<String, God> loadGods(Collection<String> godIds) {
+        MongoCollection<Document> collection = getCollection();
+
+        List<ObjectId> ids = godIds.stream().map(ObjectId::new).toList();
+        FindIterable<God> docs = collection.find(Filters.in("_id", ids), God.class);
+
+        Map<String, God> godsById = new HashMap<>();
+
+        try (MongoCursor<God> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                God god = iter.next();
+                godsById.put(god.getGodId(), god);
+            }
         }
+
+        return godsById;
     }
 
     public Optional<God> getGodByName(String godName) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("godName", godName))
+        God doc = collection.find(eq("godName", godName), God.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), God.class));
+            return Optional.of(doc);
         }
     }
 
@@ -3,6 +3,7 @@ package com.enigma.audiobook.backend.dao;
 import com.enigma.audiobook.backend.models.ContentUploadStatus;
 import com.enigma.audiobook.backend.models.God;
 import com.enigma.audiobook.backend.models.Influencer;
+import com.google.common.cache.CacheStats;
 import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
@@ -15,9 +16,8 @@ import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.gt;
@@ -30,11 +30,16 @@ public class InfluencerDao extends BaseDao {
     private final MongoClient mongoClient;
     private final String database;
     private static final String INFLUENCER_REG_COLLECTION = "influencerReg";
+    private static final long INFLUENCER_CACHE_MAX_SIZE = 10000;
+    private static final Duration INFLUENCER_CACHE_TTL = Duration.ofMinutes(1);
+    private final EntityCache<Influencer> influencerCache;
 
     @Autowired
     public InfluencerDao(MongoClient mongoClient, String database) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.influencerCache = new EntityCache<>("influencer", INFLUENCER_CACHE_MAX_SIZE, INFLUENCER_CACHE_TTL,
+                this::loadInfluencer, this::loadInfluencers);
     }
 
     public String generateId() {
@@ -45,7 +50,7 @@ public class InfluencerDao extends BaseDao {
         MongoCollection<Document> collection = getCollection();
         try {
             // Inserts a sample document describing a movie into the collection
-            InsertOneResult result = collection.insertOne(Document.parse(serde.toJson(influencer))
+            InsertOneResult result = collection.insertOne(serde.toDocument(influencer)
                     .append("_id", new ObjectId(id))
                     .append("userId", new ObjectId(influencer.getUserId()))
                     .append("contentUploadStatus", ContentUploadStatus.PENDING)
@@ -53,6 +58,7 @@ public class InfluencerDao extends BaseDao {
                     .append("updateTime", getCurrentTime())
                     .append("isDeleted", false));
             log.info("Success! Inserted document id: " + result.getInsertedId());
+            influencerCache.invalidate(influencer.getUserId());
 
             return getInfleuncer(result.getInsertedId().asObjectId().getValue().toString()).get();
         } catch (MongoException e) {
@@ -74,6 +80,7 @@ public class InfluencerDao extends BaseDao {
         try {
 
             UpdateResult result = collection.updateOne(query, updates, options);
+            influencerCache.invalidate(userId);
 
             log.info("Modified document count: " + result.getModifiedCount());
             log.info("Upserted id: " + result.getUpsertedId());
@@ -102,6 +109,7 @@ public class InfluencerDao extends BaseDao {
         try {
 
             UpdateResult result = collection.updateOne(query, updates, options);
+            influencerCache.invalidate(userId);
 
             log.info("Modified document count: " + result.getModifiedCount());
             log.info("Upserted id: " + result.getUpsertedId());
@@ -124,17 +132,16 @@ public class InfluencerDao extends BaseDao {
                 Filters.eq("contentUploadStatus", ContentUploadStatus.PROCESSED),
                 Filters.eq("contentUploadStatus", ContentUploadStatus.SUCCESS_NO_CONTENT)
         );
-        FindIterable<Document> docs = collection.find(contentFilter)
+        FindIterable<Influencer> docs = collection.find(contentFilter, Influencer.class)
 //                .projection(projectionFields)
                 .sort(ascending("userId"))
                 .limit(limit);
 
         List<Influencer> influencers = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Influencer> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                influencers.add(serde.fromJson(doc.toJson(), Influencer.class));
+                influencers.add(iter.next());
             }
         }
 
@@ -151,17 +158,16 @@ public class InfluencerDao extends BaseDao {
         );
         Bson filter = Filters.and(gt("userId", new ObjectId(lastInfluencerUserId)),
                 contentFilter);
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Influencer> docs = collection.find(filter, Influencer.class)
 //                .projection(projectionFields)
                 .sort(ascending("userId"))
                 .limit(limit);
 
         List<Influencer> influencers = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Influencer> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                influencers.add(serde.fromJson(doc.toJson(), Influencer.class));
+                influencers.add(iter.next());
             }
         }
 
@@ -169,16 +175,46 @@ public class InfluencerDao extends BaseDao {
     }
 
     public Optional<Influencer> getInfleuncer(String userId) {
+        return influencerCache.get(userId);
+    }
+
+    public List<Influencer> getInfluencers(Collection<String> userIds) {
+        return influencerCache.getAll(userIds);
+    }
+
+    public CacheStats getCacheStats() {
+        return influencerCache.stats();
+    }
+
+    private Optional<Influencer> loadInfluencer(String userId) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("userId", new ObjectId(userId)))
+        Influencer doc = collection.find(eq("userId", new ObjectId(userId)), Influencer.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), Influencer.class));
+            return Optional.of(doc);
+        }
+    }
+
+    private Map<String, Influencer> loadInfluencers(Collection<String> userIds) {
+        MongoCollection<Document> collection = getCollection();
+
+        List<ObjectId> ids = userIds.stream().map(ObjectId::new).toList();
+        FindIterable<Influencer> docs = collection.find(Filters.in("userId", ids), Influencer.class);
+
+        Map<String, Influencer> influencersById = new HashMap<>();
+
+        try (MongoCursor<Influencer> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                Influencer influencer = iter.next();
+                influencersById.put(influencer.getUserId(), influencer);
+            }
         }
+
+        return influencersById;
     }
 
     public void initCollectionAndIndexes() {
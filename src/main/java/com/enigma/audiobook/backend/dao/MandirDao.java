@@ -3,6 +3,7 @@ package com.enigma.audiobook.backend.dao;
 import com.enigma.audiobook.backend.models.ContentUploadStatus;
 import com.enigma.audiobook.backend.models.God;
 import com.enigma.audiobook.backend.models.Mandir;
+import com.google.common.cache.CacheStats;
 import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
@@ -14,9 +15,8 @@ import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.gt;
@@ -29,10 +29,15 @@ public class MandirDao extends BaseDao {
     private final MongoClient mongoClient;
     private final String database;
     private static final String MANDIR_REG_COLLECTION = "mandirReg";
+    private static final long MANDIR_CACHE_MAX_SIZE = 10000;
+    private static final Duration MANDIR_CACHE_TTL = Duration.ofMinutes(1);
+    private final EntityCache<Mandir> mandirCache;
 
     public MandirDao(MongoClient mongoClient, String database) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.mandirCache = new EntityCache<>("mandir", MANDIR_CACHE_MAX_SIZE, MANDIR_CACHE_TTL,
+                this::loadMandir, this::loadMandirs);
     }
 
     public String generateId() {
@@ -43,7 +48,7 @@ public class MandirDao extends BaseDao {
         MongoCollection<Document> collection = getCollection();
         try {
             // Inserts a sample document describing a movie into the collection
-            Document doc = Document.parse(serde.toJson(mandir))
+            Document doc = serde.toDocument(mandir)
                     .append("_id", new ObjectId(id))
                     .append("contentUploadStatus", ContentUploadStatus.PENDING)
                     .append("createTime", getCurrentTime())
@@ -52,6 +57,7 @@ public class MandirDao extends BaseDao {
             InsertOneResult result = collection.insertOne(doc);
             // Prints the ID of the inserted document
             log.info("Success! Inserted document id: " + result.getInsertedId());
+            mandirCache.invalidate(id);
 
             return getMandir(result.getInsertedId().asObjectId().getValue().toString()).get();
         } catch (MongoException e) {
@@ -73,6 +79,7 @@ public class MandirDao extends BaseDao {
         try {
 
             UpdateResult result = collection.updateOne(query, updates, options);
+            mandirCache.invalidate(mandirId);
 
             log.info("Modified document count: " + result.getModifiedCount());
             log.info("Upserted id: " + result.getUpsertedId());
@@ -101,6 +108,7 @@ public class MandirDao extends BaseDao {
         try {
 
             UpdateResult result = collection.updateOne(query, updates, options);
+            mandirCache.invalidate(mandirId);
 
             log.info("Modified document count: " + result.getModifiedCount());
             log.info("Upserted id: " + result.getUpsertedId());
@@ -124,7 +132,7 @@ public class MandirDao extends BaseDao {
                 Filters.eq("contentUploadStatus", ContentUploadStatus.SUCCESS_NO_CONTENT)
         );
 
-        FindIterable<Document> docs = collection.find(contentFilter)
+        FindIterable<Mandir> docs = collection.find(contentFilter, Mandir.class)
 //                .projection(projectionFields)
                 .sort(ascending("_id"))
                 .limit(limit);
@@ -133,10 +141,9 @@ public class MandirDao extends BaseDao {
 
 
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Mandir> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                mandirs.add(serde.fromJson(doc.toJson(), Mandir.class));
+                mandirs.add(iter.next());
             }
         }
 
@@ -153,17 +160,16 @@ public class MandirDao extends BaseDao {
         );
         Bson filter = Filters.and(gt("_id", new ObjectId(lastMandirId)),
                 contentFilter);
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Mandir> docs = collection.find(filter, Mandir.class)
                 .projection(projectionFields)
                 .sort(ascending("_id"))
                 .limit(limit);
 
         List<Mandir> mandirs = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Mandir> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                mandirs.add(serde.fromJson(doc.toJson(), Mandir.class));
+                mandirs.add(iter.next());
             }
         }
 
@@ -171,16 +177,46 @@ public class MandirDao extends BaseDao {
     }
 
     public Optional<Mandir> getMandir(String mandirId) {
+        return mandirCache.get(mandirId);
+    }
+
+    public List<Mandir> getMandirs(Collection<String> mandirIds) {
+        return mandirCache.getAll(mandirIds);
+    }
+
+    public CacheStats getCacheStats() {
+        return mandirCache.stats();
+    }
+
+    private Optional<Mandir> loadMandir(String mandirId) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("_id", new ObjectId(mandirId)))
+        Mandir doc = collection.find(eq("_id", new ObjectId(mandirId)), Mandir.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), Mandir.class));
+            return Optional.of(doc);
+        }
+    }
+
+    private Map<String, Mandir> loadMandirs(Collection<String> mandirIds) {
+        MongoCollection<Document> collection = getCollection();
+
+        List<ObjectId> ids = mandirIds.stream().map(ObjectId::new).toList();
+        FindIterable<Mandir> docs = collection.find(Filters.in("_id", ids), Mandir.class);
+
+        Map<String, Mandir> mandirsById = new HashMap<>();
+
+        try (MongoCursor<Mandir> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                Mandir mandir = iter.next();
+                mandirsById.put(mandir.getMandirId(), mandir);
+            }
         }
+
+        return mandirsById;
     }
 
     public void initCollectionAndIndexes() {
@@ -5,6 +5,7 @@ import com.enigma.audiobook.backend.models.PostType;
 import com.enigma.audiobook.backend.models.ScoredContent;
 import com.enigma.audiobook.backend.models.View;
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.DeleteResult;
@@ -17,6 +18,7 @@ import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -79,6 +81,44 @@ public class NewPostsDao extends BaseDao {
         }
     }
 
+    /**
+     * Upserts the new posts and removes the posts which are not new anymore in a single bulk write.
+     */
+    public void bulkUpdateNewPosts(List<NewPost> newPosts, Collection<String> notNewPostIds) {
+        MongoCollection<Document> collection = getCollection();
+
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        for (NewPost newPost : newPosts) {
+            Document query = new Document()
+                    .append("postId", new ObjectId(newPost.getPostId()))
+                    .append("postType", newPost.getPostType().name());
+            Bson updates = Updates.combine(
+                    Updates.set("postId", new ObjectId(newPost.getPostId())),
+                    Updates.set("postType", newPost.getPostType().name()),
+                    Updates.set("updateTime", getCurrentTime())
+            );
+            writes.add(new UpdateOneModel<>(query, updates, new UpdateOptions().upsert(true)));
+        }
+        if (!notNewPostIds.isEmpty()) {
+            writes.add(new DeleteManyModel<>(
+                    Filters.in("postId", notNewPostIds.stream().map(ObjectId::new).toList())));
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        try {
+            BulkWriteResult result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+
+            log.info("Upserted document count: " + result.getUpserts().size());
+            log.info("Modified document count: " + result.getModifiedCount());
+            log.info("Deleted document count: " + result.getDeletedCount());
+        } catch (MongoException e) {
+            log.error("Unable to bulk update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     public List<NewPost> getNewPostsByTypeNext(PostType postType, int limit, Optional<NewPost> lastNewPost) {
         MongoCollection<Document> collection = getCollection();
         Bson finalFilter = Filters.eq("postType", postType.name());
@@ -90,16 +130,15 @@ public class NewPostsDao extends BaseDao {
                     filterPostIdLesser);
         }
 
-        FindIterable<Document> docs = collection.find(finalFilter)
+        FindIterable<NewPost> docs = collection.find(finalFilter, NewPost.class)
                 .sort(descending("postId"))
                 .limit(limit);
 
         List<NewPost> views = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<NewPost> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                views.add(serde.fromJson(doc.toJson(), NewPost.class));
+                views.add(iter.next());
             }
         }
 
@@ -4,18 +4,23 @@ import com.enigma.audiobook.backend.models.*;
 import com.mongodb.MongoException;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.result.InsertOneResult;
-import com.mongodb.client.result.UpdateResult;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Sorts.ascending;
@@ -26,11 +31,13 @@ import static com.mongodb.client.model.Sorts.descending;
 public class PostsDao extends BaseDao {
     private final MongoClient mongoClient;
     private final String database;
+    private final CountersDao countersDao;
     public static final String POSTS_COLLECTION = "Posts";
 
-    public PostsDao(MongoClient mongoClient, String database) {
+    public PostsDao(MongoClient mongoClient, String database, CountersDao countersDao) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.countersDao = countersDao;
     }
 
     public String generateId() {
@@ -50,7 +57,7 @@ public class PostsDao extends BaseDao {
             }
 
             // Inserts a sample document describing a movie into the collection
-            Document doc = Document.parse(serde.toJson(post))
+            Document doc = serde.toDocument(post)
                     .append("_id", id)
                     .append("createTime", getCurrentTime())
                     .append("updateTime", getCurrentTime())
@@ -80,6 +87,9 @@ public class PostsDao extends BaseDao {
             InsertOneResult result = collection.insertOne(doc);
             // Prints the ID of the inserted document
             log.info("Success! Inserted document id: " + result.getInsertedId());
+            if (isProcessed(post.getContentUploadStatus().name())) {
+                incrementProcessedPostsCount(doc, 1);
+            }
             post.setPostId(result.getInsertedId().asObjectId().getValue().toString());
             return post;
         } catch (MongoException e) {
@@ -97,17 +107,18 @@ public class PostsDao extends BaseDao {
                         Updates.set("contentUploadStatus", status.name()),
                         Updates.set("completeUploadMetadata", completeUploadMetadata),
                         Updates.set("updateTime", getCurrentTime()));
-        UpdateOptions options = new UpdateOptions().upsert(false);
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .upsert(false)
+                .returnDocument(ReturnDocument.BEFORE);
 
         try {
-            UpdateResult result = collection.updateOne(query, updates, options);
-
-            log.info("Modified document count: " + result.getModifiedCount());
-            log.info("Upserted id: " + result.getUpsertedId());
+            Document before = collection.findOneAndUpdate(query, updates, options);
 
-            if (result.getModifiedCount() <= 0) {
+            if (before == null) {
                 throw new IllegalStateException("unable to modify post for id:" + postId);
             }
+            log.info("Modified post:{}, previous status:{}", postId, before.getString("contentUploadStatus"));
+            updateProcessedPostsCount(before, status);
 
             return getPost(postId).get();
         } catch (MongoException e) {
@@ -116,14 +127,20 @@ public class PostsDao extends BaseDao {
         }
     }
 
+    /**
+     * @param encodingLeaseToken the lease the post is encoded under, the post is then updated only while the
+     *                           lease is held
+     */
     public Post updatePost(String postId, ContentUploadStatus status, PostType postType, String thumbnailUrl,
-                           String videoUrl, List<String> imagesUrls, String audioUrl) {
+                           String videoUrl, List<String> imagesUrls, String audioUrl,
+                           Optional<String> encodingLeaseToken) {
         MongoCollection<Document> collection = getCollection();
-        Document query = new Document().append("_id", new ObjectId(postId));
+        Bson query = withEncodingLease(new Document().append("_id", new ObjectId(postId)), encodingLeaseToken);
 
         Bson statusUpdate = Updates.combine(
                 Updates.set("contentUploadStatus", status.name()),
-                Updates.set("updateHLSTime", getCurrentTime()));
+                Updates.set("updateHLSTime", getCurrentTime()),
+                Updates.set("updateTime", getCurrentTime()));
         Bson updates;
         switch (postType) {
             case VIDEO:
@@ -150,17 +167,19 @@ public class PostsDao extends BaseDao {
                 throw new IllegalStateException("unhandled postType:" + postType);
         }
 
-        UpdateOptions options = new UpdateOptions().upsert(false);
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .upsert(false)
+                .returnDocument(ReturnDocument.BEFORE);
 
         try {
-            UpdateResult result = collection.updateOne(query, updates, options);
+            Document before = collection.findOneAndUpdate(query, updates, options);
 
-            log.info("Modified document count: " + result.getModifiedCount());
-            log.info("Upserted id: " + result.getUpsertedId());
-
-            if (result.getModifiedCount() <= 0) {
-                throw new IllegalStateException("unable to modify post for id:" + postId);
+            if (before == null) {
+                throw new IllegalStateException("unable to modify post for id:" + postId
+                        + ", encodingLeaseToken:" + encodingLeaseToken.orElse(null));
             }
+            log.info("Modified post:{}, previous status:{}", postId, before.getString("contentUploadStatus"));
+            updateProcessedPostsCount(before, status);
 
             return getPost(postId).get();
         } catch (MongoException e) {
@@ -172,14 +191,56 @@ public class PostsDao extends BaseDao {
     public Optional<Post> getPost(String postId) {
         MongoCollection<Document> collection = getCollection();
 
-        Document doc = collection.find(eq("_id", new ObjectId(postId)))
+        Post doc = collection.find(eq("_id", new ObjectId(postId)), Post.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), Post.class));
+            return Optional.of(doc);
+        }
+    }
+
+    /**
+     * @return the existing posts for the given ids, in the order of the given ids
+     */
+    public List<Post> getPostsByIds(List<String> postIds) {
+        return getPostsByIds(postIds, Filters.empty());
+    }
+
+    /**
+     * Like getPostsByIds, leaving out the posts deleted or not processed, e.g. ids of scored content whose post
+     * was deleted or failed a re-encode since it was scored
+     */
+    public List<Post> getProcessedPostsByIds(List<String> postIds) {
+        return getPostsByIds(postIds, Filters.and(getIsDeletedFilter(false), getProcessedContentFilter()));
+    }
+
+    private List<Post> getPostsByIds(List<String> postIds, Bson filter) {
+        if (postIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        MongoCollection<Document> collection = getCollection();
+
+        List<ObjectId> ids = postIds.stream().distinct().map(ObjectId::new).toList();
+        FindIterable<Post> docs = collection.find(Filters.and(Filters.in("_id", ids), filter), Post.class);
+
+        Map<String, Post> postsById = new HashMap<>();
+        try (MongoCursor<Post> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                Post post = iter.next();
+                postsById.put(post.getPostId(), post);
+            }
+        }
+
+        List<Post> posts = new ArrayList<>();
+        for (String postId : postIds) {
+            Post post = postsById.get(postId);
+            if (post != null) {
+                posts.add(post);
+            }
         }
+        return posts;
     }
 
     public List<Post> getPostForInfluencer(String influencerId, int limit,
@@ -211,16 +272,15 @@ public class PostsDao extends BaseDao {
             );
         }
 
-        FindIterable<Document> docs = collection.find(fromUserIdFilter)
+        FindIterable<Post> docs = collection.find(fromUserIdFilter, Post.class)
                 .sort(descending("_id")) // _id contains the create time as well
                 .limit(limit);
 
         List<Post> posts = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Post> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                posts.add(serde.fromJson(doc.toJson(), Post.class));
+                posts.add(iter.next());
             }
         }
         return posts;
@@ -264,16 +324,15 @@ public class PostsDao extends BaseDao {
             );
         }
 
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Post> docs = collection.find(filter, Post.class)
                 .sort(descending("_id")) // _id contains the create time as well
                 .limit(limit);
 
         List<Post> posts = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Post> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                posts.add(serde.fromJson(doc.toJson(), Post.class));
+                posts.add(iter.next());
             }
         }
         return posts;
@@ -308,16 +367,15 @@ public class PostsDao extends BaseDao {
 
         log.info("getPosts by association filter:" + filter);
 
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Post> docs = collection.find(filter, Post.class)
                 .sort(descending("_id")) // _id contains the create time as well
                 .limit(limit);
 
         List<Post> posts = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Post> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                posts.add(serde.fromJson(doc.toJson(), Post.class));
+                posts.add(iter.next());
             }
         }
         log.info("getPosts by association posts:" + posts.stream().map(Post::getPostId).toList());
@@ -325,6 +383,219 @@ public class PostsDao extends BaseDao {
         return posts;
     }
 
+    /**
+     * Latest processed posts for each of the given mandir/influencer/god ids in a single aggregation,
+     * at most limitPerId posts per id, newest first.
+     */
+    public Map<String, List<Post>> getPostsForAssociations(Collection<String> associationIds,
+                                                           PostAssociationType associationType,
+                                                           int limitPerId) {
+        return getPostsForAssociations(associationIds, associationType, limitPerId, Optional.empty());
+    }
+
+    public Map<String, List<Post>> getPostsForAssociations(Collection<String> associationIds,
+                                                           PostAssociationType associationType,
+                                                           int limitPerId,
+                                                           Optional<String> lastPostId) {
+        Map<String, String> lastPostIdById = new HashMap<>();
+        lastPostId.ifPresent(last -> associationIds.forEach(id -> lastPostIdById.put(id, last)));
+        return getPostsForAssociations(associationIds, associationType, limitPerId, lastPostIdById);
+    }
+
+    /**
+     * @param lastPostIdById per id, the last post already read, only older posts are returned for it. Ids
+     *                       without an entry are read from the latest post.
+     */
+    public Map<String, List<Post>> getPostsForAssociations(Collection<String> associationIds,
+                                                           PostAssociationType associationType,
+                                                           int limitPerId,
+                                                           Map<String, String> lastPostIdById) {
+        if (associationIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<String, List<Post>> postsById;
+        switch (associationType) {
+            case MANDIR:
+                postsById = aggregateTopNPosts(getAssociationsFilter("associatedMandirId", associationIds,
+                        lastPostIdById), "$associatedMandirId", limitPerId);
+                break;
+            case INFLUENCER:
+                // same matching as getPostForInfluencer, a post is of the associated influencer and of the posting
+                // user. Each is grouped in its own branch, a post from a followed influencer associated to another
+                // one is not grouped under the other only.
+                List<Bson> pipeline = new ArrayList<>(getTopNPipeline(getAssociationsFilter("associatedInfluencerId",
+                        associationIds, lastPostIdById), "$associatedInfluencerId", limitPerId));
+                pipeline.add(Aggregates.unionWith(POSTS_COLLECTION, getTopNPipeline(getAssociationsFilter("fromUserId",
+                        associationIds, lastPostIdById), "$fromUserId", limitPerId)));
+                postsById = aggregateTopNPosts(pipeline);
+                // a post associated to its own posting user is in both branches
+                postsById.replaceAll((id, posts) -> getNewestDistinct(posts, limitPerId));
+                break;
+            case GOD:
+                postsById = aggregateTopNPosts(getAssociationsFilter("associatedGodId", associationIds,
+                        lastPostIdById), "$associatedGodId", limitPerId);
+                break;
+            default:
+                throw new IllegalStateException("unhandled association type:" + associationType);
+        }
+        postsById.keySet().retainAll(associationIds);
+        return postsById;
+    }
+
+    /**
+     * Processed, not deleted posts with the field in the ids, older than the last post read of the id if any.
+     */
+    private Bson getAssociationsFilter(String field, Collection<String> associationIds,
+                                       Map<String, String> lastPostIdById) {
+        List<ObjectId> idsFromLatest = new ArrayList<>();
+        List<Bson> idFilters = new ArrayList<>();
+        for (String associationId : associationIds) {
+            String lastPostId = lastPostIdById.get(associationId);
+            if (lastPostId == null) {
+                idsFromLatest.add(new ObjectId(associationId));
+            } else {
+                idFilters.add(Filters.and(
+                        eq(field, new ObjectId(associationId)),
+                        lt("_id", new ObjectId(lastPostId))));
+            }
+        }
+        if (!idsFromLatest.isEmpty()) {
+            idFilters.add(Filters.in(field, idsFromLatest));
+        }
+
+        return Filters.and(
+                idFilters.size() == 1 ? idFilters.get(0) : Filters.or(idFilters),
+                getProcessedContentFilter(),
+                getIsDeletedFilter(false));
+    }
+
+    /**
+     * Batched variant of getPostOfGod, godNameById maps each god id to its name so that posts tagged
+     * with the god name are attributed to the god as well.
+     */
+    public Map<String, List<Post>> getPostsOfGods(Map<String, String> godNameById, int limitPerGod) {
+        return getPostsOfGods(godNameById, limitPerGod, Optional.empty());
+    }
+
+    public Map<String, List<Post>> getPostsOfGods(Map<String, String> godNameById, int limitPerGod,
+                                                  Optional<String> lastPostId) {
+        Map<String, String> lastPostIdByGodId = new HashMap<>();
+        lastPostId.ifPresent(last -> godNameById.keySet().forEach(godId -> lastPostIdByGodId.put(godId, last)));
+        return getPostsOfGods(godNameById, limitPerGod, lastPostIdByGodId);
+    }
+
+    public Map<String, List<Post>> getPostsOfGods(Map<String, String> godNameById, int limitPerGod,
+                                                  Map<String, String> lastPostIdByGodId) {
+        if (godNameById.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        // associated and tagged posts are grouped in separate branches, a post associated to a god is also
+        // a tagged post of the god it is tagged with
+        List<Bson> associatedFilters = new ArrayList<>();
+        List<Bson> taggedFilters = new ArrayList<>();
+        godNameById.forEach((godId, godName) -> {
+            Bson associatedFilter = eq("associatedGodId", new ObjectId(godId));
+            Bson taggedFilter = Filters.and(
+                    eq("tag", godName),
+                    Filters.in("type", PostType.AUDIO.name(), PostType.VIDEO.name(), PostType.IMAGES.name()));
+            String lastPostId = lastPostIdByGodId.get(godId);
+            if (lastPostId != null) {
+                associatedFilter = Filters.and(associatedFilter, lt("_id", new ObjectId(lastPostId)));
+                taggedFilter = Filters.and(taggedFilter, lt("_id", new ObjectId(lastPostId)));
+            }
+            associatedFilters.add(associatedFilter);
+            taggedFilters.add(taggedFilter);
+        });
+
+        List<Bson> pipeline = new ArrayList<>(getTopNPipeline(
+                Filters.and(getIsDeletedFilter(false), Filters.or(associatedFilters), getProcessedContentFilter()),
+                "$associatedGodId", limitPerGod));
+        pipeline.add(Aggregates.unionWith(POSTS_COLLECTION, getTopNPipeline(
+                Filters.and(getIsDeletedFilter(false), Filters.or(taggedFilters), getProcessedContentFilter()),
+                "$tag", limitPerGod)));
+        Map<String, List<Post>> postsByGodIdOrName = aggregateTopNPosts(pipeline);
+
+        Map<String, String> godIdByName = new HashMap<>();
+        godNameById.forEach((godId, godName) -> godIdByName.put(godName, godId));
+
+        Map<String, List<Post>> postsByGodId = new HashMap<>();
+        postsByGodIdOrName.forEach((key, posts) -> {
+            String godId = godNameById.containsKey(key) ? key : godIdByName.get(key);
+            if (godId == null) {
+                return;
+            }
+            List<Post> merged = postsByGodId.computeIfAbsent(godId, k -> new ArrayList<>());
+            merged.addAll(posts);
+        });
+
+        // a god can have both associated and tagged posts, keep the newest limitPerGod of both. A post both
+        // associated to and tagged with the god is in both branches.
+        postsByGodId.replaceAll((godId, posts) -> getNewestDistinct(posts, limitPerGod));
+        return postsByGodId;
+    }
+
+    private static List<Bson> getTopNPipeline(Bson filter, Object groupKey, int limitPerKey) {
+        return List.of(
+                Aggregates.match(filter),
+                Aggregates.group(groupKey,
+                        Accumulators.topN("posts", descending("_id"), "$$ROOT", limitPerKey))
+        );
+    }
+
+    private static List<Post> getNewestDistinct(List<Post> posts, int limit) {
+        return posts.stream()
+                .filter(distinctByKey(Post::getPostId))
+                .sorted(Comparator.comparing((Post p) -> new ObjectId(p.getPostId())).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private static <T> Predicate<T> distinctByKey(Function<T, ?> key) {
+        Set<Object> seen = new HashSet<>();
+        return t -> seen.add(key.apply(t));
+    }
+
+    private Map<String, List<Post>> aggregateTopNPosts(Bson filter, Object groupKey, int limitPerKey) {
+        return aggregateTopNPosts(getTopNPipeline(filter, groupKey, limitPerKey));
+    }
+
+    /**
+     * @param pipeline stages grouping the posts into a "posts" array per key, the posts of a key grouped more
+     *                 than once are concatenated
+     */
+    private Map<String, List<Post>> aggregateTopNPosts(List<Bson> pipeline) {
+        MongoCollection<Document> collection = getCollection();
+
+        // grouped posts are decoded straight from the raw BSON with the collection's Post codec
+        Codec<Post> postCodec = collection.getCodecRegistry().get(Post.class);
+        Map<String, List<Post>> postsByKey = new HashMap<>();
+        try (MongoCursor<RawBsonDocument> iter = collection.aggregate(pipeline, RawBsonDocument.class).iterator()) {
+            while (iter.hasNext()) {
+                RawBsonDocument doc = iter.next();
+                BsonValue key = doc.get("_id");
+                if (key == null || key.isNull()) {
+                    continue;
+                }
+                List<Post> posts = new ArrayList<>();
+                for (BsonValue postDoc : doc.getArray("posts")) {
+                    posts.add(postCodec.decode(new BsonDocumentReader(postDoc.asDocument()),
+                            DecoderContext.builder().build()));
+                }
+                // branches of a union can group under the same key
+                postsByKey.computeIfAbsent(
+                                key.isObjectId() ? key.asObjectId().getValue().toHexString() : key.asString().getValue(),
+                                k -> new ArrayList<>())
+                        .addAll(posts);
+            }
+        } catch (MongoException e) {
+            log.error("Unable to aggregate posts", e);
+            throw new RuntimeException(e);
+        }
+        return postsByKey;
+    }
+
     public List<Post> getPostsPaginated(String associationId, PostAssociationType associationType, int limit,
                                         Optional<String> lastPostId,
                                         boolean onlyProcessed) {
@@ -367,16 +638,15 @@ public class PostsDao extends BaseDao {
             );
         }
 
-        FindIterable<Document> docs = collection.find(filter)
+        FindIterable<Post> docs = collection.find(filter, Post.class)
                 .sort(descending("_id")) // _id contains the create time as well
                 .limit(limit);
 
         List<Post> posts = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Post> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                posts.add(serde.fromJson(doc.toJson(), Post.class));
+                posts.add(iter.next());
             }
         }
 
@@ -394,22 +664,84 @@ public class PostsDao extends BaseDao {
         Bson finalFilter = getFinalFilter(postType, lastPostId, contentFilter, false);
         finalFilter = Filters.and(getIsDeletedFilter(false), finalFilter);
 
-        FindIterable<Document> docs = collection.find(finalFilter)
+        FindIterable<Post> docs = collection.find(finalFilter, Post.class)
                 .sort(descending("_id")) // _id contains the create time as well
                 .limit(limit);
 
         List<Post> posts = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Post> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                posts.add(serde.fromJson(doc.toJson(), Post.class));
+                posts.add(iter.next());
             }
         }
 
         return posts;
     }
 
+    /**
+     * same posts as getPostsByType, only their ids are read
+     */
+    public List<String> getPostIdsByType(PostType postType, int limit) {
+        return findPostIdsByType(postType, Filters.empty(), limit);
+    }
+
+    /**
+     * @return the ids out of the given ones which getPostIdsByType would return
+     */
+    public List<String> getPostIdsByType(PostType postType, Collection<String> postIds) {
+        if (postIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ObjectId> ids = postIds.stream().map(ObjectId::new).toList();
+        return findPostIdsByType(postType, Filters.in("_id", ids), ids.size());
+    }
+
+    public List<String> getPostIdsByTypeUpdatedSince(PostType postType, Date since, int limit) {
+        return findPostIdsByType(postType, gte("updateTime", since), limit);
+    }
+
+    /**
+     * @return ids of the posts updated since, which are deleted or not processed anymore
+     */
+    public List<String> getNotProcessedPostIdsByTypeUpdatedSince(PostType postType, Date since, int limit) {
+        Bson filter = Filters.and(
+                Filters.eq("type", postType.name()),
+                gte("updateTime", since),
+                Filters.or(getIsDeletedFilter(true), Filters.not(getProcessedContentFilter())));
+        return findPostIds(filter, limit);
+    }
+
+    private List<String> findPostIdsByType(PostType postType, Bson filter, int limit) {
+        Bson contentFilter = Filters.or(
+                Filters.eq("contentUploadStatus", ContentUploadStatus.PROCESSED),
+                Filters.eq("contentUploadStatus", ContentUploadStatus.SUCCESS_NO_CONTENT)
+        );
+
+        Bson finalFilter = getFinalFilter(postType, Optional.empty(), contentFilter, false);
+        finalFilter = Filters.and(getIsDeletedFilter(false), finalFilter, filter);
+        return findPostIds(finalFilter, limit);
+    }
+
+    private List<String> findPostIds(Bson filter, int limit) {
+        MongoCollection<Document> collection = getCollection();
+
+        FindIterable<Document> docs = collection.find(filter)
+                .projection(Projections.include("_id"))
+                .sort(descending("_id")) // _id contains the create time as well
+                .limit(limit);
+
+        List<String> postIds = new ArrayList<>();
+
+        try (MongoCursor<Document> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                postIds.add(iter.next().getObjectId("_id").toHexString());
+            }
+        }
+
+        return postIds;
+    }
+
     public List<Post> getPostsByTypeAndStatus(PostType postType, int limit,
                                               Optional<String> lastPostId,
                                               ContentUploadStatus status) {
@@ -418,22 +750,95 @@ public class PostsDao extends BaseDao {
         Bson finalFilter = getFinalFilter(postType, lastPostId, contentFilter, true);
         finalFilter = Filters.and(getIsDeletedFilter(false), finalFilter);
 
-        FindIterable<Document> docs = collection.find(finalFilter)
+        FindIterable<Post> docs = collection.find(finalFilter, Post.class)
                 .sort(ascending("_id")) // _id contains the create time as well
                 .limit(limit);
 
         List<Post> posts = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<Post> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                posts.add(iter.next());
+            }
+        }
+
+        return posts;
+    }
+
+    /**
+     * @return raw uploaded posts which no node is encoding at the moment
+     */
+    public List<Post> getPostsPendingEncoding(PostType postType, int limit) {
+        MongoCollection<Document> collection = getCollection();
+        Bson finalFilter = Filters.and(
+                getIsDeletedFilter(false),
+                getFinalFilter(postType, Optional.empty(), getPendingEncodingFilter(), true),
+                getNoActiveEncodingLeaseFilter());
+
+        FindIterable<Post> docs = collection.find(finalFilter, Post.class)
+                .sort(ascending("_id"))
+                .limit(limit);
+
+        List<Post> posts = new ArrayList<>();
+
+        try (MongoCursor<Post> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                posts.add(serde.fromJson(doc.toJson(), Post.class));
+                posts.add(iter.next());
             }
         }
 
         return posts;
     }
 
+    public MongoChangeStreamCursor<ChangeStreamDocument<Document>> watchRawUploads(Optional<BsonDocument> resumeToken) {
+        return watchStatus(getCollection(), "contentUploadStatus", ContentUploadStatus.RAW_UPLOADED.name(), resumeToken);
+    }
+
+    public boolean claimEncodingLease(String postId, String leaseToken, long leaseMs) {
+        return claimEncodingLease(getCollection(), postId, getPendingEncodingFilter(), leaseToken, leaseMs);
+    }
+
+    public boolean extendEncodingLease(String postId, String leaseToken, long leaseMs) {
+        return extendEncodingLease(getCollection(), postId, leaseToken, leaseMs);
+    }
+
+    public void releaseEncodingLease(String postId, String leaseToken) {
+        releaseEncodingLease(getCollection(), postId, leaseToken);
+    }
+
+    private void updateProcessedPostsCount(Document before, ContentUploadStatus status) {
+        if (before.getBoolean("isDeleted", false)) {
+            return;
+        }
+        String previousStatus = before.getString("contentUploadStatus");
+        int delta = (isProcessed(status.name()) ? 1 : 0) - (isProcessed(previousStatus) ? 1 : 0);
+        if (delta == 0) {
+            return;
+        }
+
+        incrementProcessedPostsCount(before, delta);
+    }
+
+    private void incrementProcessedPostsCount(Document post, int delta) {
+        // same entities as counted by countPostsForInfluencer
+        Set<ObjectId> influencerIds = new HashSet<>();
+        Optional.ofNullable(post.getObjectId("associatedInfluencerId")).ifPresent(influencerIds::add);
+        Optional.ofNullable(post.getObjectId("fromUserId")).ifPresent(influencerIds::add);
+        for (ObjectId influencerId : influencerIds) {
+            // the post is already written, a lost increment is corrected by the reconciliation
+            try {
+                countersDao.increment(influencerId.toHexString(), CountersDao.Counter.INFLUENCER_POSTS, delta);
+            } catch (RuntimeException e) {
+                log.error("unable to update posts count for influencer:" + influencerId, e);
+            }
+        }
+    }
+
+    private static boolean isProcessed(String status) {
+        return ContentUploadStatus.PROCESSED.name().equals(status) ||
+                ContentUploadStatus.SUCCESS_NO_CONTENT.name().equals(status);
+    }
+
     public int countPostsForInfluencer(String influencerId) {
         MongoCollection<Document> collection = getCollection();
 
@@ -496,6 +901,21 @@ public class PostsDao extends BaseDao {
                 indexOptions);
         log.info(String.format("Index created: %s", resultCreateIndex));
 
+        indexOptions = new IndexOptions()
+                .name("update_time_index");
+        resultCreateIndex = collection.createIndex(Indexes.descending("updateTime"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+
+    }
+
+    private static Bson getProcessedContentFilter() {
+        return Filters.in("contentUploadStatus",
+                ContentUploadStatus.PROCESSED.name(), ContentUploadStatus.SUCCESS_NO_CONTENT.name());
+    }
+
+    private static Bson getPendingEncodingFilter() {
+        return Filters.eq("contentUploadStatus", ContentUploadStatus.RAW_UPLOADED.name());
     }
 
     private Bson getIsDeletedFilter(boolean isDeleted) {
@@ -2,10 +2,11 @@ package com.enigma.audiobook.backend.dao;
 
 import com.enigma.audiobook.backend.models.PostType;
 import com.enigma.audiobook.backend.models.ScoredContent;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.*;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.IndexOptions;
-import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.*;
+import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.client.result.InsertOneResult;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +16,7 @@ import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
@@ -29,6 +31,8 @@ public class ScoredContentDao extends BaseDao {
     private final String database;
     private static final String COLLECTION_NAME_PREFIX = "scoredContent";
     private static final String SCORED_CONTENT_COLLECTION_FORMAT = COLLECTION_NAME_PREFIX + "_%s";
+    // scored content kept up to date by the incremental rescoring, it is never dropped
+    public static final String LIVE_SCORED_CONTENT_COLLECTION = getCollectionName("live");
 
     public ScoredContentDao(MongoClient mongoClient, String database) {
         this.mongoClient = mongoClient;
@@ -40,7 +44,7 @@ public class ScoredContentDao extends BaseDao {
 
         List<Document> docs = scoredContents.stream()
                 .map(sc -> {
-                    Document doc = Document.parse(serde.toJson(sc));
+                    Document doc = serde.toDocument(sc);
                     doc.append("_id", new ObjectId());
                     doc.append("postId", new ObjectId(doc.getString("postId")));
                     return doc;
@@ -57,10 +61,53 @@ public class ScoredContentDao extends BaseDao {
         }
     }
 
+    /**
+     * Replaces the scored content of each post, or adds it if the post is scored for the first time.
+     */
+    public void upsertScoredContents(String collectionName, List<ScoredContent> scoredContents) {
+        if (scoredContents.isEmpty()) {
+            return;
+        }
+        MongoCollection<Document> collection = getCollectionByName(collectionName);
+
+        List<WriteModel<Document>> writes = scoredContents.stream()
+                .map(sc -> {
+                    Document doc = serde.toDocument(sc);
+                    doc.append("postId", new ObjectId(doc.getString("postId")));
+                    return (WriteModel<Document>) new ReplaceOneModel<>(eq("postId", doc.getObjectId("postId")), doc,
+                            new ReplaceOptions().upsert(true));
+                })
+                .toList();
+        try {
+            BulkWriteResult result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+
+            log.info("Upserted document count: " + result.getUpserts().size());
+            log.info("Modified document count: " + result.getModifiedCount());
+        } catch (MongoException e) {
+            log.error("Unable to upsert due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void removeScoredContents(String collectionName, Collection<String> postIds) {
+        if (postIds.isEmpty()) {
+            return;
+        }
+        MongoCollection<Document> collection = getCollectionByName(collectionName);
+        try {
+            DeleteResult result = collection.deleteMany(
+                    Filters.in("postId", postIds.stream().map(ObjectId::new).toList()));
+            log.info("Deleted document count: " + result.getDeletedCount());
+        } catch (MongoException e) {
+            log.error("Unable to delete due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     public void addScoredContent(String collectionName, ScoredContent scoredContent) {
         MongoCollection<Document> collection = getCollectionByName(collectionName);
 
-        Document doc = Document.parse(serde.toJson(scoredContent));
+        Document doc = serde.toDocument(scoredContent);
         doc.append("_id", new ObjectId());
         doc.append("postId", new ObjectId(doc.getString("postId")));
 
@@ -75,15 +122,14 @@ public class ScoredContentDao extends BaseDao {
     public List<ScoredContent> getScoredContentSorted(String collectionName, int limit, PostType postType) {
         MongoCollection<Document> collection = getCollectionByName(collectionName);
 
-        FindIterable<Document> docs = collection.find(eq("postType", postType.name()))
+        FindIterable<ScoredContent> docs = collection.find(eq("postType", postType.name()), ScoredContent.class)
                 .sort(descending("score", "postId"))
                 .limit(limit);
 
         List<ScoredContent> scoreContent = new ArrayList<>();
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<ScoredContent> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                scoreContent.add(serde.fromJson(doc.toJson(), ScoredContent.class));
+                scoreContent.add(iter.next());
             }
         }
 
@@ -106,15 +152,14 @@ public class ScoredContentDao extends BaseDao {
                 Filters.or(filterScoreLesser, filterScoreAndPostId));
 
 //        Bson orderBySort = orderBy(descending("score"), ascending("_id"));
-        FindIterable<Document> docs = collection.find(finalFilter)
+        FindIterable<ScoredContent> docs = collection.find(finalFilter, ScoredContent.class)
                 .sort(descending("score", "postId"))
                 .limit(limit);
 
         List<ScoredContent> scoreContent = new ArrayList<>();
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<ScoredContent> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                scoreContent.add(serde.fromJson(doc.toJson(), ScoredContent.class));
+                scoreContent.add(iter.next());
             }
         }
 
@@ -133,6 +178,13 @@ public class ScoredContentDao extends BaseDao {
         String resultCreateIndex = collection.createIndex(Indexes.descending("score", "postId"),
                 indexOptions);
         log.info(String.format("Index created: %s", resultCreateIndex));
+
+        indexOptions = new IndexOptions()
+                .name("postId_index")
+                .unique(true);
+        resultCreateIndex = collection.createIndex(Indexes.ascending("postId"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
     }
 
     public List<String> listCollections() {
@@ -154,6 +206,7 @@ public class ScoredContentDao extends BaseDao {
         List<String> collectionNamesFinal =
                 collectionNames.stream()
                         .filter(name -> name.startsWith(COLLECTION_NAME_PREFIX))
+                        .filter(name -> !name.equals(LIVE_SCORED_CONTENT_COLLECTION))
                         .toList();
         MongoDatabase db = mongoClient.getDatabase(database);
         collectionNamesFinal.forEach(name -> db.getCollection(name).drop());
@@ -0,0 +1,103 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Serialized filters of the posts seen by the users, see SeenPostsCache.
+ */
+@Slf4j
+@Repository
+public class SeenPostsDao extends BaseDao {
+    private final MongoClient mongoClient;
+    private final String database;
+    private static final String SEEN_POSTS_COLLECTION = "seenPosts";
+
+    public SeenPostsDao(MongoClient mongoClient, String database) {
+        this.mongoClient = mongoClient;
+        this.database = database;
+    }
+
+    /**
+     * @param caughtUpTo the filter has all the views of the user updated before this time
+     */
+    public void upsertSeenPosts(String userId, byte[] filter, Date caughtUpTo) {
+        MongoCollection<Document> collection = getCollection();
+        Document query = new Document().append("userId", new ObjectId(userId));
+
+        Bson updates = Updates.combine(
+                Updates.set("userId", new ObjectId(userId)),
+                Updates.set("filter", new Binary(filter)),
+                Updates.set("caughtUpTo", caughtUpTo),
+                Updates.set("updateTime", getCurrentTime())
+        );
+
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        try {
+            UpdateResult result = collection.updateOne(query, updates, options);
+
+            log.info("Modified document count: " + result.getModifiedCount());
+            log.info("Upserted id: " + result.getUpsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<PersistedSeenPosts> getSeenPosts(String userId) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find(eq("userId", new ObjectId(userId))).first();
+        if (doc == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new PersistedSeenPosts(doc.get("filter", Binary.class).getData(),
+                doc.getDate("caughtUpTo")));
+    }
+
+    public void initCollectionAndIndexes() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        db.createCollection(SEEN_POSTS_COLLECTION);
+
+        MongoCollection<Document> collection = db.getCollection(SEEN_POSTS_COLLECTION);
+
+        IndexOptions indexOptions = new IndexOptions()
+                .unique(true)
+                .name("user_id_index");
+        String resultCreateIndex = collection.createIndex(Indexes.ascending("userId"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+    }
+
+    private MongoCollection<Document> getCollection() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        return db.getCollection(SEEN_POSTS_COLLECTION);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class PersistedSeenPosts {
+        byte[] filter;
+        Date caughtUpTo;
+    }
+}
@@ -0,0 +1,181 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Server side state of the multipart uploads, so that a client which dropped mid upload can resume with only
+ * the parts S3 doesn't have yet. Sessions left active past their expiry are aborted by UploadSessionCleanup.
+ */
+@Slf4j
+@Repository
+public class UploadSessionDao extends BaseDao {
+    private final MongoClient mongoClient;
+    private final String database;
+    private static final String UPLOAD_SESSIONS_COLLECTION = "uploadSessions";
+
+    public UploadSessionDao(MongoClient mongoClient, String database) {
+        this.mongoClient = mongoClient;
+        this.database = database;
+    }
+
+    public void createSession(UploadSession session) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = new Document()
+                .append("uploadId", session.getUploadId())
+                .append("objectKey", session.getObjectKey())
+                .append("totalSize", session.getTotalSize())
+                .append("chunkSize", session.getChunkSize())
+                .append("totalNumOfParts", session.getTotalNumOfParts())
+                .append("confirmedPartNums", new ArrayList<>())
+                .append("state", UploadSessionState.ACTIVE.name())
+                .append("expiry", session.getExpiry())
+                .append("createTime", getCurrentTime())
+                .append("updateTime", getCurrentTime());
+        try {
+            InsertOneResult result = collection.insertOne(doc);
+            log.info("Inserted upload session id: " + result.getInsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to insert due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<UploadSession> getSession(String uploadId) {
+        MongoCollection<Document> collection = getCollection();
+
+        Document doc = collection.find(eq("uploadId", uploadId)).first();
+        return Optional.ofNullable(doc).map(UploadSessionDao::toUploadSession);
+    }
+
+    /**
+     * Records the parts S3 has for the upload and keeps the session alive till the new expiry.
+     */
+    public void updateConfirmedParts(String uploadId, List<Integer> confirmedPartNums, Date expiry) {
+        MongoCollection<Document> collection = getCollection();
+        Bson query = Filters.and(
+                eq("uploadId", uploadId),
+                eq("state", UploadSessionState.ACTIVE.name()));
+        Bson updates = Updates.combine(
+                Updates.set("confirmedPartNums", confirmedPartNums),
+                Updates.set("expiry", expiry),
+                Updates.set("updateTime", getCurrentTime()));
+
+        try {
+            UpdateResult result = collection.updateOne(query, updates);
+            log.info("Modified document count: " + result.getModifiedCount());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void updateState(String uploadId, UploadSessionState state) {
+        MongoCollection<Document> collection = getCollection();
+        Bson updates = Updates.combine(
+                Updates.set("state", state.name()),
+                Updates.set("updateTime", getCurrentTime()));
+
+        try {
+            UpdateResult result = collection.updateOne(eq("uploadId", uploadId), updates);
+            log.info("Modified document count: " + result.getModifiedCount());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<UploadSession> getExpiredActiveSessions(int limit) {
+        MongoCollection<Document> collection = getCollection();
+        Bson query = Filters.and(
+                eq("state", UploadSessionState.ACTIVE.name()),
+                Filters.lt("expiry", getCurrentTime()));
+
+        List<UploadSession> sessions = new ArrayList<>();
+        try (MongoCursor<Document> cursor = collection.find(query).limit(limit).iterator()) {
+            while (cursor.hasNext()) {
+                sessions.add(toUploadSession(cursor.next()));
+            }
+        }
+        return sessions;
+    }
+
+    public void initCollectionAndIndexes() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        db.createCollection(UPLOAD_SESSIONS_COLLECTION);
+
+        MongoCollection<Document> collection = db.getCollection(UPLOAD_SESSIONS_COLLECTION);
+
+        IndexOptions indexOptions = new IndexOptions()
+                .unique(true)
+                .name("upload_id_index");
+        String resultCreateIndex = collection.createIndex(Indexes.ascending("uploadId"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+
+        indexOptions = new IndexOptions()
+                .name("state_expiry_index");
+        resultCreateIndex = collection.createIndex(Indexes.ascending("state", "expiry"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+    }
+
+    private static UploadSession toUploadSession(Document doc) {
+        UploadSession session = new UploadSession();
+        session.setUploadId(doc.getString("uploadId"));
+        session.setObjectKey(doc.getString("objectKey"));
+        session.setTotalSize(doc.getLong("totalSize"));
+        session.setChunkSize(doc.getLong("chunkSize"));
+        session.setTotalNumOfParts(doc.getLong("totalNumOfParts"));
+        session.setConfirmedPartNums(new ArrayList<>(doc.getList("confirmedPartNums", Integer.class, new ArrayList<>())));
+        session.setState(UploadSessionState.valueOf(doc.getString("state")));
+        session.setExpiry(doc.getDate("expiry"));
+        return session;
+    }
+
+    private MongoCollection<Document> getCollection() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        return db.getCollection(UPLOAD_SESSIONS_COLLECTION);
+    }
+
+    public enum UploadSessionState {
+        ACTIVE,
+        COMPLETED,
+        ABORTED
+    }
+
+    @Data
+    public static class UploadSession {
+        String uploadId;
+        String objectKey;
+        long totalSize;
+        long chunkSize;
+        long totalNumOfParts;
+        // parts S3 had when the client last resumed
+        List<Integer> confirmedPartNums = new ArrayList<>();
+        UploadSessionState state;
+        Date expiry;
+    }
+}
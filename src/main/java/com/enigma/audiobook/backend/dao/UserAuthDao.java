@@ -63,13 +63,12 @@ public class UserAuthDao extends BaseDao {
         Bson filter = Filters.and(eq("userId", new ObjectId(userId)),
                 eq("authType", AuthType.ADMIN.name()));
 
-        FindIterable<Document> docs = collection.find(filter);
+        FindIterable<AuthForUser> docs = collection.find(filter, AuthForUser.class);
 
         List<AuthForUser> authsForUser = new ArrayList<>();
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<AuthForUser> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                authsForUser.add(serde.fromJson(doc.toJson(), AuthForUser.class));
+                authsForUser.add(iter.next());
             }
         }
 
@@ -0,0 +1,243 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.enigma.audiobook.backend.models.FollowingType;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.client.*;
+import com.mongodb.client.model.*;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Sorts.descending;
+
+/**
+ * Materialized feed of every follower, one entry per (followerUserId, postId). Entries are written when a post
+ * gets published (fan-out-on-write) and expire after INBOX_ENTRY_TTL_DAYS, which keeps each inbox capped.
+ * Followees with too many followers are recorded as pull sources instead and read at request time.
+ * <p>
+ * An entry keeps every followee the post reached the follower through, e.g. the mandir and the influencer who
+ * posted there, and is only deleted once the follower unfollowed all of them.
+ */
+@Slf4j
+@Repository
+public class UserFeedInboxDao extends BaseDao {
+    private final MongoClient mongoClient;
+    private final String database;
+    private static final String USER_FEED_INBOX_COLLECTION = "userFeedInbox";
+    private static final String FEED_PULL_SOURCES_COLLECTION = "feedPullSources";
+    private static final long INBOX_ENTRY_TTL_DAYS = 30;
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    public UserFeedInboxDao(MongoClient mongoClient, String database) {
+        this.mongoClient = mongoClient;
+        this.database = database;
+    }
+
+    public void addPostForFollowers(Collection<String> followerUserIds, String postId,
+                                    String sourceId, FollowingType followingType) {
+        if (followerUserIds.isEmpty()) {
+            return;
+        }
+        MongoCollection<Document> collection = getCollection();
+
+        List<UpdateOneModel<Document>> updates = followerUserIds.stream()
+                .map(followerUserId -> getAddSourceUpdate(followerUserId, postId, sourceId, followingType))
+                .toList();
+        upsertRetryingDuplicates(collection, updates);
+    }
+
+    public void addPostsForFollower(String followerUserId, Collection<String> postIds,
+                                    String sourceId, FollowingType followingType) {
+        if (postIds.isEmpty()) {
+            return;
+        }
+        MongoCollection<Document> collection = getCollection();
+
+        List<UpdateOneModel<Document>> updates = postIds.stream()
+                .map(postId -> getAddSourceUpdate(followerUserId, postId, sourceId, followingType))
+                .toList();
+        upsertRetryingDuplicates(collection, updates);
+    }
+
+    public void removeSourceForFollower(String followerUserId, String sourceId) {
+        MongoCollection<Document> collection = getCollection();
+        ObjectId followerId = new ObjectId(followerUserId);
+        try {
+            UpdateResult result = collection.updateMany(
+                    Filters.and(eq("followerUserId", followerId), eq("sources.sourceId", new ObjectId(sourceId))),
+                    Updates.pull("sources", new Document("sourceId", new ObjectId(sourceId))));
+            log.info("Modified document count: " + result.getModifiedCount());
+
+            DeleteResult deleteResult = collection.deleteMany(Filters.or(
+                    Filters.and(eq("followerUserId", followerId), Filters.size("sources", 0)),
+                    // entries written before the sources were kept, they expire with the TTL
+                    Filters.and(eq("followerUserId", followerId), eq("sourceId", new ObjectId(sourceId)),
+                            Filters.exists("sources", false))));
+            log.info("Deleted document count: " + deleteResult.getDeletedCount());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return post ids of the inbox, newest first
+     */
+    public List<String> getPostIds(String followerUserId, int limit, Optional<String> lastPostId) {
+        MongoCollection<Document> collection = getCollection();
+
+        Bson filter = eq("followerUserId", new ObjectId(followerUserId));
+        if (lastPostId.isPresent()) {
+            filter = Filters.and(filter, lt("postId", new ObjectId(lastPostId.get())));
+        }
+
+        FindIterable<Document> docs = collection.find(filter)
+                .projection(Projections.include("postId"))
+                .sort(descending("postId"))
+                .limit(limit);
+
+        List<String> postIds = new ArrayList<>();
+        try (MongoCursor<Document> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                postIds.add(iter.next().getObjectId("postId").toHexString());
+            }
+        }
+        return postIds;
+    }
+
+    public void markPullSource(String followeeId, FollowingType followingType) {
+        MongoCollection<Document> collection = getPullSourcesCollection();
+        Document query = new Document().append("_id", new ObjectId(followeeId));
+
+        Bson updates = Updates.combine(
+                Updates.set("followingType", followingType.name()),
+                Updates.set("updateTime", getCurrentTime()));
+        UpdateOptions options = new UpdateOptions().upsert(true);
+        try {
+            UpdateResult result = collection.updateOne(query, updates, options);
+
+            log.info("Modified document count: " + result.getModifiedCount());
+            log.info("Upserted id: " + result.getUpsertedId());
+        } catch (MongoException e) {
+            log.error("Unable to update due to an error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isPullSource(String followeeId) {
+        return !getPullSources(Collections.singleton(followeeId)).isEmpty();
+    }
+
+    /**
+     * @return the given followee ids which are read at request time instead of being fanned out
+     */
+    public Set<String> getPullSources(Collection<String> followeeIds) {
+        if (followeeIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        MongoCollection<Document> collection = getPullSourcesCollection();
+
+        List<ObjectId> ids = followeeIds.stream().map(ObjectId::new).toList();
+        FindIterable<Document> docs = collection.find(Filters.in("_id", ids))
+                .projection(Projections.include("_id"));
+
+        Set<String> pullSources = new HashSet<>();
+        try (MongoCursor<Document> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                pullSources.add(iter.next().getObjectId("_id").toHexString());
+            }
+        }
+        return pullSources;
+    }
+
+    public void initCollectionAndIndexes() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        db.createCollection(USER_FEED_INBOX_COLLECTION);
+        db.createCollection(FEED_PULL_SOURCES_COLLECTION);
+
+        MongoCollection<Document> collection = db.getCollection(USER_FEED_INBOX_COLLECTION);
+
+        IndexOptions indexOptions = new IndexOptions()
+                .name("follower_post_index")
+                .unique(true);
+        String resultCreateIndex = collection.createIndex(
+                Indexes.compoundIndex(Indexes.ascending("followerUserId"), Indexes.descending("postId")),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+
+        indexOptions = new IndexOptions()
+                .name("follower_sources_index");
+        resultCreateIndex = collection.createIndex(Indexes.ascending("followerUserId", "sources.sourceId"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+
+        indexOptions = new IndexOptions()
+                .name("create_time_ttl_index")
+                .expireAfter(INBOX_ENTRY_TTL_DAYS, TimeUnit.DAYS);
+        resultCreateIndex = collection.createIndex(Indexes.ascending("createTime"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
+    }
+
+    private UpdateOneModel<Document> getAddSourceUpdate(String followerUserId, String postId,
+                                                        String sourceId, FollowingType followingType) {
+        Bson query = Filters.and(
+                eq("followerUserId", new ObjectId(followerUserId)),
+                eq("postId", new ObjectId(postId)));
+        Bson updates = Updates.combine(
+                Updates.addToSet("sources", new Document()
+                        .append("sourceId", new ObjectId(sourceId))
+                        .append("followingType", followingType.name())),
+                Updates.setOnInsert("createTime", getCurrentTime()));
+        return new UpdateOneModel<>(query, updates, new UpdateOptions().upsert(true));
+    }
+
+    private void upsertRetryingDuplicates(MongoCollection<Document> collection, List<UpdateOneModel<Document>> updates) {
+        try {
+            collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // concurrent upserts of the same entry, e.g. a post reachable from two followees, one of them fails
+            // on the unique index. The entry exists now, so the retry adds the source to it.
+            boolean onlyDuplicates = e.getWriteErrors()
+                    .stream()
+                    .allMatch(error -> error.getCode() == DUPLICATE_KEY_ERROR_CODE);
+            if (!onlyDuplicates) {
+                log.error("Unable to upsert into user feed inbox", e);
+                throw new RuntimeException(e);
+            }
+            List<UpdateOneModel<Document>> retries = e.getWriteErrors()
+                    .stream()
+                    .map(error -> updates.get(error.getIndex()))
+                    .toList();
+            try {
+                collection.bulkWrite(retries, new BulkWriteOptions().ordered(false));
+            } catch (MongoException retryException) {
+                log.error("Unable to upsert into user feed inbox", retryException);
+                throw new RuntimeException(retryException);
+            }
+        } catch (MongoException e) {
+            log.error("Unable to upsert into user feed inbox", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private MongoCollection<Document> getCollection() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        return db.getCollection(USER_FEED_INBOX_COLLECTION);
+    }
+
+    private MongoCollection<Document> getPullSourcesCollection() {
+        MongoDatabase db = mongoClient.getDatabase(database);
+        return db.getCollection(FEED_PULL_SOURCES_COLLECTION);
+    }
+}
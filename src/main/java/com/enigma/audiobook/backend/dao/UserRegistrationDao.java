@@ -73,7 +73,7 @@ public class UserRegistrationDao extends BaseDao {
         MongoCollection<Document> collection = getCollection();
         Document query = new Document().append("_id", new ObjectId(userId));
 
-        Document metadataDoc = Document.parse(serde.toJson(metadata));
+        Document metadataDoc = serde.toDocument(metadata);
         Bson updates = Updates.combine(
                 Updates.set("authUserId", authUserId),
                 Updates.set("phoneNumber", phoneNumber),
@@ -116,7 +116,7 @@ public class UserRegistrationDao extends BaseDao {
         userDetails.add(userInfo.getPhoneNum());
         metadata.setUserDetails(userDetails);
 
-        Document metadataDoc = Document.parse(serde.toJson(metadata));
+        Document metadataDoc = serde.toDocument(metadata);
         log.info("metadata doc:{}", metadataDoc);
         Bson updates = Updates.combine(
                 Updates.set("metadata", metadataDoc),
@@ -148,26 +148,26 @@ public class UserRegistrationDao extends BaseDao {
         Bson projectionFields = Projections.fields(
                 Projections.include("_id", "authUserId"));
         // Retrieves the first matching document, applying a projection and a descending sort to the results
-        Document doc = collection.find(eq("authUserId", authUserId))
+        User doc = collection.find(eq("authUserId", authUserId), User.class)
                 .projection(projectionFields)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), User.class));
+            return Optional.of(doc);
         }
     }
 
     public Optional<User> getUser(String userId) {
         MongoCollection<Document> collection = getCollection();
-        Document doc = collection.find(eq("_id", new ObjectId(userId)))
+        User doc = collection.find(eq("_id", new ObjectId(userId)), User.class)
                 .first();
         // Prints a message if there are no result documents, or prints the result document as JSON
         if (doc == null) {
             return Optional.empty();
         } else {
-            return Optional.of(serde.fromJson(doc.toJson(), User.class));
+            return Optional.of(doc);
         }
     }
 
@@ -1,20 +1,22 @@
 package com.enigma.audiobook.backend.dao;
 
 import com.enigma.audiobook.backend.models.View;
+import com.google.common.base.Preconditions;
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.*;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.InsertOneResult;
-import com.mongodb.client.result.UpdateResult;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.springframework.stereotype.Repository;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Sorts.ascending;
@@ -23,21 +25,30 @@ import static com.mongodb.client.model.Sorts.descending;
 @Slf4j
 @Repository
 public class ViewsDao extends BaseDao {
+    private static final int VIEWS_BUFFER_SHARDS = 16;
+    private static final int VIEWS_BUFFER_BATCH_SIZE = 500;
+    private static final int VIEWS_BUFFER_MAX_PENDING = 100000;
+    private static final int VIEWS_BUFFER_MAX_ATTEMPTS = 3;
+    private static final long VIEWS_BUFFER_FLUSH_INTERVAL_MS = 1000;
 
     private final MongoClient mongoClient;
     private final String database;
     private static final String VIEWS_COLLECTION = "views";
+    private final WriteBehindBuffer<String, View> viewsBuffer;
 
     public ViewsDao(MongoClient mongoClient, String database) {
         this.mongoClient = mongoClient;
         this.database = database;
+        this.viewsBuffer = new WriteBehindBuffer<>("views", VIEWS_BUFFER_SHARDS, VIEWS_BUFFER_BATCH_SIZE,
+                VIEWS_BUFFER_MAX_PENDING, VIEWS_BUFFER_MAX_ATTEMPTS, VIEWS_BUFFER_FLUSH_INTERVAL_MS,
+                ViewsDao::mergeViews, this::bulkUpsertViews);
     }
 
     public void addView(View view) {
         MongoCollection<Document> collection = getCollection();
 
         try {
-            Document doc = Document.parse(serde.toJson(view));
+            Document doc = serde.toDocument(view);
             doc.append("_id", new ObjectId())
                     .append("postId", new ObjectId(doc.getString("postId")))
                     .append("userId", new ObjectId(doc.getString("userId")))
@@ -53,51 +64,91 @@ public class ViewsDao extends BaseDao {
         }
     }
 
-    public void upsertView(View view) {
+    /**
+     * Buffered, clients report the progress of a view repeatedly while playing. The reports of the same user
+     * and post are coalesced and written within VIEWS_BUFFER_FLUSH_INTERVAL_MS.
+     *
+     * @return false if the view was refused as the buffer is full, the client has to retry later
+     */
+    public boolean upsertView(View view) {
+        // validated on the request thread, the buffer only holds writable views
+        Preconditions.checkArgument(ObjectId.isValid(view.getPostId()) && ObjectId.isValid(view.getUserId()),
+                "invalid view:" + view);
+        return viewsBuffer.add(getBufferKey(view), view);
+    }
+
+    /**
+     * Validates all the views before buffering any, a batch is taken in whole or not at all.
+     *
+     * @return false if the batch was refused as the buffer is full, the client has to retry later
+     */
+    public boolean upsertViews(List<View> views) {
+        for (View view : views) {
+            Preconditions.checkArgument(ObjectId.isValid(view.getPostId()) && ObjectId.isValid(view.getUserId()),
+                    "invalid view:" + view);
+        }
+        return viewsBuffer.addAll(views, ViewsDao::getBufferKey);
+    }
+
+    private static String getBufferKey(View view) {
+        return view.getUserId() + ":" + view.getPostId();
+    }
+
+    @PreDestroy
+    public void flushViews() {
+        viewsBuffer.close();
+    }
+
+    private void bulkUpsertViews(List<View> views) {
         MongoCollection<Document> collection = getCollection();
-        Document query = new Document()
-                .append("postId", new ObjectId(view.getPostId()))
-                .append("userId", new ObjectId(view.getUserId()));
-
-        Bson updates = Updates.combine(
-                Updates.set("postId", new ObjectId(view.getPostId())),
-                Updates.set("userId", new ObjectId(view.getUserId())),
-                Updates.min("createTime", getCurrentTime()),
-                Updates.set("updateTime", getCurrentTime()),
-                Updates.max("viewDurationSec", view.getViewDurationSec()),
-                Updates.max("totalLengthSec", view.getTotalLengthSec())
-        );
-
-        UpdateOptions options = new UpdateOptions().upsert(true);
-        try {
 
-            UpdateResult result = collection.updateOne(query, updates, options);
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        for (View view : views) {
+            Document query = new Document()
+                    .append("postId", new ObjectId(view.getPostId()))
+                    .append("userId", new ObjectId(view.getUserId()));
+
+            Bson updates = Updates.combine(
+                    Updates.set("postId", new ObjectId(view.getPostId())),
+                    Updates.set("userId", new ObjectId(view.getUserId())),
+                    Updates.min("createTime", getCurrentTime()),
+                    Updates.set("updateTime", getCurrentTime()),
+                    Updates.max("viewDurationSec", view.getViewDurationSec()),
+                    Updates.max("totalLengthSec", view.getTotalLengthSec())
+            );
+            writes.add(new UpdateOneModel<>(query, updates, new UpdateOptions().upsert(true)));
+        }
+
+        try {
+            BulkWriteResult result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
 
+            log.info("Upserted document count: " + result.getUpserts().size());
             log.info("Modified document count: " + result.getModifiedCount());
-            log.info("Upserted id: " + result.getUpsertedId());
-            if (result.getModifiedCount() <= 0 && result.getUpsertedId() == null) {
-                throw new RuntimeException("unable to upsert view:" + view);
-            }
         } catch (MongoException e) {
-            log.error("Unable to update due to an error", e);
+            log.error("Unable to bulk update due to an error", e);
             throw new RuntimeException(e);
         }
     }
 
+    private static View mergeViews(View view, View newerView) {
+        view.setViewDurationSec(Math.max(view.getViewDurationSec(), newerView.getViewDurationSec()));
+        view.setTotalLengthSec(Math.max(view.getTotalLengthSec(), newerView.getTotalLengthSec()));
+        return view;
+    }
+
     public List<View> getViewsForUser(String userId, int limit) {
         MongoCollection<Document> collection = getCollection();
 
         // from latest to last
-        FindIterable<Document> docs = collection.find(eq("userId", new ObjectId(userId)))
+        FindIterable<View> docs = collection.find(eq("userId", new ObjectId(userId)), View.class)
                 .sort(descending("updateTime", "_id"))
                 .limit(limit);
 
         List<View> views = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<View> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                views.add(serde.fromJson(doc.toJson(), View.class));
+                views.add(iter.next());
             }
         }
 
@@ -112,35 +163,63 @@ public class ViewsDao extends BaseDao {
         Bson finalFilter = Filters.and(
                 eq("userId", new ObjectId(userId)),
                 filterUpdateTimeLesser);
-        FindIterable<Document> docs = collection.find(finalFilter)
+        FindIterable<View> docs = collection.find(finalFilter, View.class)
                 .sort(descending("updateTime", "_id"))
                 .limit(limit);
 
         List<View> views = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<View> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                views.add(serde.fromJson(doc.toJson(), View.class));
+                views.add(iter.next());
             }
         }
 
         return views;
     }
 
+    /**
+     * Only the post ids of the latest views of the user, without decoding the whole views.
+     */
+    public List<String> getViewedPostIdsForUser(String userId, int limit) {
+        return getViewedPostIds(eq("userId", new ObjectId(userId)), limit);
+    }
+
+    public List<String> getViewedPostIdsForUserSince(String userId, Date since, int limit) {
+        return getViewedPostIds(Filters.and(
+                eq("userId", new ObjectId(userId)),
+                Filters.gte("updateTime", since)), limit);
+    }
+
+    private List<String> getViewedPostIds(Bson filter, int limit) {
+        MongoCollection<Document> collection = getCollection();
+
+        FindIterable<Document> docs = collection.find(filter)
+                .projection(Projections.include("postId"))
+                .sort(descending("updateTime", "_id"))
+                .limit(limit);
+
+        List<String> postIds = new ArrayList<>();
+        try (MongoCursor<Document> iter = docs.iterator()) {
+            while (iter.hasNext()) {
+                postIds.add(iter.next().getObjectId("postId").toHexString());
+            }
+        }
+        return postIds;
+    }
+
     public List<View> getViewsForPost(String postId, int limit) {
         MongoCollection<Document> collection = getCollection();
 
-        FindIterable<Document> docs = collection.find(eq("postId", new ObjectId(postId)))
+        FindIterable<View> docs = collection.find(eq("postId", new ObjectId(postId)), View.class)
                 .sort(descending("_id"))
                 .limit(limit);
 
         List<View> views = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<View> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                views.add(serde.fromJson(doc.toJson(), View.class));
+                views.add(iter.next());
             }
         }
 
@@ -158,22 +237,92 @@ public class ViewsDao extends BaseDao {
                     filterIdLesser);
         }
 
-        FindIterable<Document> docs = collection.find(finalFilter)
+        FindIterable<View> docs = collection.find(finalFilter, View.class)
                 .sort(descending("_id"))
                 .limit(limit);
 
         List<View> views = new ArrayList<>();
 
-        try (MongoCursor<Document> iter = docs.iterator()) {
+        try (MongoCursor<View> iter = docs.iterator()) {
             while (iter.hasNext()) {
-                Document doc = iter.next();
-                views.add(serde.fromJson(doc.toJson(), View.class));
+                views.add(iter.next());
             }
         }
 
         return views;
     }
 
+    /**
+     * Per post view counts over all the views of the given posts, grouped server side. Posts without views are
+     * not part of the result.
+     *
+     * @param tierOneViewDurationThreshold views longer than this are tier one
+     * @param tierTwoViewDurationThreshold views longer than this and shorter than the tier one threshold are tier two
+     */
+    public List<PostViewStats> getViewStatsForPosts(Collection<String> postIds,
+                                                    int tierOneViewDurationThreshold,
+                                                    int tierTwoViewDurationThreshold) {
+        if (postIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        MongoCollection<Document> collection = getCollection();
+
+        List<ObjectId> ids = postIds.stream().map(ObjectId::new).toList();
+        Document isTierOne = new Document("$gt", List.of("$viewDurationSec", tierOneViewDurationThreshold));
+        Document isTierTwo = new Document("$and", List.of(
+                new Document("$lt", List.of("$viewDurationSec", tierOneViewDurationThreshold)),
+                new Document("$gt", List.of("$viewDurationSec", tierTwoViewDurationThreshold))));
+
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.in("postId", ids)),
+                Aggregates.group("$postId",
+                        Accumulators.sum("totalViews", 1),
+                        Accumulators.sum("tierOneViews", new Document("$cond", List.of(isTierOne, 1, 0))),
+                        Accumulators.sum("tierTwoViews", new Document("$cond", List.of(isTierTwo, 1, 0)))),
+                Aggregates.project(Projections.fields(
+                        Projections.include("totalViews"),
+                        Projections.computed("tierOnePercent", getPercentExpression("$tierOneViews")),
+                        Projections.computed("tierTwoPercent", getPercentExpression("$tierTwoViews")))));
+
+        List<PostViewStats> viewStats = new ArrayList<>();
+        try (MongoCursor<Document> iter = collection.aggregate(pipeline).allowDiskUse(true).iterator()) {
+            while (iter.hasNext()) {
+                Document doc = iter.next();
+                viewStats.add(new PostViewStats(
+                        doc.getObjectId("_id").toHexString(),
+                        doc.getInteger("totalViews"),
+                        doc.get("tierOnePercent", Number.class).floatValue(),
+                        doc.get("tierTwoPercent", Number.class).floatValue()));
+            }
+        } catch (MongoException e) {
+            log.error("Unable to aggregate views due to an error", e);
+            throw new RuntimeException(e);
+        }
+        return viewStats;
+    }
+
+    /**
+     * @return ids of the posts which got new or longer views since the given time
+     */
+    public Set<String> getPostIdsWithViewsUpdatedSince(Date since) {
+        MongoCollection<Document> collection = getCollection();
+
+        Set<String> postIds = new HashSet<>();
+        try (MongoCursor<ObjectId> iter = collection.distinct("postId", Filters.gte("updateTime", since), ObjectId.class)
+                .iterator()) {
+            while (iter.hasNext()) {
+                postIds.add(iter.next().toHexString());
+            }
+        }
+        return postIds;
+    }
+
+    private static Document getPercentExpression(String countField) {
+        return new Document("$multiply", List.of(
+                new Document("$divide", List.of(countField, "$totalViews")),
+                100));
+    }
+
     public void initCollectionAndIndexes() {
         MongoDatabase db = mongoClient.getDatabase(database);
         db.createCollection(VIEWS_COLLECTION);
@@ -191,10 +340,25 @@ public class ViewsDao extends BaseDao {
         resultCreateIndex = collection.createIndex(Indexes.descending("userId", "updateTime", "_id"),
                 indexOptions);
         log.info(String.format("Index created: %s", resultCreateIndex));
+
+        indexOptions = new IndexOptions()
+                .name("update_time_index");
+        resultCreateIndex = collection.createIndex(Indexes.descending("updateTime"),
+                indexOptions);
+        log.info(String.format("Index created: %s", resultCreateIndex));
     }
 
     private MongoCollection<Document> getCollection() {
         MongoDatabase db = mongoClient.getDatabase(database);
         return db.getCollection(VIEWS_COLLECTION);
     }
+
+    @Data
+    @AllArgsConstructor
+    public static class PostViewStats {
+        String postId;
+        int totalViews;
+        float tierOnePercent;
+        float tierTwoPercent;
+    }
 }
@@ -0,0 +1,261 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Coalesces writes by key in memory and hands them to the writer in batches, when a shard reaches the batch
+ * size or every flush interval. At most maxPending keys are held, once full the writes of new keys are refused,
+ * counted in droppedCount and a flush is scheduled, the callers never wait on the writer and are expected to
+ * back off on a refused write.
+ * The writes must be idempotent, a failed batch is merged back and written again, up to maxAttempts times.
+ */
+@Slf4j
+class WriteBehindBuffer<K, V> implements AutoCloseable {
+    private final String name;
+    private final Shard<K, V>[] shards;
+    private final BinaryOperator<V> merge;
+    private final Consumer<List<V>> writer;
+    private final int batchSize;
+    private final int maxPending;
+    private final int maxAttempts;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicBoolean fullFlushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService flushExecutor;
+
+    @SuppressWarnings("unchecked")
+    WriteBehindBuffer(String name, int numOfShards, int batchSize, int maxPending, int maxAttempts,
+                      long flushIntervalMs, BinaryOperator<V> merge, Consumer<List<V>> writer) {
+        this.name = name;
+        this.shards = new Shard[numOfShards];
+        for (int i = 0; i < numOfShards; i++) {
+            shards[i] = new Shard<>();
+        }
+        this.merge = merge;
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.maxAttempts = maxAttempts;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("write-behind-" + name + "-%d").setDaemon(true).build());
+        this.flushExecutor.scheduleWithFixedDelay(this::flushAllQuietly, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return false if the write was refused as the buffer is full, a pending key always takes the write
+     */
+    boolean add(K key, V value) {
+        Shard<K, V> shard = getShard(key);
+        int shardSize;
+        synchronized (shard) {
+            Pending<V> existing = shard.pending.get(key);
+            if (existing != null) {
+                existing.value = merge.apply(existing.value, value);
+            } else if (reserve(1)) {
+                shard.pending.put(key, new Pending<>(value, 0));
+            } else {
+                drop(1);
+                return false;
+            }
+            shardSize = shard.pending.size();
+        }
+
+        scheduleFlushOnBatchSize(shard, shardSize);
+        return true;
+    }
+
+    /**
+     * Takes all the writes or none of them, room is reserved for all of them as new keys before buffering any.
+     *
+     * @return false if the writes were refused as the buffer doesn't have room for all of them
+     */
+    boolean addAll(List<V> values, Function<V, K> keyOf) {
+        if (!reserve(values.size())) {
+            drop(values.size());
+            return false;
+        }
+
+        for (V value : values) {
+            K key = keyOf.apply(value);
+            Shard<K, V> shard = getShard(key);
+            int shardSize;
+            synchronized (shard) {
+                Pending<V> existing = shard.pending.get(key);
+                if (existing != null) {
+                    existing.value = merge.apply(existing.value, value);
+                    // merged, the room reserved for it is not needed
+                    pendingCount.decrementAndGet();
+                } else {
+                    shard.pending.put(key, new Pending<>(value, 0));
+                }
+                shardSize = shard.pending.size();
+            }
+            scheduleFlushOnBatchSize(shard, shardSize);
+        }
+        return true;
+    }
+
+    int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * @return writes dropped since the start, as the buffer was full or their batch failed maxAttempts times
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    void flushAll() {
+        for (Shard<K, V> shard : shards) {
+            flush(shard);
+        }
+    }
+
+    /**
+     * Stops the periodic flush and writes out whatever is pending.
+     */
+    @Override
+    public void close() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+        log.info("closed write behind buffer:{}, pending:{}", name, pendingCount.get());
+    }
+
+    private void flush(Shard<K, V> shard) {
+        Map<K, Pending<V>> toWrite;
+        synchronized (shard) {
+            if (shard.pending.isEmpty()) {
+                return;
+            }
+            toWrite = shard.pending;
+            shard.pending = new HashMap<>();
+            pendingCount.addAndGet(-toWrite.size());
+        }
+
+        for (List<Map.Entry<K, Pending<V>>> batch : Lists.partition(new ArrayList<>(toWrite.entrySet()), batchSize)) {
+            try {
+                writer.accept(batch.stream().map(entry -> entry.getValue().value).toList());
+            } catch (RuntimeException e) {
+                log.error("unable to write batch of size:" + batch.size() + " of write behind buffer:" + name, e);
+                requeue(batch);
+            }
+        }
+    }
+
+    private void requeue(List<Map.Entry<K, Pending<V>>> entries) {
+        int dropped = 0;
+        for (Map.Entry<K, Pending<V>> entry : entries) {
+            int attempts = entry.getValue().attempts + 1;
+            if (attempts >= maxAttempts) {
+                dropped++;
+                continue;
+            }
+
+            Shard<K, V> shard = getShard(entry.getKey());
+            synchronized (shard) {
+                Pending<V> existing = shard.pending.get(entry.getKey());
+                if (existing != null) {
+                    existing.value = merge.apply(entry.getValue().value, existing.value);
+                    existing.attempts = Math.max(existing.attempts, attempts);
+                } else if (pendingCount.get() < maxPending) {
+                    shard.pending.put(entry.getKey(), new Pending<>(entry.getValue().value, attempts));
+                    pendingCount.incrementAndGet();
+                } else {
+                    dropped++;
+                }
+            }
+        }
+        if (dropped > 0) {
+            droppedCount.addAndGet(dropped);
+            log.error("write behind buffer:{} dropped {} writes of a failed batch, total dropped:{}", name, dropped,
+                    droppedCount.get());
+        }
+    }
+
+    private boolean reserve(int count) {
+        while (true) {
+            int current = pendingCount.get();
+            if (current + count > maxPending) {
+                return false;
+            }
+            if (pendingCount.compareAndSet(current, current + count)) {
+                return true;
+            }
+        }
+    }
+
+    private void scheduleFlushOnBatchSize(Shard<K, V> shard, int shardSize) {
+        if (shardSize >= batchSize && shard.flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                shard.flushScheduled.set(false);
+                flushQuietly(shard);
+            });
+        }
+    }
+
+    private void drop(int count) {
+        long dropped = droppedCount.addAndGet(count);
+        // drops come in bursts while full, logged once per burst
+        if (fullFlushScheduled.compareAndSet(false, true)) {
+            log.warn("write behind buffer:{} is full, refusing writes, total refused:{}", name, dropped);
+            flushExecutor.execute(() -> {
+                fullFlushScheduled.set(false);
+                flushAllQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly(Shard<K, V> shard) {
+        try {
+            flush(shard);
+        } catch (RuntimeException e) {
+            log.error("unable to flush write behind buffer:" + name, e);
+        }
+    }
+
+    private void flushAllQuietly() {
+        for (Shard<K, V> shard : shards) {
+            flushQuietly(shard);
+        }
+    }
+
+    private Shard<K, V> getShard(K key) {
+        return shards[Math.floorMod(key.hashCode(), shards.length)];
+    }
+
+    private static class Shard<K, V> {
+        Map<K, Pending<V>> pending = new HashMap<>();
+        final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    }
+
+    private static class Pending<V> {
+        V value;
+        // failed writes of the value so far
+        int attempts;
+
+        Pending(V value, int attempts) {
+            this.value = value;
+            this.attempts = attempts;
+        }
+    }
+}
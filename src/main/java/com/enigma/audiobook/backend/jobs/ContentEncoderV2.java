@@ -1,19 +1,24 @@
 package com.enigma.audiobook.backend.jobs;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacpp.Loader;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Stream;
 
 @Slf4j
 public class ContentEncoderV2 {
     static final float THUMBNAIL_RATIO_OF_TOTAL_CONTENT = 0.2f;
+    static final int AUDIO_BITRATE_KBPS = 128;
+    static final Rendition SINGLE_RENDITION = new Rendition(480, 500);
+    private static final ObjectMapper om = new ObjectMapper();
 
     public static void main(String[] args) throws Exception {
 
@@ -58,7 +63,7 @@ public class ContentEncoderV2 {
     public static void updateAudioContent(String inputFile, String outputFile) throws IOException, InterruptedException {
         String[] cmd = new String[]{"-i", inputFile, "-c:a", "aac", "-b:a", "128k",
                 "-force_key_frames", "expr:gte(t,n_forced*10)",
-                "-hls_time", "10",
+                "-hls_time", "10", "-hls_flags", "temp_file",
                 "-hls_list_size", "0", outputFile};
         updateViaFFMPEG(Arrays.asList(cmd));
     }
@@ -74,6 +79,112 @@ public class ContentEncoderV2 {
         updateViaFFMPEG(Arrays.asList(cmd));
     }
 
+    /**
+     * Encodes the HLS renditions and the thumbnail in one ffmpeg run, the video is decoded once and split to a
+     * scaler per rendition plus one for the thumbnail. With no renditions a single 480p playlist is written, else
+     * a master playlist over the renditions, skipping the ones taller than the input except the smallest one.
+     */
+    public static EncodedVideo encodeVideoToDir(String inputFile, String outputFileDir,
+                                                List<Rendition> renditions) throws Exception {
+        MediaInfo mediaInfo = probe(inputFile);
+        String playlistPath = getHLSFilePath(inputFile, outputFileDir);
+        String playlistName = new File(playlistPath).getName();
+        String outputFileNamePrefix = playlistName.substring(0, playlistName.lastIndexOf("."));
+        String thumbnailPath = String.format("%s/%s_%s.%s", outputFileDir, outputFileNamePrefix, "thumbnail", "jpg");
+
+        boolean abr = !renditions.isEmpty();
+        List<Rendition> finalRenditions = abr ?
+                getRenditionsForHeight(renditions, mediaInfo.getVideoHeight()) :
+                Collections.singletonList(SINGLE_RENDITION);
+        float thumbnailStartSec = THUMBNAIL_RATIO_OF_TOTAL_CONTENT * mediaInfo.getDurationSec();
+        log.info("encoding renditions:{}, abr:{}, mediaInfo:{}", finalRenditions, abr, mediaInfo);
+
+        List<String> cmd = new ArrayList<>(Arrays.asList("-i", inputFile));
+
+        StringBuilder filter = new StringBuilder("[0:v]split=" + (finalRenditions.size() + 1));
+        for (int i = 0; i < finalRenditions.size(); i++) {
+            filter.append("[v").append(i).append("]");
+        }
+        filter.append("[vthumb]");
+        for (int i = 0; i < finalRenditions.size(); i++) {
+            // scale=-2:h maintains the same aspect ration as original video
+            filter.append(";[v").append(i).append("]scale=-2:").append(finalRenditions.get(i).getHeight())
+                    .append("[v").append(i).append("out]");
+        }
+        filter.append(String.format(Locale.ROOT,
+                ";[vthumb]trim=start=%.3f,setpts=PTS-STARTPTS,scale=1280:-1[thumb]", thumbnailStartSec));
+        cmd.addAll(Arrays.asList("-filter_complex", filter.toString()));
+
+        List<String> streamMap = new ArrayList<>();
+        for (int i = 0; i < finalRenditions.size(); i++) {
+            Rendition rendition = finalRenditions.get(i);
+            cmd.addAll(Arrays.asList("-map", "[v" + i + "out]",
+                    "-c:v:" + i, "h264",
+                    "-b:v:" + i, rendition.getVideoBitrateKbps() + "k",
+                    "-maxrate:v:" + i, rendition.getVideoBitrateKbps() + "k",
+                    "-bufsize:v:" + i, (2 * rendition.getVideoBitrateKbps()) + "k"));
+            if (mediaInfo.isHasAudio()) {
+                cmd.addAll(Arrays.asList("-map", "0:a:0"));
+                streamMap.add(String.format("v:%d,a:%d,name:%s", i, i, rendition.getName()));
+            } else {
+                streamMap.add(String.format("v:%d,name:%s", i, rendition.getName()));
+            }
+        }
+        if (mediaInfo.isHasAudio()) {
+            cmd.addAll(Arrays.asList("-c:a", "aac", "-b:a", AUDIO_BITRATE_KBPS + "k"));
+        }
+
+        // same key frames across the renditions so that the players can switch at any segment
+        cmd.addAll(Arrays.asList("-force_key_frames", "expr:gte(t,n_forced*10)",
+                "-f", "hls", "-hls_time", "10", "-hls_list_size", "0",
+                // segments are written to .tmp and renamed once complete, to be uploaded while encoding
+                "-hls_flags", "temp_file"));
+        if (abr) {
+            cmd.addAll(Arrays.asList(
+                    "-hls_segment_filename", String.format("%s/%s_%%v_%%03d.ts", outputFileDir, outputFileNamePrefix),
+                    "-master_pl_name", playlistName,
+                    "-var_stream_map", String.join(" ", streamMap),
+                    String.format("%s/%s_%%v.m3u8", outputFileDir, outputFileNamePrefix)));
+        } else {
+            cmd.add(playlistPath);
+        }
+
+        // second output of the same run
+        cmd.addAll(Arrays.asList("-map", "[thumb]", "-frames:v", "1", thumbnailPath));
+        updateViaFFMPEG(cmd);
+        return new EncodedVideo(playlistPath, thumbnailPath);
+    }
+
+    private static List<Rendition> getRenditionsForHeight(List<Rendition> renditions, int inputHeight) {
+        List<Rendition> sortedRenditions = renditions.stream()
+                .sorted(Comparator.comparingInt(Rendition::getHeight))
+                .toList();
+        List<Rendition> finalRenditions = new ArrayList<>(sortedRenditions.stream()
+                .filter(rendition -> rendition.getHeight() <= inputHeight)
+                .toList());
+        if (finalRenditions.isEmpty()) {
+            finalRenditions.add(sortedRenditions.get(0));
+        }
+        return finalRenditions;
+    }
+
+    /**
+     * @param renditions comma separated height:videoBitrateKbps, e.g. 240:400,360:800
+     */
+    public static List<Rendition> parseRenditions(String renditions) {
+        List<Rendition> parsed = new ArrayList<>();
+        if (renditions == null || renditions.isBlank()) {
+            return parsed;
+        }
+        for (String rendition : renditions.split(",")) {
+            String[] heightAndBitrate = rendition.trim().split(":");
+            Preconditions.checkArgument(heightAndBitrate.length == 2, "invalid rendition:" + rendition);
+            parsed.add(new Rendition(Integer.parseInt(heightAndBitrate[0].trim()),
+                    Integer.parseInt(heightAndBitrate[1].trim())));
+        }
+        return parsed;
+    }
+
     public static void generateThumbnailToDir(String masterFilePath, String outputThumbnailDir) throws Exception {
         File file = new File(masterFilePath);
         boolean suffixExtensionExists = file.getName().lastIndexOf(".") != -1;
@@ -88,7 +199,7 @@ public class ContentEncoderV2 {
     }
 
     public static void generateThumbnail(String masterFilePath, String outputThumbnailFilePath) throws Exception {
-        float totalDurationSec = Float.parseFloat(getContentDurationSec(masterFilePath));
+        float totalDurationSec = probe(masterFilePath).getDurationSec();
         int startTimeSec = Math.max(1, (int) (THUMBNAIL_RATIO_OF_TOTAL_CONTENT * totalDurationSec));
         String startTimeFormatted = secondsToTime(startTimeSec);
         log.info("startTimeFormatted:{}", startTimeFormatted);
@@ -106,36 +217,34 @@ public class ContentEncoderV2 {
         return df.format(d);
     }
 
-    private static String getContentDurationSec(String masterFilePath) throws Exception {
+    /**
+     * one ffprobe run for the duration and the streams, its json output is read from the stdout pipe
+     */
+    static MediaInfo probe(String masterFilePath) throws Exception {
         String ffprobe = Loader.load(org.bytedeco.ffmpeg.ffprobe.class);
-        String[] cmd = new String[]{
-                "-v", "error", "-show_entries", "format=duration", "-of",
-                "default=noprint_wrappers=1:nokey=1", masterFilePath
-        };
+        ProcessBuilder pb = new ProcessBuilder(ffprobe,
+                "-v", "error", "-print_format", "json", "-show_format", "-show_streams", masterFilePath);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
 
-        List<String> finalInputs = new ArrayList<>();
-        finalInputs.add(ffprobe);
-        finalInputs.addAll(Arrays.asList(cmd));
-        ProcessBuilder pb = new ProcessBuilder(finalInputs);
-        File logFile = File.createTempFile(String.format("%s-%s", "contentEncoderLog", UUID.randomUUID()), ".log");
-        log.info("logging thumbnail time in log file:" + logFile.getAbsolutePath());
-        try {
-            logFile.deleteOnExit();
-//        pb.redirectErrorStream(true);
-            pb.redirectOutput(logFile);
-
-            int exitVal = pb.start().waitFor();
-            Preconditions.checkState(exitVal == 0, "process failed:" + masterFilePath);
-
-            try (Stream<String> s = Files.lines(logFile.toPath())) {
-                List<String> lines = s.toList();
-                log.info("lines for duration:" + lines);
-                Preconditions.checkState(lines.size() == 1, "some error in log file");
-                return lines.get(0);
+        Process process = pb.start();
+        JsonNode root;
+        try (InputStream in = process.getInputStream()) {
+            root = om.readTree(in);
+        }
+        int exitVal = process.waitFor();
+        Preconditions.checkState(exitVal == 0, "process failed:" + masterFilePath);
+
+        MediaInfo mediaInfo = new MediaInfo();
+        mediaInfo.setDurationSec(Float.parseFloat(root.path("format").path("duration").asText("0")));
+        for (JsonNode stream : root.path("streams")) {
+            String codecType = stream.path("codec_type").asText();
+            if (codecType.equals("video") && mediaInfo.getVideoHeight() == 0) {
+                mediaInfo.setVideoHeight(stream.path("height").asInt());
+            } else if (codecType.equals("audio")) {
+                mediaInfo.setHasAudio(true);
             }
-        } finally {
-            logFile.delete();
         }
+        return mediaInfo;
     }
 
     private static void updateViaFFMPEG(List<String> inputs) throws IOException, InterruptedException {
@@ -146,7 +255,15 @@ public class ContentEncoderV2 {
         // scale=-2:480 maintains the same aspect ration as original video
         ProcessBuilder pb = new ProcessBuilder(finalInputs);
 
-        int exitVal = pb.inheritIO().start().waitFor();
+        Process process = pb.inheritIO().start();
+        int exitVal;
+        try {
+            exitVal = process.waitFor();
+        } catch (InterruptedException e) {
+            // the encoding is abandoned, e.g. on a lost encoding lease
+            process.destroyForcibly();
+            throw e;
+        }
 //        int exitVal = pb.start().waitFor();
         Preconditions.checkState(exitVal == 0, "process failed:" + inputs);
     }
@@ -164,4 +281,28 @@ public class ContentEncoderV2 {
         String outputFileName = String.format("%s.%s", outputFileNamePrefix, suffix);
         return String.format("%s/%s", outputFileDir, outputFileName);
     }
+
+    @Data
+    public static class MediaInfo {
+        private float durationSec;
+        // 0 without a video stream
+        private int videoHeight;
+        private boolean hasAudio;
+    }
+
+    @Data
+    public static class EncodedVideo {
+        private final String playlistPath;
+        private final String thumbnailPath;
+    }
+
+    @Data
+    public static class Rendition {
+        private final int height;
+        private final int videoBitrateKbps;
+
+        public String getName() {
+            return height + "p";
+        }
+    }
 }
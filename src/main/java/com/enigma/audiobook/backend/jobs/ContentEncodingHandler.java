@@ -16,6 +16,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 import static com.enigma.audiobook.backend.dao.DarshanDao.DARSHAN_REG_COLLECTION;
 import static com.enigma.audiobook.backend.dao.PostsDao.POSTS_COLLECTION;
@@ -33,6 +35,8 @@ public class ContentEncodingHandler {
     final S3Proxy s3Proxy;
     final PostsDao postsDao;
     final DarshanDao darshanDao;
+    final FeedInboxHandler feedInboxHandler;
+    final List<ContentEncoderV2.Rendition> videoRenditions;
 
     @Autowired
     public ContentEncodingHandler(S3Proxy s3Proxy,
@@ -42,7 +46,9 @@ public class ContentEncodingHandler {
                                   String inputContentLocalFilePathPrefixWOScheme,
                                   @Value("${content-transformer-config.outputContentLocalFilePathPrefixWOScheme}")
                                   String outputContentLocalFilePathPrefixWOScheme,
-                                  PostsDao postsDao, DarshanDao darshanDao) {
+                                  PostsDao postsDao, DarshanDao darshanDao,
+                                  FeedInboxHandler feedInboxHandler,
+                                  @Value("${content-transformer-config.videoRenditions:}") String videoRenditions) {
         this.bucketUrl = bucketUrl;
         this.bucket = bucket;
         this.inputContentLocalFilePathPrefixWOScheme = inputContentLocalFilePathPrefixWOScheme;
@@ -50,6 +56,8 @@ public class ContentEncodingHandler {
         this.s3Proxy = s3Proxy;
         this.postsDao = postsDao;
         this.darshanDao = darshanDao;
+        this.feedInboxHandler = feedInboxHandler;
+        this.videoRenditions = ContentEncoderV2.parseRenditions(videoRenditions);
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             public void run() {
@@ -60,6 +68,15 @@ public class ContentEncodingHandler {
     }
 
     public void encodeContentForCollectionEntry(String db, String collection, String collectionEntry) {
+        encodeContentForCollectionEntry(db, collection, collectionEntry, Optional.empty());
+    }
+
+    /**
+     * @param encodingLeaseToken the lease held on the entry, the entry is marked PROCESSED only if the lease is
+     *                           still held at the end of the encoding
+     */
+    public void encodeContentForCollectionEntry(String db, String collection, String collectionEntry,
+                                                Optional<String> encodingLeaseToken) {
         switch (collection) {
             case POSTS_COLLECTION:
                 Post post = serde.fromJson(collectionEntry, Post.class);
@@ -68,9 +85,9 @@ public class ContentEncodingHandler {
                 }
 
                 PostsContentTransformer postsContentTransformer =
-                        new PostsContentTransformer(s3Proxy, postsDao, bucketUrl,
+                        new PostsContentTransformer(s3Proxy, postsDao, feedInboxHandler, bucketUrl,
                                 bucket, inputContentLocalFilePathPrefixWOScheme,
-                                outputContentLocalFilePathPrefixWOScheme);
+                                outputContentLocalFilePathPrefixWOScheme, videoRenditions, encodingLeaseToken);
 
                 postsContentTransformer.handlePost(post);
                 break;
@@ -83,7 +100,7 @@ public class ContentEncodingHandler {
                 DarshanContentTransformer darshanContentTransformer =
                         new DarshanContentTransformer(s3Proxy, darshanDao, bucketUrl, bucket,
                                 inputContentLocalFilePathPrefixWOScheme,
-                                outputContentLocalFilePathPrefixWOScheme);
+                                outputContentLocalFilePathPrefixWOScheme, videoRenditions, encodingLeaseToken);
                 darshanContentTransformer.handleDarshan(darshan);
                 break;
             default:
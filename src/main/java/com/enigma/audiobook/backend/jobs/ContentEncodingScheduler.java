@@ -1,82 +1,154 @@
 package com.enigma.audiobook.backend.jobs;
 
+import com.enigma.audiobook.backend.dao.CollectionConfigDao;
 import com.enigma.audiobook.backend.dao.DarshanDao;
 import com.enigma.audiobook.backend.dao.PostsDao;
-import com.enigma.audiobook.backend.models.ContentUploadStatus;
 import com.enigma.audiobook.backend.models.Darshan;
 import com.enigma.audiobook.backend.models.Post;
 import com.enigma.audiobook.backend.models.PostType;
 import com.enigma.audiobook.backend.utils.SerDe;
 import com.google.common.base.Preconditions;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import lombok.Data;
-import lombok.SneakyThrows;
+import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Encodes the raw uploaded posts and darshans. Any number of backend nodes can run the scheduler, a job is
+ * encoded only by the node holding the encoding lease of its entry. The lease is renewed while encoding and
+ * expires if the node goes away, the entry is then picked up again by the next scheduler run of any node.
+ * <p>
+ * Jobs are queued as soon as an entry becomes RAW_UPLOADED through change streams on the Posts and
+ * DarshanReg collections, the scheduler run only sweeps up the entries missed by the streams. Every node keeps
+ * the resume tokens of its own streams, under its nodeId.
+ * <p>
+ * Videos are encoded in their own lane so audio and image jobs are not stuck behind them. The lanes are
+ * resized to their queue depth, within a share of the cores, and shrink while the load average is above
+ * the cores, the ffmpeg processes being most of the load.
+ */
 @Slf4j
 @Component
 public class ContentEncodingScheduler implements Runnable {
-    private static final int jobRunnableSize = 2;
-    private static final ExecutorService jobRunnableExecutors = Executors.newFixedThreadPool(jobRunnableSize);
     private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private static final ExecutorService changeStreamExecutors = Executors.newFixedThreadPool(JobType.values().length);
+    private static final long RECONCILIATION_SWEEP_MINUTES = 15;
+    private static final long LANE_RESIZE_INTERVAL_SEC = 30;
+    private static final int LANE_QUEUE_CAPACITY = 60;
+    // jobs of the change streams waiting for room in a full lane
+    private static final int LANE_OVERFLOW_CAPACITY = 1000;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    // a video encode keeps about 4 cores busy, audio and images mostly 1
+    private static final int HEAVY_LANE_MAX_SIZE = Math.max(1, CORES / 4);
+    private static final int LIGHT_LANE_MAX_SIZE = Math.max(1, CORES / 2);
     private final PostsDao postsDao;
     private final DarshanDao darshanDao;
+    private final CollectionConfigDao collectionConfigDao;
     private final JobQueue jobQueue;
     private final ContentEncodingHandler contentEncodingHandler;
     private final String db;
+    private final long encodingLeaseMs;
+    private final String nodeId;
 
     @Autowired
     public ContentEncodingScheduler(PostsDao postsDao, DarshanDao darshanDao,
+                                    CollectionConfigDao collectionConfigDao,
                                     ContentEncodingHandler contentEncodingHandler,
-                                    @Value("${mongo.database}") String db) {
+                                    @Value("${mongo.database}") String db,
+                                    @Value("${content-transformer-config.encodingLeaseMs:1800000}")
+                                    long encodingLeaseMs,
+                                    // defaults to the host name, has to be stable across restarts of the node
+                                    @Value("${content-transformer-config.nodeId:}") String nodeId) {
         this.postsDao = postsDao;
         this.darshanDao = darshanDao;
+        this.collectionConfigDao = collectionConfigDao;
         this.contentEncodingHandler = contentEncodingHandler;
         this.db = db;
-        this.jobQueue = new JobQueue();
+        this.encodingLeaseMs = encodingLeaseMs;
+        this.nodeId = nodeId.isBlank() ? getHostName() : nodeId;
+        this.jobQueue = new JobQueue(
+                new JobRunnable(contentEncodingHandler, db, postsDao, darshanDao, encodingLeaseMs));
     }
 
     public void start() {
-        log.info("starting content encoding scheduler");
-        for (int i = 0; i < jobRunnableSize; i++) {
-            jobRunnableExecutors.submit(
-                    new JobRunnable(jobQueue, contentEncodingHandler, db, postsDao, darshanDao));
-        }
+        log.info("starting content encoding scheduler, cores:{}, nodeId:{}", CORES, nodeId);
+        changeStreamExecutors.submit(new ChangeStreamRunnable(JobType.POST, nodeId, postsDao::watchRawUploads,
+                jobQueue, collectionConfigDao));
+        changeStreamExecutors.submit(new ChangeStreamRunnable(JobType.DARSHAN, nodeId, darshanDao::watchRawUploads,
+                jobQueue, collectionConfigDao));
 
-        scheduler.scheduleWithFixedDelay(this, 1, 5, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(this, 1, RECONCILIATION_SWEEP_MINUTES, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(this::resizeLanes, LANE_RESIZE_INTERVAL_SEC, LANE_RESIZE_INTERVAL_SEC,
+                TimeUnit.SECONDS);
     }
 
+    public Map<Lane, EncodingLane.LaneStats> getLaneStats() {
+        return jobQueue.getLaneStats();
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("unable to resolve the host name, set content-transformer-config.nodeId", e);
+        }
+    }
+
+    private void resizeLanes() {
+        try {
+            double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+            boolean overloaded = loadAverage >= CORES;
+            for (Lane lane : Lane.values()) {
+                EncodingLane encodingLane = jobQueue.getLane(lane);
+                int maxSize = lane == Lane.HEAVY ? HEAVY_LANE_MAX_SIZE : LIGHT_LANE_MAX_SIZE;
+                int size = overloaded ?
+                        encodingLane.getSize() - 1 :
+                        encodingLane.getActiveCount() + encodingLane.getQueueDepth();
+                encodingLane.resize(Math.max(1, Math.min(maxSize, size)));
+            }
+        } catch (Throwable t) {
+            log.error("unable to resize the encoding lanes", t);
+        }
+    }
 
     public void run() {
         try {
+            jobQueue.drainOverflows();
+
             List<CEJob> postVideoJobs =
-                    postsDao.getPostsByTypeAndStatus(PostType.VIDEO, 20, Optional.empty(), ContentUploadStatus.RAW_UPLOADED)
+                    postsDao.getPostsPendingEncoding(PostType.VIDEO, 20)
                             .stream()
-                            .map(post -> new CEJob(post.getPostId(), JobType.POST))
+                            .map(post -> new CEJob(post.getPostId(), JobType.POST, Lane.HEAVY))
                             .toList();
             log.info("post videos for content encoding:" + postVideoJobs);
             postVideoJobs.forEach(jobQueue::add);
 
             List<CEJob> postAudioJobs =
-                    postsDao.getPostsByTypeAndStatus(PostType.AUDIO, 20, Optional.empty(), ContentUploadStatus.RAW_UPLOADED)
+                    postsDao.getPostsPendingEncoding(PostType.AUDIO, 20)
                             .stream()
-                            .map(post -> new CEJob(post.getPostId(), JobType.POST))
+                            .map(post -> new CEJob(post.getPostId(), JobType.POST, Lane.LIGHT))
                             .toList();
             log.info("post audios for content encoding:" + postAudioJobs);
             postAudioJobs.forEach(jobQueue::add);
 
             List<CEJob> darshanJobs =
-                    darshanDao.getDarshanByStatus(ContentUploadStatus.RAW_UPLOADED, 20)
+                    darshanDao.getDarshansPendingEncoding(20)
                             .stream()
-                            .map(darshan -> new CEJob(darshan.getDarshanId(), JobType.DARSHAN))
+                            .map(darshan -> new CEJob(darshan.getDarshanId(), JobType.DARSHAN, Lane.HEAVY))
                             .toList();
             log.info("darshan videos for content encoding:" + darshanJobs);
             darshanJobs.forEach(jobQueue::add);
@@ -86,107 +158,376 @@ public class ContentEncodingScheduler implements Runnable {
 
     }
 
-    public static class JobRunnable implements Runnable {
-        private static final SerDe serDe = new SerDe();
+    /**
+     * Queues a job for every change of the stream, the resume token of the last change is stored so that a
+     * restarted node continues from there. Changes missed while the stream is down are left to the sweep.
+     * <p>
+     * The stream never waits on a lane, a job of a full lane is parked in the lane's overflow, and left to the
+     * sweep once the overflow is full too. The token moves past every change either way, the entry stays
+     * RAW_UPLOADED till encoded and the sweep finds it from its status.
+     */
+    public static class ChangeStreamRunnable implements Runnable {
+        private static final long RETRY_DELAY_MS = 30_000;
+        // the resume token is older than the oplog
+        private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+        private final JobType jobType;
+        private final String streamName;
+        private final Function<Optional<BsonDocument>, MongoChangeStreamCursor<ChangeStreamDocument<Document>>> watcher;
         private final JobQueue jobQueue;
+        private final CollectionConfigDao collectionConfigDao;
+
+        public ChangeStreamRunnable(JobType jobType, String nodeId,
+                                    Function<Optional<BsonDocument>, MongoChangeStreamCursor<ChangeStreamDocument<Document>>> watcher,
+                                    JobQueue jobQueue, CollectionConfigDao collectionConfigDao) {
+            this.jobType = jobType;
+            this.streamName = jobType.getCollection() + "_" + nodeId;
+            this.watcher = watcher;
+            this.jobQueue = jobQueue;
+            this.collectionConfigDao = collectionConfigDao;
+        }
+
+        @Override
+        public void run() {
+            boolean resumeTokenLost = false;
+            while (true) {
+                Optional<BsonDocument> resumeToken = Optional.empty();
+                try {
+                    if (!resumeTokenLost) {
+                        resumeToken = collectionConfigDao.getChangeStreamResumeToken(streamName);
+                    }
+                    log.info("watching {} for raw uploads, resuming:{}", jobType.getCollection(), resumeToken.isPresent());
+                    try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = watcher.apply(resumeToken)) {
+                        while (true) {
+                            ChangeStreamDocument<Document> change = cursor.next();
+                            CEJob ceJob = new CEJob(change.getDocumentKey().getObjectId("_id").getValue().toHexString(),
+                                    jobType, getLane(change.getFullDocument()));
+                            log.info("raw upload from change stream:{}, {}", ceJob, jobQueue.addOrPark(ceJob));
+
+                            collectionConfigDao.updateChangeStreamResumeToken(streamName, change.getResumeToken());
+                            resumeTokenLost = false;
+                        }
+                    }
+                } catch (MongoException e) {
+                    if (e.getCode() == CHANGE_STREAM_HISTORY_LOST) {
+                        log.warn("resume token of {} too old, watching from now on", jobType.getCollection());
+                        resumeTokenLost = true;
+                    }
+                    log.error("change stream of " + jobType.getCollection() + " failed", e);
+                } catch (Throwable t) {
+                    log.error("change stream of " + jobType.getCollection() + " failed", t);
+                }
+
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException e) {
+                    log.info("stopping change stream of {}", jobType.getCollection());
+                    return;
+                }
+            }
+        }
+
+        private Lane getLane(Document fullDocument) {
+            if (jobType == JobType.DARSHAN) {
+                return Lane.HEAVY;
+            }
+            // deleted since, the job is dropped by the encoding anyway
+            if (fullDocument == null) {
+                return Lane.LIGHT;
+            }
+            return PostType.VIDEO.name().equals(fullDocument.getString("type")) ? Lane.HEAVY : Lane.LIGHT;
+        }
+    }
+
+    public static class JobRunnable implements Consumer<CEJob> {
+        private static final SerDe serDe = new SerDe();
         private final ContentEncodingHandler contentEncodingHandler;
         private final String db;
         private final PostsDao postsDao;
         private final DarshanDao darshanDao;
+        private final long encodingLeaseMs;
 
-        public JobRunnable(JobQueue jobQueue, ContentEncodingHandler contentEncodingHandler, String db, PostsDao postsDao, DarshanDao darshanDao) {
-            this.jobQueue = jobQueue;
+        public JobRunnable(ContentEncodingHandler contentEncodingHandler, String db, PostsDao postsDao,
+                           DarshanDao darshanDao, long encodingLeaseMs) {
             this.contentEncodingHandler = contentEncodingHandler;
             this.db = db;
             this.postsDao = postsDao;
             this.darshanDao = darshanDao;
+            this.encodingLeaseMs = encodingLeaseMs;
         }
 
         @Override
-        public void run() {
-            while (true) {
-                CEJob ceJob = null;
+        public void accept(CEJob ceJob) {
+            String leaseToken = UUID.randomUUID().toString();
+            boolean leased = false;
+            LeaseWatch leaseWatch = new LeaseWatch(Thread.currentThread());
+            ScheduledFuture<?> leaseRenewal = null;
+            try {
+                log.info("found job:" + ceJob);
+                leased = claimLease(ceJob, leaseToken);
+                if (!leased) {
+                    log.info("CEJob leased by another node or already encoded:{}", ceJob);
+                    return;
+                }
+                leaseRenewal = scheduleLeaseRenewal(ceJob, leaseToken, leaseWatch);
+
+                switch (ceJob.getJobType()) {
+                    case POST:
+                        Optional<Post> post = postsDao.getPost(ceJob.getId());
+                        Preconditions.checkState(post.isPresent());
+                        contentEncodingHandler.encodeContentForCollectionEntry(
+                                db,
+                                ceJob.getJobType().getCollection(),
+                                serDe.toJson(post.get()),
+                                Optional.of(leaseToken));
+                        break;
+                    case DARSHAN:
+                        Optional<Darshan> darshan = darshanDao.getDarshan(ceJob.getId());
+                        Preconditions.checkState(darshan.isPresent());
+                        contentEncodingHandler.encodeContentForCollectionEntry(
+                                db,
+                                ceJob.getJobType().getCollection(),
+                                serDe.toJson(darshan.get()),
+                                Optional.of(leaseToken));
+                        break;
+                }
+            } catch (Throwable t) {
+                if (leaseWatch.isLost()) {
+                    log.warn("stopped CEJob on losing its encoding lease:" + ceJob, t);
+                } else {
+                    log.error("unable to process CEJob:" + ceJob, t);
+                }
+            } finally {
+                if (leaseRenewal != null) {
+                    leaseRenewal.cancel(false);
+                }
+                leaseWatch.done();
+                if (leased) {
+                    releaseLease(ceJob, leaseToken);
+                }
+            }
+        }
+
+        private boolean claimLease(CEJob ceJob, String leaseToken) {
+            return switch (ceJob.getJobType()) {
+                case POST -> postsDao.claimEncodingLease(ceJob.getId(), leaseToken, encodingLeaseMs);
+                case DARSHAN -> darshanDao.claimEncodingLease(ceJob.getId(), leaseToken, encodingLeaseMs);
+            };
+        }
+
+        /**
+         * The lease is lost when another node took it over, or when it could not be extended for as long as it
+         * lasts. The encoding is then interrupted, and its final update misses anyway as it is conditional on
+         * the lease.
+         */
+        private ScheduledFuture<?> scheduleLeaseRenewal(CEJob ceJob, String leaseToken, LeaseWatch leaseWatch) {
+            long renewalIntervalMs = encodingLeaseMs / 3;
+            return scheduler.scheduleWithFixedDelay(() -> {
+                if (leaseWatch.isLost()) {
+                    return;
+                }
                 try {
-                    log.info("running consumer of jobs");
-                    ceJob = jobQueue.take();
-                    log.info("found job:" + ceJob);
-                    switch (ceJob.getJobType()) {
-                        case POST:
-                            Optional<Post> post = postsDao.getPost(ceJob.getId());
-                            Preconditions.checkState(post.isPresent());
-                            contentEncodingHandler.encodeContentForCollectionEntry(
-                                    db,
-                                    ceJob.getJobType().getCollection(),
-                                    serDe.toJson(post.get()));
-                            break;
-                        case DARSHAN:
-                            Optional<Darshan> darshan = darshanDao.getDarshan(ceJob.getId());
-                            Preconditions.checkState(darshan.isPresent());
-                            contentEncodingHandler.encodeContentForCollectionEntry(
-                                    db,
-                                    ceJob.getJobType().getCollection(),
-                                    serDe.toJson(darshan.get()));
-                            break;
+                    boolean extended = switch (ceJob.getJobType()) {
+                        case POST -> postsDao.extendEncodingLease(ceJob.getId(), leaseToken, encodingLeaseMs);
+                        case DARSHAN -> darshanDao.extendEncodingLease(ceJob.getId(), leaseToken, encodingLeaseMs);
+                    };
+                    if (extended) {
+                        leaseWatch.extended();
+                    } else {
+                        log.warn("lost the encoding lease of CEJob:{}, stopping it", ceJob);
+                        leaseWatch.lose();
                     }
                 } catch (Throwable t) {
-                    log.error("unable to process CEJob:" + ceJob, t);
-                } finally {
-                    if (ceJob != null) {
-                        jobQueue.doneWithJob(ceJob);
+                    log.error("unable to extend the encoding lease of CEJob:" + ceJob, t);
+                    if (leaseWatch.isExpired(encodingLeaseMs)) {
+                        log.warn("encoding lease of CEJob:{} expired unextended, stopping it", ceJob);
+                        leaseWatch.lose();
                     }
                 }
+            }, renewalIntervalMs, renewalIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void releaseLease(CEJob ceJob, String leaseToken) {
+            try {
+                switch (ceJob.getJobType()) {
+                    case POST -> postsDao.releaseEncodingLease(ceJob.getId(), leaseToken);
+                    case DARSHAN -> darshanDao.releaseEncodingLease(ceJob.getId(), leaseToken);
+                }
+            } catch (Throwable t) {
+                // expires on its own
+                log.error("unable to release the encoding lease of CEJob:" + ceJob, t);
+            }
+        }
+    }
+
+    /**
+     * The lease state of a running job. The thread encoding the job is interrupted once the lease is lost, but
+     * not after the job is done, the thread then running the next job of its lane.
+     */
+    static class LeaseWatch {
+        private final Thread worker;
+        private volatile long lastExtendedAtMs = System.currentTimeMillis();
+        private volatile boolean lost;
+        private boolean done;
 
-                sleep();
+        LeaseWatch(Thread worker) {
+            this.worker = worker;
+        }
+
+        void extended() {
+            lastExtendedAtMs = System.currentTimeMillis();
+        }
+
+        boolean isExpired(long leaseMs) {
+            return System.currentTimeMillis() - lastExtendedAtMs >= leaseMs;
+        }
+
+        boolean isLost() {
+            return lost;
+        }
+
+        synchronized void lose() {
+            lost = true;
+            if (!done) {
+                worker.interrupt();
             }
         }
 
-        private void sleep() {
-            try {
-                Thread.sleep(1000L);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+        /**
+         * called by the worker once the job is done
+         */
+        synchronized void done() {
+            done = true;
+            if (lost) {
+                // not to carry the interrupt over to the next job
+                Thread.interrupted();
             }
         }
     }
 
+    /**
+     * Jobs stay in the pendingJobs set from add till they are done, so a job queued, parked or running is not
+     * added twice. add never blocks the scheduler, a job not accepted by a full lane is found again in the next
+     * run. Each lane has a bounded overflow of parked jobs, submitted as the jobs of the lane finish, so a full
+     * lane holds back only its own jobs.
+     */
     public static class JobQueue {
-        private final LinkedBlockingQueue<CEJob> linkedBlockingQueue = new LinkedBlockingQueue<>(60);
-        private final Set<CEJob> queuedJobsSet = new HashSet<>();
-        private final Set<CEJob> runningJobsSet = new HashSet<>();
-
-        @SneakyThrows
-        public void add(CEJob ceJob) {
-            if (queuedJobsSet.contains(ceJob)) {
-                log.info("CEJob already exists:{}", ceJob);
-                return;
+        private final Set<CEJob> pendingJobs = ConcurrentHashMap.newKeySet();
+        private final Map<Lane, EncodingLane> lanes = new EnumMap<>(Lane.class);
+        private final Map<Lane, BlockingDeque<CEJob>> overflows = new EnumMap<>(Lane.class);
+        private final Consumer<CEJob> jobRunnable;
+
+        public JobQueue(Consumer<CEJob> jobRunnable) {
+            this.jobRunnable = jobRunnable;
+            for (Lane lane : Lane.values()) {
+                lanes.put(lane, new EncodingLane(lane.name().toLowerCase(), 1, LANE_QUEUE_CAPACITY));
+                overflows.put(lane, new LinkedBlockingDeque<>(LANE_OVERFLOW_CAPACITY));
             }
+        }
 
-            if (runningJobsSet.contains(ceJob)) {
-                log.info("CEJob already running:{}", ceJob);
-                return;
+        public AddResult add(CEJob ceJob) {
+            if (!pendingJobs.add(ceJob)) {
+                log.info("CEJob already queued or running:{}", ceJob);
+                return AddResult.ALREADY_PENDING;
             }
 
-            linkedBlockingQueue.put(ceJob);
-            queuedJobsSet.add(ceJob);
+            if (!submit(ceJob)) {
+                pendingJobs.remove(ceJob);
+                log.info("encoding lane full, CEJob left for the next run:{}", ceJob);
+                return AddResult.LANE_FULL;
+            }
+            return AddResult.QUEUED;
         }
 
-        @SneakyThrows
-        public CEJob take() {
-            CEJob ceJob = linkedBlockingQueue.take();
-            queuedJobsSet.remove(ceJob);
-            runningJobsSet.add(ceJob);
-            return ceJob;
+        /**
+         * Like add, parking the job in the overflow of its lane when the lane is full.
+         */
+        public AddResult addOrPark(CEJob ceJob) {
+            if (!pendingJobs.add(ceJob)) {
+                return AddResult.ALREADY_PENDING;
+            }
+            if (submit(ceJob)) {
+                return AddResult.QUEUED;
+            }
+
+            if (!overflows.get(ceJob.getLane()).offerLast(ceJob)) {
+                pendingJobs.remove(ceJob);
+                log.info("encoding lane and overflow full, CEJob left for the next run:{}", ceJob);
+                return AddResult.LANE_FULL;
+            }
+            // the lane may have emptied since the submit
+            drainOverflow(ceJob.getLane());
+            return AddResult.PARKED;
         }
 
-        public void doneWithJob(CEJob ceJob) {
-            runningJobsSet.remove(ceJob);
+        /**
+         * Submits the parked jobs the lanes have room for, a safety net for jobs parked while no job of their
+         * lane was left to finish.
+         */
+        public void drainOverflows() {
+            overflows.keySet().forEach(this::drainOverflow);
+        }
+
+        private void drainOverflow(Lane lane) {
+            BlockingDeque<CEJob> overflow = overflows.get(lane);
+            CEJob parked;
+            while ((parked = overflow.pollFirst()) != null) {
+                if (!submit(parked)) {
+                    // still full, keeps its place
+                    if (!overflow.offerFirst(parked)) {
+                        pendingJobs.remove(parked);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private boolean submit(CEJob ceJob) {
+            return lanes.get(ceJob.getLane()).submit(() -> {
+                try {
+                    jobRunnable.accept(ceJob);
+                } finally {
+                    pendingJobs.remove(ceJob);
+                    drainOverflow(ceJob.getLane());
+                }
+            });
+        }
+
+        public EncodingLane getLane(Lane lane) {
+            return lanes.get(lane);
+        }
+
+        public Map<Lane, EncodingLane.LaneStats> getLaneStats() {
+            Map<Lane, EncodingLane.LaneStats> stats = new EnumMap<>(Lane.class);
+            lanes.forEach((lane, encodingLane) -> stats.put(lane, encodingLane.getStats()));
+            return stats;
+        }
+
+        public enum AddResult {
+            QUEUED,
+            // in the overflow of its full lane
+            PARKED,
+            ALREADY_PENDING,
+            LANE_FULL
         }
     }
 
+    /**
+     * Jobs are equal by the content they encode, the lane only decides where a job runs, so the same content
+     * routed to different lanes by the sweep and the change stream is still encoded once.
+     */
     @Data
     public static class CEJob {
         private final String id;
         private final JobType jobType;
+        @EqualsAndHashCode.Exclude
+        private final Lane lane;
+    }
+
+    public enum Lane {
+        // videos
+        HEAVY,
+        // audios and images
+        LIGHT
     }
 
     public enum JobType {
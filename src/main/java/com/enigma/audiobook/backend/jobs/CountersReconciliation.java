@@ -0,0 +1,22 @@
+package com.enigma.audiobook.backend.jobs;
+
+import com.enigma.audiobook.backend.service.EntityCounters;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@AllArgsConstructor
+public class CountersReconciliation implements Runnable {
+    EntityCounters entityCounters;
+
+    @Override
+    public void run() {
+        try {
+            entityCounters.reconcile();
+        } catch (Exception e) {
+            log.error("unable to reconcile counters", e);
+        }
+    }
+}
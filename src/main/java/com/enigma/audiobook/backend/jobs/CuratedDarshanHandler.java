@@ -8,6 +8,7 @@ import com.enigma.audiobook.backend.models.ContentUploadStatus;
 import com.enigma.audiobook.backend.models.CuratedDarshan;
 import com.enigma.audiobook.backend.models.Darshan;
 import com.enigma.audiobook.backend.models.God;
+import com.enigma.audiobook.backend.service.CuratedDarshansCache;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
@@ -25,6 +26,7 @@ public class CuratedDarshanHandler implements Runnable {
     final GodDao godDao;
     final MandirDao mandirDao;
     final DarshanDao darshanDao;
+    final CuratedDarshansCache curatedDarshansCache;
 
     // config
     static final int DEFUALT_DARSHAN_COUNT_PER_GOD = 2;
@@ -91,6 +93,7 @@ public class CuratedDarshanHandler implements Runnable {
         CuratedDarshan curatedDarshan = new CuratedDarshan();
         curatedDarshan.setGodToDarshanIds(nextGodToDarshans);
         curatedDarshanDao.addCuratedDarshan(curatedDarshan);
+        curatedDarshansCache.refresh();
     }
 
     private void updateDarshans(Map<String, List<String>> nextGodToDarshans,
@@ -2,16 +2,15 @@ package com.enigma.audiobook.backend.jobs;
 
 import com.enigma.audiobook.backend.dao.*;
 import com.enigma.audiobook.backend.models.*;
+import com.google.common.collect.Lists;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 @AllArgsConstructor
 public class CuratedFeedHandler implements Runnable {
@@ -28,76 +27,105 @@ public class CuratedFeedHandler implements Runnable {
     static final Integer TWENTY_SEC = 20;
     static final Integer FORTY_SEC = 40;
     static final float SCORE_FACTOR = 1.41f;
+    static final int BATCH_SIZE = 1000;
+    static final long CHECKPOINT_OVERLAP_MS = 60 * 1000;
 
+    /**
+     * Rescores only the posts which got views or got published since the last checkpoint, the very first run
+     * scores all the posts. Posts which left the processed status since are removed.
+     */
     @Override
-    public void run() {
-        String scoredContentCollectionSuffix = generateSuffix();
-        String collectionName = ScoredContentDao.getCollectionName(scoredContentCollectionSuffix);
-
-        scoredContentDao.initCollectionAndIndexes(collectionName);
-
-        addScoredContent(collectionName, PostType.VIDEO, SIXTY_SEC, THIRTY_SEC);
-        addScoredContent(collectionName, PostType.AUDIO, FORTY_SEC, TWENTY_SEC);
-
-        collectionConfigDao.updateScoredContentCollectionName(collectionName);
-    }
-
-    private void addScoredContent(String collectionName,
-                                  PostType postType,
-                                  int tierOneViewDurationThreshold,
-                                  int tierTwoViewDuration) {
-        List<Post> posts = postsDao.getPostsByType(postType, 10000, Optional.empty());
-
-        posts.forEach(post -> {
-            List<View> viewsForPost = viewsDao.getViewsForPostNext(post.getPostId(), 1000,
-                    Optional.empty());
-//            viewsForPost = viewsForPost
-//                    .stream()
-//                    .filter(view -> !view.getUserId().equals(post.getFromUserId()))
-//                    .toList();
-
-            if (viewsForPost.size() < MIN_VIEWS_THRESHOLD_FOR_SCORING) {
-                NewPost newPost = new NewPost();
-                newPost.setPostType(postType);
-                newPost.setPostId(post.getPostId());
-                newPostsDao.upsertNewPost(newPost);
-                return;
-            } else {
-                newPostsDao.removeFromNewPosts(post.getPostId());
+    public synchronized void run() {
+        Date runStartTime = new Date();
+        String collectionName = ScoredContentDao.LIVE_SCORED_CONTENT_COLLECTION;
+        Optional<Date> checkpoint = collectionConfigDao.getScoringCheckpoint();
+
+        if (checkpoint.isEmpty()) {
+            if (!scoredContentDao.listCollections().contains(collectionName)) {
+                scoredContentDao.initCollectionAndIndexes(collectionName);
             }
+            scorePosts(collectionName, PostType.VIDEO, postsDao.getPostIdsByType(PostType.VIDEO, 10000),
+                    SIXTY_SEC, THIRTY_SEC);
+            scorePosts(collectionName, PostType.AUDIO, postsDao.getPostIdsByType(PostType.AUDIO, 10000),
+                    FORTY_SEC, TWENTY_SEC);
+            collectionConfigDao.updateScoredContentCollectionName(collectionName);
+        } else {
+            // views and posts are timestamped by the app servers, overlap a bit to not miss any on a clock skew
+            Date since = new Date(checkpoint.get().getTime() - CHECKPOINT_OVERLAP_MS);
+            Set<String> postIdsWithNewViews = viewsDao.getPostIdsWithViewsUpdatedSince(since);
+            log.info("rescoring posts since:{}, posts with new views:{}", since, postIdsWithNewViews.size());
+
+            rescorePosts(collectionName, PostType.VIDEO, postIdsWithNewViews, since, SIXTY_SEC, THIRTY_SEC);
+            rescorePosts(collectionName, PostType.AUDIO, postIdsWithNewViews, since, FORTY_SEC, TWENTY_SEC);
+        }
+
+        collectionConfigDao.updateScoringCheckpoint(runStartTime);
+    }
 
-            List<Integer> viewDurations = viewsForPost.stream()
-                    .map(View::getViewDurationSec)
-                    .toList();
-            int totalViews = viewDurations.size();
+    private void rescorePosts(String collectionName,
+                              PostType postType,
+                              Set<String> postIdsWithNewViews,
+                              Date since,
+                              int tierOneViewDurationThreshold,
+                              int tierTwoViewDuration) {
+        Set<String> postIds = new LinkedHashSet<>();
+        Lists.partition(new ArrayList<>(postIdsWithNewViews), BATCH_SIZE)
+                .forEach(batch -> postIds.addAll(postsDao.getPostIdsByType(postType, batch)));
+        // published since the last run, these have no views yet and go to the new posts
+        postIds.addAll(postsDao.getPostIdsByTypeUpdatedSince(postType, since, 10000));
+
+        scorePosts(collectionName, postType, new ArrayList<>(postIds),
+                tierOneViewDurationThreshold, tierTwoViewDuration);
+
+        // deleted or failed a re-encode since, they must not rank anymore
+        List<String> notProcessedPostIds = postsDao.getNotProcessedPostIdsByTypeUpdatedSince(postType, since, 10000);
+        scoredContentDao.removeScoredContents(collectionName, notProcessedPostIds);
+        newPostsDao.bulkUpdateNewPosts(Collections.emptyList(), notProcessedPostIds);
+        log.info("removed {} {} posts not processed anymore", notProcessedPostIds.size(), postType);
+    }
 
-            long numOfViewsGreaterThanTierOneThreshold = viewDurations
+    private void scorePosts(String collectionName,
+                            PostType postType,
+                            List<String> postIds,
+                            int tierOneViewDurationThreshold,
+                            int tierTwoViewDuration) {
+        int scoredCount = 0;
+        int newPostsCount = 0;
+        for (List<String> batch : Lists.partition(postIds, BATCH_SIZE)) {
+            Map<String, ViewsDao.PostViewStats> viewStatsByPostId = viewsDao.getViewStatsForPosts(batch,
+                            tierOneViewDurationThreshold, tierTwoViewDuration)
                     .stream()
-                    .filter(duration -> duration > tierOneViewDurationThreshold)
-                    .count();
-            long numOfViewsGreaterThanTierTwoThreshold = viewDurations
-                    .stream()
-                    .filter(duration -> duration < tierOneViewDurationThreshold
-                            && duration > tierTwoViewDuration)
-                    .count();
-            float tierOnePercent = ((float) numOfViewsGreaterThanTierOneThreshold / totalViews) * 100;
-            float tierTwoPercent = ((float) numOfViewsGreaterThanTierTwoThreshold / totalViews) * 100;
-
-            int score = (int) (tierTwoPercent * Math.pow(SCORE_FACTOR, 1) +
-                    tierOnePercent * Math.pow(SCORE_FACTOR, 2));
-
-            ScoredContent sc = new ScoredContent();
-            sc.setScore(score);
-            sc.setPostId(post.getPostId());
-            sc.setPostType(postType);
-
-            scoredContentDao.addScoredContent(collectionName, sc);
-        });
-
-    }
+                    .collect(Collectors.toMap(ViewsDao.PostViewStats::getPostId, stats -> stats));
+
+            List<NewPost> newPosts = new ArrayList<>();
+            List<String> scoredPostIds = new ArrayList<>();
+            List<ScoredContent> scoredContents = new ArrayList<>();
+            for (String postId : batch) {
+                ViewsDao.PostViewStats viewStats = viewStatsByPostId.get(postId);
+                if (viewStats == null || viewStats.getTotalViews() < MIN_VIEWS_THRESHOLD_FOR_SCORING) {
+                    NewPost newPost = new NewPost();
+                    newPost.setPostType(postType);
+                    newPost.setPostId(postId);
+                    newPosts.add(newPost);
+                    continue;
+                }
+                scoredPostIds.add(postId);
+
+                int score = (int) (viewStats.getTierTwoPercent() * Math.pow(SCORE_FACTOR, 1) +
+                        viewStats.getTierOnePercent() * Math.pow(SCORE_FACTOR, 2));
+
+                ScoredContent sc = new ScoredContent();
+                sc.setScore(score);
+                sc.setPostId(postId);
+                sc.setPostType(postType);
+                scoredContents.add(sc);
+            }
 
-    private String generateSuffix() {
-        return LocalDateTime.now(ZoneId.of(ZoneId.SHORT_IDS.get("IST")))
-                .format(DateTimeFormatter.ISO_DATE_TIME).toString();
+            newPostsDao.bulkUpdateNewPosts(newPosts, scoredPostIds);
+            scoredContentDao.upsertScoredContents(collectionName, scoredContents);
+            scoredCount += scoredContents.size();
+            newPostsCount += newPosts.size();
+        }
+        log.info("scored {} {} posts, {} new posts", scoredCount, postType, newPostsCount);
     }
 }
@@ -0,0 +1,122 @@
+package com.enigma.audiobook.backend.jobs;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of encoding workers for one kind of job, resized at runtime by the scheduler. Records how long
+ * the jobs waited in the queue and how long they took to run.
+ */
+@Slf4j
+public class EncodingLane {
+    private final String name;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder completedJobs = new LongAdder();
+    private final LongAdder totalQueueWaitMs = new LongAdder();
+    private final LongAdder totalServiceTimeMs = new LongAdder();
+    private final AtomicLong maxQueueWaitMs = new AtomicLong();
+    private final AtomicLong maxServiceTimeMs = new AtomicLong();
+
+    public EncodingLane(String name, int initialSize, int queueCapacity) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(initialSize, initialSize, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "encoding-" + name + "-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @return false if the queue of the lane is full
+     */
+    public boolean submit(Runnable job) {
+        long queuedAtMillis = System.currentTimeMillis();
+        try {
+            executor.execute(() -> {
+                long startedAtMillis = System.currentTimeMillis();
+                try {
+                    job.run();
+                } finally {
+                    long endedAtMillis = System.currentTimeMillis();
+                    record(startedAtMillis - queuedAtMillis, endedAtMillis - startedAtMillis);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public void resize(int size) {
+        int currentSize = executor.getMaximumPoolSize();
+        if (size == currentSize) {
+            return;
+        }
+        log.info("resizing encoding lane:{} from:{} to:{}", name, currentSize, size);
+        // the core size can't go above the max size and the other way round
+        if (size > currentSize) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    public int getSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public LaneStats getStats() {
+        long completed = completedJobs.sum();
+        LaneStats stats = new LaneStats();
+        stats.setSize(getSize());
+        stats.setActiveCount(getActiveCount());
+        stats.setQueueDepth(getQueueDepth());
+        stats.setQueueCapacity(queueCapacity);
+        stats.setCompletedJobs(completed);
+        stats.setAverageQueueWaitMs(completed == 0 ? 0 : totalQueueWaitMs.sum() / completed);
+        stats.setMaxQueueWaitMs(maxQueueWaitMs.get());
+        stats.setAverageServiceTimeMs(completed == 0 ? 0 : totalServiceTimeMs.sum() / completed);
+        stats.setMaxServiceTimeMs(maxServiceTimeMs.get());
+        return stats;
+    }
+
+    private void record(long queueWaitMs, long serviceTimeMs) {
+        completedJobs.increment();
+        totalQueueWaitMs.add(queueWaitMs);
+        totalServiceTimeMs.add(serviceTimeMs);
+        maxQueueWaitMs.accumulateAndGet(queueWaitMs, Math::max);
+        maxServiceTimeMs.accumulateAndGet(serviceTimeMs, Math::max);
+        log.info("encoding lane:{} job waited:{}ms, ran:{}ms", name, queueWaitMs, serviceTimeMs);
+    }
+
+    @Data
+    public static class LaneStats {
+        int size;
+        int activeCount;
+        int queueDepth;
+        int queueCapacity;
+        long completedJobs;
+        long averageQueueWaitMs;
+        long maxQueueWaitMs;
+        long averageServiceTimeMs;
+        long maxServiceTimeMs;
+    }
+}
@@ -0,0 +1,211 @@
+package com.enigma.audiobook.backend.jobs;
+
+import com.enigma.audiobook.backend.dao.FollowingsDao;
+import com.enigma.audiobook.backend.dao.GodDao;
+import com.enigma.audiobook.backend.dao.PostsDao;
+import com.enigma.audiobook.backend.dao.UserFeedInboxDao;
+import com.enigma.audiobook.backend.models.*;
+import com.enigma.audiobook.backend.service.EntityCounters;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.math3.util.Pair;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fan-out-on-write of published posts into the followers' feed inboxes. A followee with more than
+ * maxFanOutFollowers followers is not fanned out, it gets marked as a pull source and its posts are read at
+ * feed request time instead.
+ * <p>
+ * Fan-outs and inbox rebuilds run on their own bounded pool, a task rejected by a full queue is dropped and
+ * logged rather than delaying the scheduled jobs or the caller. A user's inbox is rebuilt at most once at a
+ * time, and not again within REBUILT_MARKER_MINUTES of the previous rebuild.
+ */
+@Slf4j
+@Component
+public class FeedInboxHandler {
+    private static final int FAN_OUT_BATCH_SIZE = 1000;
+    // a rebuilt inbox can stay empty, e.g. the followees have no recent posts
+    private static final long REBUILT_MARKER_MINUTES = 10;
+
+    final UserFeedInboxDao userFeedInboxDao;
+    final FollowingsDao followingsDao;
+    final PostsDao postsDao;
+    final GodDao godDao;
+    final EntityCounters entityCounters;
+    final ExecutorService fanOutExecutor;
+    final int maxFanOutFollowers;
+    final int backfillPostsPerFollowee;
+    final Set<String> rebuildingUserIds = ConcurrentHashMap.newKeySet();
+    final Cache<String, Boolean> rebuiltUserIds = CacheBuilder.newBuilder()
+            .expireAfterWrite(REBUILT_MARKER_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    public FeedInboxHandler(UserFeedInboxDao userFeedInboxDao, FollowingsDao followingsDao,
+                            PostsDao postsDao, GodDao godDao, EntityCounters entityCounters,
+                            @Value("${feed-config.inboxFanOutThreads:4}") int fanOutThreads,
+                            @Value("${feed-config.inboxFanOutQueueSize:1000}") int fanOutQueueSize,
+                            @Value("${feed-config.inboxMaxFanOutFollowers:10000}") int maxFanOutFollowers,
+                            @Value("${feed-config.inboxBackfillPostsPerFollowee:50}") int backfillPostsPerFollowee) {
+        this.userFeedInboxDao = userFeedInboxDao;
+        this.followingsDao = followingsDao;
+        this.postsDao = postsDao;
+        this.godDao = godDao;
+        this.entityCounters = entityCounters;
+        this.fanOutExecutor = new ThreadPoolExecutor(fanOutThreads, fanOutThreads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(fanOutQueueSize),
+                new ThreadFactoryBuilder().setNameFormat("feed-inbox-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.maxFanOutFollowers = maxFanOutFollowers;
+        this.backfillPostsPerFollowee = backfillPostsPerFollowee;
+    }
+
+    public void fanOutPostAsync(Post post) {
+        execute("fan out post:" + post.getPostId(), () -> fanOutPost(post));
+    }
+
+    public void fanOutPost(Post post) {
+        for (Pair<String, FollowingType> source : getSources(post)) {
+            String followeeId = source.getFirst();
+            FollowingType followingType = source.getSecond();
+
+            int followersCount = entityCounters.getFollowersCount(followeeId, followingType);
+            if (followersCount > maxFanOutFollowers) {
+                log.info("followee:{} has {} followers, serving its posts by pull", followeeId, followersCount);
+                userFeedInboxDao.markPullSource(followeeId, followingType);
+                continue;
+            }
+
+            List<String> followerIds = followingsDao.getFollowerIdsForFollowee(followeeId, followingType);
+            for (List<String> batch : Lists.partition(followerIds, FAN_OUT_BATCH_SIZE)) {
+                userFeedInboxDao.addPostForFollowers(batch, post.getPostId(), followeeId, followingType);
+            }
+            log.info("fanned out post:{} of followee:{} to {} followers", post.getPostId(), followeeId,
+                    followerIds.size());
+        }
+    }
+
+    public void backfillFollowingAsync(Following following) {
+        execute("backfill following:" + following, () -> backfillFollowing(following));
+    }
+
+    /**
+     * Rebuilds the inbox of a user who has followings but no inbox entries, e.g. followed before inboxes existed
+     * or whose entries expired.
+     */
+    public void rebuildInboxAsync(String userId, List<Following> followings) {
+        if (rebuiltUserIds.getIfPresent(userId) != null || !rebuildingUserIds.add(userId)) {
+            return;
+        }
+        boolean submitted = execute("rebuild inbox of user:" + userId, () -> {
+            try {
+                for (Following following : followings) {
+                    try {
+                        backfillFollowing(following);
+                    } catch (Exception e) {
+                        log.error("unable to backfill following:" + following, e);
+                    }
+                }
+                rebuiltUserIds.put(userId, true);
+            } finally {
+                rebuildingUserIds.remove(userId);
+            }
+        });
+        if (!submitted) {
+            rebuildingUserIds.remove(userId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdown();
+    }
+
+    private boolean execute(String taskDescription, Runnable task) {
+        try {
+            fanOutExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("unable to " + taskDescription, e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("feed inbox pool saturated, dropped task to {}", taskDescription);
+            return false;
+        }
+    }
+
+    public void removeFollowing(Following following) {
+        userFeedInboxDao.removeSourceForFollower(following.getFollowerUserId(), following.getFolloweeId());
+    }
+
+    private void backfillFollowing(Following following) {
+        String followeeId = following.getFolloweeId();
+        if (userFeedInboxDao.isPullSource(followeeId)) {
+            return;
+        }
+
+        List<Post> posts;
+        switch (following.getFollowingType()) {
+            case MANDIR:
+                posts = postsDao.getPostsForAssociations(Collections.singleton(followeeId),
+                                PostAssociationType.MANDIR, backfillPostsPerFollowee)
+                        .getOrDefault(followeeId, Collections.emptyList());
+                break;
+            case INFLUENCER:
+                posts = postsDao.getPostsForAssociations(Collections.singleton(followeeId),
+                                PostAssociationType.INFLUENCER, backfillPostsPerFollowee)
+                        .getOrDefault(followeeId, Collections.emptyList());
+                break;
+            case GOD:
+                posts = godDao.getGod(followeeId)
+                        .map(god -> postsDao.getPostsOfGods(Map.of(god.getGodId(), god.getGodName()),
+                                        backfillPostsPerFollowee)
+                                .getOrDefault(followeeId, Collections.emptyList()))
+                        .orElse(Collections.emptyList());
+                break;
+            default:
+                throw new IllegalStateException("unhandled following type:" + following.getFollowingType());
+        }
+
+        userFeedInboxDao.addPostsForFollower(following.getFollowerUserId(),
+                posts.stream().map(Post::getPostId).toList(),
+                followeeId, following.getFollowingType());
+    }
+
+    private List<Pair<String, FollowingType>> getSources(Post post) {
+        List<Pair<String, FollowingType>> sources = new ArrayList<>();
+        switch (post.getAssociationType()) {
+            case MANDIR:
+                sources.add(new Pair<>(post.getAssociatedMandirId(), FollowingType.MANDIR));
+                break;
+            case INFLUENCER:
+                sources.add(new Pair<>(post.getAssociatedInfluencerId(), FollowingType.INFLUENCER));
+                break;
+            case GOD:
+                sources.add(new Pair<>(post.getAssociatedGodId(), FollowingType.GOD));
+                break;
+            default:
+                throw new IllegalStateException("unhandled association type:" + post.getAssociationType());
+        }
+
+        // same as PostsDao.getPostOfGod, media posts tagged with a god show up in the god's feed as well
+        if (StringUtils.isNotBlank(post.getTag()) && post.getType() != PostType.TEXT) {
+            godDao.getGodByName(post.getTag())
+                    .filter(god -> !god.getGodId().equals(post.getAssociatedGodId()))
+                    .ifPresent(god -> sources.add(new Pair<>(god.getGodId(), FollowingType.GOD)));
+        }
+        return sources;
+    }
+}
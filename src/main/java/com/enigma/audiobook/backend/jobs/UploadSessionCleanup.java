@@ -0,0 +1,25 @@
+package com.enigma.audiobook.backend.jobs;
+
+import com.enigma.audiobook.backend.utils.ContentUploadUtils;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@AllArgsConstructor
+public class UploadSessionCleanup implements Runnable {
+    private static final int BATCH_SIZE = 100;
+    ContentUploadUtils contentUploadUtils;
+
+    @Override
+    public void run() {
+        int abortedCount;
+        int totalAbortedCount = 0;
+        do {
+            abortedCount = contentUploadUtils.abortExpiredUploads(BATCH_SIZE);
+            totalAbortedCount += abortedCount;
+        } while (abortedCount == BATCH_SIZE);
+        log.info("aborted {} expired uploads", totalAbortedCount);
+    }
+}
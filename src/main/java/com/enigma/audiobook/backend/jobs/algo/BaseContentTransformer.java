@@ -7,13 +7,20 @@ import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Slf4j
 public abstract class BaseContentTransformer {
 //    static String inputContentLocalFilePathPrefix = "file:///Users/akhil/Downloads/tmp/one-god-local/input";
 //    static String outputContentLocalFilePathPrefix = "file:///Users/akhil/Downloads/tmp/one-god-local/output";
 
+    private static final String PLAYLIST_SUFFIX = ".m3u8";
+    // shared by all the encodings of the node
+    private static final ExecutorService uploadExecutor = Executors.newFixedThreadPool(16);
+
     final String bucketUrl;
     final String bucket;
     final String inputContentLocalFilePathPrefixWOScheme;
@@ -56,25 +63,23 @@ public abstract class BaseContentTransformer {
                 createDir(outputDir);
                 outputDirs.add(outputDir);
 
-                // create HLS files
-                encodeContentToDir(inputContentLocalFilePathWOScheme, outputDir);
+                // create HLS files, the segments are uploaded to s3 while being encoded
+                Set<String> uploadedFileNames;
+                try (HLSSegmentUploader segmentUploader = new HLSSegmentUploader(Path.of(outputDir),
+                        f -> uploadFile(f, outputS3KeyFormat), uploadExecutor)) {
+                    encodeContentToDir(inputContentLocalFilePathWOScheme, outputDir);
+                    uploadedFileNames = segmentUploader.awaitUploads();
+                }
 
-                // upload to s3
+                // upload the rest to s3, the playlists last so that they never refer to a missing segment, and
+                // the master playlist after the variant playlists it refers to
                 File outputDirFile = new File(outputDir);
-                File[] outputFiles = Objects.requireNonNull(outputDirFile.listFiles());
+                List<File> outputFiles = Arrays.stream(Objects.requireNonNull(outputDirFile.listFiles()))
+                        .filter(f -> !uploadedFileNames.contains(f.getName()))
+                        .sorted(Comparator.comparingInt(f -> getUploadOrder(f.getName())))
+                        .toList();
                 for (File f : outputFiles) {
-                    log.info("file path:{}, f:{}", f.getAbsolutePath(), f.toURI());
-
-                    String fileName = f.getName();
-                    String s3OutputObjectKey = String.format(outputS3KeyFormat, fileName);
-
-                    String objectUrl = getObjectUrl(s3OutputObjectKey);
-                    log.info("s3 object key:{}, objectUrl:{}", s3OutputObjectKey, objectUrl);
-
-                    addToUploadsList(fileName, objectUrl);
-
-                    Optional<String> contentType = getContentType(fileName);
-                    s3Proxy.putObject(bucket, s3OutputObjectKey, f, contentType);
+                    uploadFile(f, outputS3KeyFormat);
                 }
             }
             // update db
@@ -90,6 +95,28 @@ public abstract class BaseContentTransformer {
         }
     }
 
+    private void uploadFile(File f, String outputS3KeyFormat) {
+        log.info("file path:{}, f:{}", f.getAbsolutePath(), f.toURI());
+
+        String fileName = f.getName();
+        String s3OutputObjectKey = String.format(outputS3KeyFormat, fileName);
+
+        String objectUrl = getObjectUrl(s3OutputObjectKey);
+        log.info("s3 object key:{}, objectUrl:{}", s3OutputObjectKey, objectUrl);
+
+        addToUploadsList(fileName, objectUrl);
+
+        Optional<String> contentType = getContentType(fileName);
+        s3Proxy.putObject(bucket, s3OutputObjectKey, f, contentType);
+    }
+
+    private int getUploadOrder(String fileName) {
+        if (isMasterPlaylist(fileName)) {
+            return 2;
+        }
+        return fileName.endsWith(PLAYLIST_SUFFIX) ? 1 : 0;
+    }
+
     private void createDir(String dir) {
         File file = new File(dir);
         file.deleteOnExit();
@@ -128,6 +155,13 @@ public abstract class BaseContentTransformer {
 
     protected abstract void addToUploadsList(String fileName, String s3ObjectURL);
 
+    /**
+     * the playlist referring to the variant playlists of the renditions, uploaded last
+     */
+    protected boolean isMasterPlaylist(String fileName) {
+        return false;
+    }
+
     public String getObjectUrl(String objectKey) {
         return String.format("%s/%s", bucketUrl, objectKey);
     }
@@ -9,8 +9,10 @@ import com.google.common.base.Preconditions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static com.enigma.audiobook.backend.utils.ObjectStoreMappingUtils.getDarshanVideoUploadObjectKeyFormatProcessed;
@@ -18,18 +20,27 @@ import static com.enigma.audiobook.backend.utils.ObjectStoreMappingUtils.getDars
 @Slf4j
 public class DarshanContentTransformer extends BaseContentTransformer {
     final DarshanDao darshanDao;
+    // empty for a single rendition
+    final List<ContentEncoderV2.Rendition> videoRenditions;
+    // empty when not encoded under a lease
+    final Optional<String> encodingLeaseToken;
     volatile Darshan darshan;
+    volatile String videoPlaylistFileName;
 
     public DarshanContentTransformer(S3Proxy s3Proxy, DarshanDao darshanDao,
                                      String bucket_url,
                                      String bucket,
                                      String inputContentLocalFilePathPrefixWOScheme,
-                                     String outputContentLocalFilePathPrefixWOScheme) {
+                                     String outputContentLocalFilePathPrefixWOScheme,
+                                     List<ContentEncoderV2.Rendition> videoRenditions,
+                                     Optional<String> encodingLeaseToken) {
         super(bucket_url, bucket,
                 inputContentLocalFilePathPrefixWOScheme,
                 outputContentLocalFilePathPrefixWOScheme,
                 s3Proxy);
         this.darshanDao = darshanDao;
+        this.videoRenditions = videoRenditions;
+        this.encodingLeaseToken = encodingLeaseToken;
     }
 
     public void handleDarshan(Darshan darshan) {
@@ -49,7 +60,7 @@ public class DarshanContentTransformer extends BaseContentTransformer {
         Preconditions.checkState(darshan.getVideoUrl().contains(darshan.getDarshanId()));
         Preconditions.checkState(darshan.getThumbnailUrl().contains(darshan.getDarshanId()));
         darshanDao.updateDarshan(darshan.getDarshanId(), darshan.getThumbnailUrl(), darshan.getVideoUrl(),
-                ContentUploadStatus.PROCESSED);
+                ContentUploadStatus.PROCESSED, encodingLeaseToken);
     }
 
     @Override
@@ -68,13 +79,14 @@ public class DarshanContentTransformer extends BaseContentTransformer {
     @Override
     protected void encodeContentToDir(String inputContentLocalFilePath, String outputDir) throws IOException, InterruptedException, Exception {
         log.info("encoding content inputContentLocalFilePath:{}, outputDir:{}", inputContentLocalFilePath, outputDir);
-        ContentEncoderV2.updateVideoContentToDir(inputContentLocalFilePath, outputDir);
-        ContentEncoderV2.generateThumbnailToDir(inputContentLocalFilePath, outputDir);
+        ContentEncoderV2.EncodedVideo encodedVideo = ContentEncoderV2.encodeVideoToDir(inputContentLocalFilePath,
+                outputDir, videoRenditions);
+        videoPlaylistFileName = new File(encodedVideo.getPlaylistPath()).getName();
     }
 
     @Override
     protected void addToUploadsList(String fileName, String s3ObjectURL) {
-        if (fileName.endsWith("m3u8")) {
+        if (isVideoPlaylist(fileName)) {
             log.info("add to upload list, file:{}, url:{}", fileName, s3ObjectURL);
             darshan.setVideoUrl(s3ObjectURL);
         } else if (fileName.endsWith("jpg")) {
@@ -82,4 +94,16 @@ public class DarshanContentTransformer extends BaseContentTransformer {
             darshan.setThumbnailUrl(s3ObjectURL);
         }
     }
+
+    /**
+     * the master playlist for ABR, the variant playlists are only referred to from it
+     */
+    private boolean isVideoPlaylist(String fileName) {
+        return fileName.equals(videoPlaylistFileName);
+    }
+
+    @Override
+    protected boolean isMasterPlaylist(String fileName) {
+        return isVideoPlaylist(fileName);
+    }
 }
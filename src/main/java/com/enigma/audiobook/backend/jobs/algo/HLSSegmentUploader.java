@@ -0,0 +1,117 @@
+package com.enigma.audiobook.backend.jobs.algo;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Uploads the HLS segments of an output dir while ffmpeg is still encoding into it. ffmpeg writes a segment
+ * to a .tmp file and renames it once complete (hls_flags temp_file), so a created .ts file is final.
+ * The playlists are left to the caller, to be uploaded once all the segments are.
+ */
+@Slf4j
+class HLSSegmentUploader implements AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".ts";
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Path dir;
+    private final Consumer<File> upload;
+    private final ExecutorService uploadExecutor;
+    private final WatchService watchService;
+    private final Map<String, Future<?>> uploads = new ConcurrentHashMap<>();
+    private final Thread watcher;
+    private volatile boolean stopped = false;
+
+    HLSSegmentUploader(Path dir, Consumer<File> upload, ExecutorService uploadExecutor) throws IOException {
+        this.dir = dir;
+        this.upload = upload;
+        this.uploadExecutor = uploadExecutor;
+        this.watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        this.watcher = new Thread(this::watch, "hls-segment-watcher-" + dir.getFileName());
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * To be called once the encoding is done, uploads the segments not seen by the watcher and waits for all
+     * the uploads.
+     *
+     * @return names of the uploaded files
+     */
+    Set<String> awaitUploads() throws InterruptedException {
+        stopWatching();
+
+        // events can overflow or arrive after the watcher stopped
+        File[] files = Objects.requireNonNull(dir.toFile().listFiles());
+        for (File f : files) {
+            submitIfSegment(f.toPath());
+        }
+
+        for (Map.Entry<String, Future<?>> entry : uploads.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("unable to upload segment:" + entry.getKey(), e.getCause());
+            }
+        }
+        log.info("uploaded {} segments of dir:{}", uploads.size(), dir);
+        return uploads.keySet();
+    }
+
+    @Override
+    public void close() {
+        stopWatching();
+        uploads.values().forEach(future -> future.cancel(false));
+    }
+
+    private void watch() {
+        try {
+            while (!stopped) {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    submitIfSegment(dir.resolve((Path) event.context()));
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.info("stopped watching dir:{}", dir);
+        }
+    }
+
+    private void submitIfSegment(Path file) {
+        String fileName = file.getFileName().toString();
+        if (!fileName.endsWith(SEGMENT_SUFFIX)) {
+            return;
+        }
+        uploads.computeIfAbsent(fileName, name -> uploadExecutor.submit(() -> upload.accept(file.toFile())));
+    }
+
+    private void stopWatching() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            watcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.error("unable to close the watch service of dir:" + dir, e);
+        }
+    }
+}
@@ -3,12 +3,14 @@ package com.enigma.audiobook.backend.jobs.algo;
 import com.enigma.audiobook.backend.aws.S3Proxy;
 import com.enigma.audiobook.backend.dao.PostsDao;
 import com.enigma.audiobook.backend.jobs.ContentEncoderV2;
+import com.enigma.audiobook.backend.jobs.FeedInboxHandler;
 import com.enigma.audiobook.backend.models.ContentUploadStatus;
 import com.enigma.audiobook.backend.models.Post;
 import com.google.common.base.Preconditions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -19,18 +21,30 @@ import static com.enigma.audiobook.backend.utils.ObjectStoreMappingUtils.*;
 @Slf4j
 public class PostsContentTransformer extends BaseContentTransformer {
     final PostsDao postsDao;
+    final FeedInboxHandler feedInboxHandler;
+    // empty for a single rendition
+    final List<ContentEncoderV2.Rendition> videoRenditions;
+    // empty when not encoded under a lease
+    final Optional<String> encodingLeaseToken;
     volatile Post post;
+    volatile String videoPlaylistFileName;
 
     public PostsContentTransformer(S3Proxy s3Proxy, PostsDao postsDao,
+                                   FeedInboxHandler feedInboxHandler,
                                    String bucket_url,
                                    String bucket,
                                    String inputContentLocalFilePathPrefixWOScheme,
-                                   String outputContentLocalFilePathPrefixWOScheme) {
+                                   String outputContentLocalFilePathPrefixWOScheme,
+                                   List<ContentEncoderV2.Rendition> videoRenditions,
+                                   Optional<String> encodingLeaseToken) {
         super(bucket_url, bucket,
                 inputContentLocalFilePathPrefixWOScheme,
                 outputContentLocalFilePathPrefixWOScheme,
                 s3Proxy);
         this.postsDao = postsDao;
+        this.feedInboxHandler = feedInboxHandler;
+        this.videoRenditions = videoRenditions;
+        this.encodingLeaseToken = encodingLeaseToken;
         this.post = null;
     }
 
@@ -77,10 +91,12 @@ public class PostsContentTransformer extends BaseContentTransformer {
                 throw new IllegalStateException("unhandled type:" + post.getType());
         }
 
-        postsDao.updatePost(post.getPostId(), ContentUploadStatus.PROCESSED, post.getType(),
+        Post processedPost = postsDao.updatePost(post.getPostId(), ContentUploadStatus.PROCESSED, post.getType(),
                 post.getThumbnailUrl(), post.getVideoUrl(),
                 post.getImagesUrl(),
-                post.getAudioUrl());
+                post.getAudioUrl(), encodingLeaseToken);
+        // the post is processed whatever the fan out outcome, it must not fail the encoding
+        feedInboxHandler.fanOutPostAsync(processedPost);
     }
 
     @Override
@@ -103,8 +119,9 @@ public class PostsContentTransformer extends BaseContentTransformer {
                 inputContentLocalFilePath, outputDir, post);
         switch (post.getType()) {
             case VIDEO:
-                ContentEncoderV2.updateVideoContentToDir(inputContentLocalFilePath, outputDir);
-                ContentEncoderV2.generateThumbnailToDir(inputContentLocalFilePath, outputDir);
+                ContentEncoderV2.EncodedVideo encodedVideo = ContentEncoderV2.encodeVideoToDir(inputContentLocalFilePath,
+                        outputDir, videoRenditions);
+                videoPlaylistFileName = new File(encodedVideo.getPlaylistPath()).getName();
                 break;
             case AUDIO:
                 ContentEncoderV2.updateAudioContentToDir(inputContentLocalFilePath, outputDir);
@@ -121,7 +138,7 @@ public class PostsContentTransformer extends BaseContentTransformer {
     protected void addToUploadsList(String fileName, String s3ObjectURL) {
         switch (post.getType()) {
             case VIDEO:
-                if (fileName.endsWith("m3u8")) {
+                if (isVideoPlaylist(fileName)) {
                     log.info("add to upload list:{}, url:{}", fileName, s3ObjectURL);
                     post.setVideoUrl(s3ObjectURL);
                 } else if (fileName.endsWith("jpg")) {
@@ -149,4 +166,16 @@ public class PostsContentTransformer extends BaseContentTransformer {
                 return;
         }
     }
+
+    /**
+     * the master playlist for ABR, the variant playlists are only referred to from it
+     */
+    private boolean isVideoPlaylist(String fileName) {
+        return fileName.equals(videoPlaylistFileName);
+    }
+
+    @Override
+    protected boolean isMasterPlaylist(String fileName) {
+        return isVideoPlaylist(fileName);
+    }
 }
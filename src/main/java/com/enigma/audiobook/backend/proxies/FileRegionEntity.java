@@ -0,0 +1,68 @@
+package com.enigma.audiobook.backend.proxies;
+
+import com.google.common.io.ByteStreams;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Request body of a region of a file, written straight from the file channel to the connection without
+ * reading the region into the heap. Repeatable, every write reads the region again.
+ */
+public class FileRegionEntity extends AbstractHttpEntity {
+    private final File file;
+    private final long offset;
+    private final long length;
+
+    public FileRegionEntity(File file, long offset, long length) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        return ByteStreams.limit(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outStream);
+            long written = 0;
+            while (written < length) {
+                long transferred = channel.transferTo(offset + written, length - written, target);
+                if (transferred <= 0) {
+                    throw new IOException(String.format("file:%s ended at:%s, expected till:%s",
+                            file, offset + written, offset + length));
+                }
+                written += transferred;
+            }
+        }
+        outStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
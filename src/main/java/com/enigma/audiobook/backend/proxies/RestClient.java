@@ -4,6 +4,7 @@ import com.enigma.audiobook.backend.utils.SerDe;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
@@ -30,7 +31,11 @@ public class RestClient {
     private final CloseableHttpClient client;
 
     public RestClient() {
-        client = HttpClientBuilder.create().build();
+        // parts of an upload go in parallel to the same host
+        client = HttpClientBuilder.create()
+                .setMaxConnTotal(50)
+                .setMaxConnPerRoute(20)
+                .build();
     }
 
     public <T> T doPost(String hostAndPort, String path, String jsonStr, Class<T> clazz) {
@@ -56,9 +61,13 @@ public class RestClient {
     }
 
     public HeaderAndEntity  doPut(String url, byte[] data) {
+        return doPut(url, new ByteArrayEntity(data));
+    }
+
+    public HeaderAndEntity doPut(String url, HttpEntity entity) {
         URI uri = URI.create(url);
         HttpPut request = new HttpPut(uri);
-        request.setEntity(new ByteArrayEntity(data));
+        request.setEntity(entity);
 
         try (CloseableHttpResponse response = client.execute(request)) {
             log.info("http response:"+response);
@@ -0,0 +1,136 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.dao.CuratedDarshanDao;
+import com.enigma.audiobook.backend.dao.DarshanDao;
+import com.enigma.audiobook.backend.models.CuratedDarshan;
+import com.enigma.audiobook.backend.models.Darshan;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Interleaved darshan list of the latest curation run, built once per CuratedDarshan document and served
+ * from memory. A snapshot older than CHECK_INTERVAL_MS is checked against the latest curated darshan id by
+ * the one request that wins the refresh, the others keep serving the current snapshot meanwhile.
+ */
+@Slf4j
+@Component
+public class CuratedDarshansCache {
+    private static final long CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final CuratedDarshanDao curatedDarshanDao;
+    private final DarshanDao darshanDao;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlightRefresh = new AtomicReference<>();
+
+    public CuratedDarshansCache(CuratedDarshanDao curatedDarshanDao, DarshanDao darshanDao) {
+        this.curatedDarshanDao = curatedDarshanDao;
+        this.darshanDao = darshanDao;
+    }
+
+    public List<Darshan> getCuratedDarshans() {
+        Snapshot current = snapshot.get();
+        if (current != null && System.currentTimeMillis() - current.checkedAtMillis < CHECK_INTERVAL_MS) {
+            return current.darshans;
+        }
+        return refresh(current).darshans;
+    }
+
+    /**
+     * Rebuilds the list right away, called after a curation run added a new CuratedDarshan.
+     */
+    public void refresh() {
+        refresh(snapshot.get());
+    }
+
+    private Snapshot refresh(Snapshot current) {
+        CompletableFuture<Snapshot> refresh = new CompletableFuture<>();
+        CompletableFuture<Snapshot> inFlight = inFlightRefresh.compareAndExchange(null, refresh);
+        if (inFlight != null) {
+            // only the very first requests have to wait for the list
+            return current != null ? current : inFlight.join();
+        }
+
+        try {
+            Snapshot next = load(current);
+            snapshot.set(next);
+            refresh.complete(next);
+            return next;
+        } catch (RuntimeException e) {
+            refresh.completeExceptionally(e);
+            if (current == null) {
+                throw e;
+            }
+            log.error("unable to refresh curated darshans, serving the previous list", e);
+            return current;
+        } finally {
+            inFlightRefresh.set(null);
+        }
+    }
+
+    private Snapshot load(Snapshot current) {
+        Optional<String> latestCuratedDarshanId = curatedDarshanDao.getLatestCuratedDarshanId();
+        if (current != null && Objects.equals(current.curatedDarshanId, latestCuratedDarshanId.orElse(null))) {
+            return new Snapshot(current.curatedDarshanId, current.darshans, System.currentTimeMillis());
+        }
+
+        List<Darshan> darshans = latestCuratedDarshanId
+                .flatMap(curatedDarshanDao::getCuratedDarshan)
+                .map(this::getInterleavedDarshans)
+                .orElse(Collections.emptyList());
+        log.info("built curated darshans:{} of size:{}", latestCuratedDarshanId.orElse(null), darshans.size());
+        return new Snapshot(latestCuratedDarshanId.orElse(null), List.copyOf(darshans), System.currentTimeMillis());
+    }
+
+    /**
+     * round robin across the gods, in the order of the god names
+     */
+    private List<Darshan> getInterleavedDarshans(CuratedDarshan curatedDarshan) {
+        Map<String, List<String>> curatedDarshans = curatedDarshan.getGodToDarshanIds();
+        List<String> darshanIds = new ArrayList<>();
+
+        Map<String, Integer> godNameToCounter = new TreeMap<>(curatedDarshans.entrySet()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size())));
+
+        while (true) {
+            for (Map.Entry<String, Integer> entry : godNameToCounter.entrySet()) {
+                int counter = entry.getValue();
+                if (counter > 0) {
+                    List<String> darshansForGod = curatedDarshans.get(entry.getKey());
+                    String darshanId = darshansForGod.get(darshansForGod.size() - counter);
+                    darshanIds.add(darshanId);
+                    counter--;
+                    entry.setValue(counter);
+                }
+            }
+            boolean allZero = true;
+            for (Map.Entry<String, Integer> entry : godNameToCounter.entrySet()) {
+                allZero = allZero && entry.getValue() <= 0;
+            }
+
+            if (allZero) {
+                break;
+            }
+        }
+
+        return darshanDao.getDarshansByIds(darshanIds);
+    }
+
+    private static class Snapshot {
+        final String curatedDarshanId;
+        final List<Darshan> darshans;
+        final long checkedAtMillis;
+
+        Snapshot(String curatedDarshanId, List<Darshan> darshans, long checkedAtMillis) {
+            this.curatedDarshanId = curatedDarshanId;
+            this.darshans = darshans;
+            this.checkedAtMillis = checkedAtMillis;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.dao.CountersDao;
+import com.enigma.audiobook.backend.dao.CountersDao.Counter;
+import com.enigma.audiobook.backend.dao.CountersDao.CounterKey;
+import com.enigma.audiobook.backend.dao.FollowingsDao;
+import com.enigma.audiobook.backend.dao.PostsDao;
+import com.enigma.audiobook.backend.models.FollowingType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Follower and post counts of the pages, read from the counters and seeded with a count on the first read.
+ * FollowingsDao and PostsDao move the counters on the follow and post status transitions, reconcile() recounts
+ * them to correct the increments lost to failures or to a transition racing with the seeding.
+ */
+@Slf4j
+@Component
+public class EntityCounters {
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    private final CountersDao countersDao;
+    private final FollowingsDao followingsDao;
+    private final PostsDao postsDao;
+
+    public EntityCounters(CountersDao countersDao, FollowingsDao followingsDao, PostsDao postsDao) {
+        this.countersDao = countersDao;
+        this.followingsDao = followingsDao;
+        this.postsDao = postsDao;
+    }
+
+    public int getFollowersCount(String followeeId, FollowingType followingType) {
+        return getCount(followeeId, Counter.followersOf(followingType));
+    }
+
+    public int getInfluencerPostsCount(String influencerId) {
+        return getCount(influencerId, Counter.INFLUENCER_POSTS);
+    }
+
+    /**
+     * @return number of counters corrected
+     */
+    public int reconcile() {
+        int correctedCount = 0;
+        int totalCount = 0;
+        Optional<String> lastCounterId = Optional.empty();
+        List<CounterKey> keys;
+        do {
+            keys = countersDao.getCounterKeysNext(RECONCILE_BATCH_SIZE, lastCounterId);
+            for (CounterKey key : keys) {
+                int count = countSource(key.getEntityId(), key.getCounter());
+                if (countersDao.setCount(key.getEntityId(), key.getCounter(), count)) {
+                    log.info("corrected counter:{} of entity:{} to:{}", key.getCounter(), key.getEntityId(), count);
+                    correctedCount++;
+                }
+            }
+            totalCount += keys.size();
+            if (!keys.isEmpty()) {
+                lastCounterId = Optional.of(keys.get(keys.size() - 1).getCounterId());
+            }
+        } while (keys.size() == RECONCILE_BATCH_SIZE);
+
+        log.info("reconciled {} counters, corrected:{}", totalCount, correctedCount);
+        return correctedCount;
+    }
+
+    private int getCount(String entityId, Counter counter) {
+        Optional<Long> count = countersDao.getCount(entityId, counter);
+        if (count.isPresent()) {
+            return Math.toIntExact(count.get());
+        }
+
+        int sourceCount = countSource(entityId, counter);
+        countersDao.seedCount(entityId, counter, sourceCount);
+        return sourceCount;
+    }
+
+    private int countSource(String entityId, Counter counter) {
+        return switch (counter) {
+            case MANDIR_FOLLOWERS -> followingsDao.countFollowingsForFollowee(entityId, FollowingType.MANDIR);
+            case GOD_FOLLOWERS -> followingsDao.countFollowingsForFollowee(entityId, FollowingType.GOD);
+            case INFLUENCER_FOLLOWERS -> followingsDao.countFollowingsForFollowee(entityId, FollowingType.INFLUENCER);
+            case INFLUENCER_POSTS -> postsDao.countPostsForInfluencer(entityId);
+        };
+    }
+}
@@ -0,0 +1,96 @@
+package com.enigma.audiobook.backend.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the per-followee queries of a feed request concurrently on a bounded pool. Every request
+ * gets a deadline; queries that have not finished by then are cancelled and left out of the result,
+ * so the feed is built from whatever arrived in time instead of failing as a whole. A query rejected by a
+ * saturated pool is cancelled right away and left out the same way, it is never run on the request thread
+ * where it could not be bound by the deadline.
+ */
+@Slf4j
+@Component
+public class FeedFanOutExecutor {
+    private final ExecutorService executor;
+    private final long deadlineMs;
+
+    public FeedFanOutExecutor(@Value("${feed-config.fanOutThreads:32}") int threads,
+                              @Value("${feed-config.fanOutQueueSize:512}") int queueSize,
+                              @Value("${feed-config.fanOutDeadlineMs:2000}") long deadlineMs) {
+        this.executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("feed-fan-out-%d").setDaemon(true).build(),
+                FeedFanOutExecutor::cancelRejected);
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * @return results keyed like the given tasks, only for tasks that completed successfully before
+     * the deadline
+     */
+    public <K, V> Map<K, V> fetchAll(Map<K, Callable<V>> tasksByKey) {
+        if (tasksByKey.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        List<K> keys = new ArrayList<>(tasksByKey.keySet());
+        List<Callable<V>> tasks = keys.stream().map(tasksByKey::get).toList();
+
+        List<Future<V>> futures;
+        try {
+            futures = executor.invokeAll(tasks, deadlineMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        Map<K, V> results = new HashMap<>();
+        int timedOut = 0;
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<V> future = futures.get(i);
+            if (future.isCancelled()) {
+                timedOut++;
+                continue;
+            }
+            try {
+                results.put(keys.get(i), future.get());
+            } catch (ExecutionException e) {
+                failed++;
+                log.error("fan out query failed for key:" + keys.get(i), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (timedOut > 0 || failed > 0) {
+            log.warn("partial fan out result, total:{}, timedOut or rejected:{}, failed:{}, deadlineMs:{}",
+                    keys.size(), timedOut, failed, deadlineMs);
+        }
+        return results;
+    }
+
+    private static void cancelRejected(Runnable task, ThreadPoolExecutor executor) {
+        // invokeAll submits FutureTasks, a cancelled one is reported like a query past the deadline
+        if (task instanceof Future<?> future) {
+            future.cancel(false);
+        } else {
+            throw new RejectedExecutionException("feed fan out pool saturated");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
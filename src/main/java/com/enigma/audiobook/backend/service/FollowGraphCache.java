@@ -0,0 +1,159 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.dao.FollowingsDao;
+import com.enigma.audiobook.backend.models.Following;
+import com.enigma.audiobook.backend.models.FollowingType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Followees of the active users, loaded with a single query per user and answered from memory. Mongo stays the
+ * source of truth, the follows and unfollows are written through it and then applied to the cached entry.
+ * <p>
+ * Every write bumps the write version of the user. An entry carries the version it was loaded or updated at, an
+ * entry behind the version of its user, e.g. loaded concurrently with a write, is reloaded by the next read.
+ * The follows served by the other nodes are not seen by this node till its entry is reloaded, within
+ * RELOAD_AFTER_MINUTES.
+ */
+@Slf4j
+@Component
+public class FollowGraphCache {
+    private static final long RELOAD_AFTER_MINUTES = 1;
+    // outlives the entries loaded before the last write of a user
+    private static final long WRITE_VERSION_EXPIRY_MINUTES = 2 * RELOAD_AFTER_MINUTES;
+
+    private final FollowingsDao followingsDao;
+    private final LoadingCache<String, Followees> cache;
+    private final Cache<String, Long> writeVersions = CacheBuilder.newBuilder()
+            .expireAfterWrite(WRITE_VERSION_EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    public FollowGraphCache(FollowingsDao followingsDao,
+                            @Value("${feed-config.followGraphCacheSize:100000}") long cacheSize) {
+        this.followingsDao = followingsDao;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(RELOAD_AFTER_MINUTES, TimeUnit.MINUTES)
+                .build(CacheLoader.from(this::load));
+    }
+
+    public List<Following> getFollowings(String userId) {
+        return getFollowees(userId).followings;
+    }
+
+    public List<Following> getFollowings(String userId, FollowingType followingType) {
+        return getFollowees(userId).getFollowings(followingType);
+    }
+
+    public Set<String> getFolloweeIds(String userId, FollowingType followingType) {
+        return getFollowees(userId).getFolloweeIds(followingType);
+    }
+
+    public boolean isFollowing(String userId, String followeeId, FollowingType followingType) {
+        return getFollowees(userId).getFolloweeIds(followingType).contains(followeeId);
+    }
+
+    public void upsertFollowing(Following following) {
+        followingsDao.upsertFollowing(following);
+        update(following.getFollowerUserId(), (followees, version) -> followees.with(following, version));
+    }
+
+    public void removeFollowing(Following following) {
+        followingsDao.removeFollowing(following);
+        update(following.getFollowerUserId(), (followees, version) -> followees.without(following, version));
+    }
+
+    private Followees getFollowees(String userId) {
+        Followees followees = cache.getUnchecked(userId);
+        if (followees.version == getWriteVersion(userId)) {
+            return followees;
+        }
+        // missed a write of the user, reloaded with all the writes done till now
+        cache.asMap().remove(userId, followees);
+        return cache.getUnchecked(userId);
+    }
+
+    private Followees load(String userId) {
+        // read before the followings, the writes of this version are already in mongo
+        long version = getWriteVersion(userId);
+        return Followees.of(followingsDao.getFollowingsForUser(userId), version);
+    }
+
+    private void update(String userId, BiFunction<Followees, Long, Followees> change) {
+        long version = writeVersions.asMap().merge(userId, 1L, Long::sum);
+        // an uncached user is loaded with the change on the next read, an entry which missed an earlier write is
+        // left behind the version to be reloaded
+        cache.asMap().computeIfPresent(userId, (id, followees) ->
+                followees.version == version - 1 ? change.apply(followees, version) : followees);
+    }
+
+    private long getWriteVersion(String userId) {
+        return Optional.ofNullable(writeVersions.getIfPresent(userId)).orElse(0L);
+    }
+
+    /**
+     * Immutable, an update replaces the entry of the user.
+     */
+    static class Followees {
+        final ImmutableList<Following> followings;
+        final Map<FollowingType, ImmutableList<Following>> followingsByType;
+        final Map<FollowingType, ImmutableSet<String>> followeeIdsByType;
+        // the write version of the user the followings are up to date with
+        final long version;
+
+        private Followees(ImmutableList<Following> followings, long version) {
+            this.followings = followings;
+            this.version = version;
+            Map<FollowingType, ImmutableList.Builder<Following>> followingsBuilders = new EnumMap<>(FollowingType.class);
+            Map<FollowingType, ImmutableSet.Builder<String>> followeeIdsBuilders = new EnumMap<>(FollowingType.class);
+            for (Following following : followings) {
+                followingsBuilders.computeIfAbsent(following.getFollowingType(), t -> ImmutableList.builder())
+                        .add(following);
+                followeeIdsBuilders.computeIfAbsent(following.getFollowingType(), t -> ImmutableSet.builder())
+                        .add(following.getFolloweeId());
+            }
+            this.followingsByType = new EnumMap<>(FollowingType.class);
+            followingsBuilders.forEach((type, builder) -> followingsByType.put(type, builder.build()));
+            this.followeeIdsByType = new EnumMap<>(FollowingType.class);
+            followeeIdsBuilders.forEach((type, builder) -> followeeIdsByType.put(type, builder.build()));
+        }
+
+        static Followees of(List<Following> followings, long version) {
+            return new Followees(ImmutableList.copyOf(followings), version);
+        }
+
+        List<Following> getFollowings(FollowingType followingType) {
+            return followingsByType.getOrDefault(followingType, ImmutableList.of());
+        }
+
+        Set<String> getFolloweeIds(FollowingType followingType) {
+            return followeeIdsByType.getOrDefault(followingType, ImmutableSet.of());
+        }
+
+        Followees with(Following following, long version) {
+            if (getFolloweeIds(following.getFollowingType()).contains(following.getFolloweeId())) {
+                return new Followees(followings, version);
+            }
+            return new Followees(ImmutableList.<Following>builder().addAll(followings).add(following).build(),
+                    version);
+        }
+
+        Followees without(Following following, long version) {
+            return new Followees(followings.stream()
+                    .filter(f -> !(f.getFollowingType() == following.getFollowingType() &&
+                            f.getFolloweeId().equals(following.getFolloweeId())))
+                    .collect(ImmutableList.toImmutableList()), version);
+        }
+    }
+}
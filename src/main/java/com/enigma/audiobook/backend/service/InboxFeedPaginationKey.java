@@ -0,0 +1,29 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.models.responses.CuratedFeedPaginationKey;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Pagination key of the curated feed page with the cursor of the materialized inbox, kept apart from the
+ * mandir, influencer and god keys of the followees merge. Requests deserialize every CuratedFeedPaginationKey
+ * into this type, see registerDeserializer, clients that don't know the field drop it and restart from the
+ * first page.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class InboxFeedPaginationKey extends CuratedFeedPaginationKey {
+    String inboxLastPostId;
+
+    public static void registerDeserializer(Jackson2ObjectMapperBuilder builder) {
+        builder.mixIn(CuratedFeedPaginationKey.class, DeserializeAsMixIn.class);
+    }
+
+    @JsonDeserialize(as = InboxFeedPaginationKey.class)
+    interface DeserializeAsMixIn {
+    }
+}
@@ -3,6 +3,7 @@ package com.enigma.audiobook.backend.service;
 import com.enigma.audiobook.backend.aws.models.MPUAbortedReason;
 import com.enigma.audiobook.backend.aws.models.MPURequestStatus;
 import com.enigma.audiobook.backend.dao.*;
+import com.enigma.audiobook.backend.jobs.FeedInboxHandler;
 import com.enigma.audiobook.backend.models.*;
 import com.enigma.audiobook.backend.models.requests.*;
 import com.enigma.audiobook.backend.models.responses.*;
@@ -12,12 +13,15 @@ import com.google.common.base.Preconditions;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.bson.types.ObjectId;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static com.enigma.audiobook.backend.utils.ObjectStoreMappingUtils.*;
@@ -26,6 +30,10 @@ import static com.enigma.audiobook.backend.utils.ObjectStoreMappingUtils.*;
 @Data
 @Slf4j
 public class OneGodService {
+    private static final int CURATED_FEED_PAGE_SIZE = 100;
+    private static final int CURATED_FEED_MAX_SERVED_POST_IDS = 1000;
+    // inbox pages read for a feed page whose entries are mostly of deleted or unprocessed posts
+    private static final int INBOX_MAX_READS_PER_PAGE = 3;
 
     private final UserRegistrationDao userRegistrationDao;
     private final GodDao godDao;
@@ -45,6 +53,17 @@ public class OneGodService {
     private final ContentUploadUtils contentUploadUtils;
     private final FirebaseClient firebaseClient;
     private final UserFeaturesDao userFeaturesDao;
+    private final FeedFanOutExecutor feedFanOutExecutor;
+    private final UserFeedInboxDao userFeedInboxDao;
+    private final FeedInboxHandler feedInboxHandler;
+    private final CuratedFeedCursorDao curatedFeedCursorDao;
+    private final CuratedDarshansCache curatedDarshansCache;
+    private final UploadSessionDao uploadSessionDao;
+    private final SeenPostsDao seenPostsDao;
+    private final CountersDao countersDao;
+    private final SeenPostsCache seenPostsCache;
+    private final FollowGraphCache followGraphCache;
+    private final EntityCounters entityCounters;
     private volatile String registrationToken;
 
     public User createUser(Map<String, String> headers, String remoteAddr) {
@@ -160,14 +179,13 @@ public class OneGodService {
     }
 
     public List<GodForUser> getFollowedGodsForUser(int limit, String userId) {
-        List<Following> followings = followingsDao.getFollowingsForUser(userId, FollowingType.GOD);
-        return followings.stream()
-                .map(following -> godDao.getGod(following.getFolloweeId()))
-                .filter(Optional::isPresent)
+        List<Following> followings = followGraphCache.getFollowings(userId, FollowingType.GOD);
+        return godDao.getGods(followings.stream().map(Following::getFolloweeId).toList())
+                .stream()
                 .map(god ->
                 {
                     GodForUser godForUser = new GodForUser();
-                    godForUser.setGod(god.get());
+                    godForUser.setGod(god);
                     godForUser.setFollowed(true);
                     return godForUser;
                 }).toList();
@@ -282,16 +300,15 @@ public class OneGodService {
     }
 
     public List<InfluencerForUser> getFollowedInfluencersForUser(int limit, String userId) {
-        List<Following> followings = followingsDao.getFollowingsForUser(userId, FollowingType.INFLUENCER);
-        return followings.stream()
-                .map(following -> influencerDao.getInfleuncer(following.getFolloweeId()))
-                .filter(Optional::isPresent)
+        List<Following> followings = followGraphCache.getFollowings(userId, FollowingType.INFLUENCER);
+        return influencerDao.getInfluencers(followings.stream().map(Following::getFolloweeId).toList())
+                .stream()
                 .map(influencer ->
                 {
                     InfluencerForUser influencerForUser = new InfluencerForUser();
-                    influencerForUser.setInfluencer(influencer.get());
+                    influencerForUser.setInfluencer(influencer);
                     influencerForUser.setFollowed(true);
-                    influencerForUser.setNumOfPosts(postsDao.countPostsForInfluencer(userId));
+                    influencerForUser.setNumOfPosts(entityCounters.getInfluencerPostsCount(influencer.getUserId()));
                     return influencerForUser;
                 }).toList();
     }
@@ -305,7 +322,7 @@ public class OneGodService {
                     InfluencerForUser influencerForUser = new InfluencerForUser();
                     influencerForUser.setInfluencer(influencer);
                     influencerForUser.setFollowed(followedInfluencerIds.contains(influencer.getUserId()));
-                    influencerForUser.setNumOfPosts(postsDao.countPostsForInfluencer(userId));
+                    influencerForUser.setNumOfPosts(entityCounters.getInfluencerPostsCount(influencer.getUserId()));
                     return influencerForUser;
                 }).toList();
     }
@@ -407,6 +424,9 @@ public class OneGodService {
         Map<String, String> initMetadata = getHeadersMetadata(headers, remoteAddr);
 
         Post post = postsDao.initPost(postInitReq.getPost(), id, initMetadata);
+        if (post.getType() == PostType.TEXT) {
+            feedInboxHandler.fanOutPostAsync(post);
+        }
         return new PostInitResponse(post, initRes);
     }
 
@@ -485,6 +505,9 @@ public class OneGodService {
         Map<String, String> completeUploadMetadata = getHeadersMetadata(headers, remoteAddr);
         Post completePost = postsDao.updatePostStatus(postContentUploadReq.getPost().getPostId(),
                 contentUploadStatus, completeUploadMetadata);
+        if (ContentUploadStatus.PROCESSED.equals(contentUploadStatus)) {
+            feedInboxHandler.fanOutPostAsync(completePost);
+        }
         return new PostCompletionResponse(completePost, uploadCompletionRes);
     }
 
@@ -532,10 +555,10 @@ public class OneGodService {
         mandirFeedHeader.setDescription(mandir.get().getDescription());
         mandirFeedHeader.setImageUrls(mandir.get().getImageUrl());
         mandirFeedHeader.setMyProfilePage(isUserAuthorizedForPosts);
-        mandirFeedHeader.setCurrentUserFollowing(followingsDao.isUserFollowing(forUserId, mandirId, FollowingType.MANDIR));
+        mandirFeedHeader.setCurrentUserFollowing(followGraphCache.isFollowing(forUserId, mandirId, FollowingType.MANDIR));
         mandirFeedHeader.setAddress(mandir.get().getAddress());
 
-        int followingCount = followingsDao.countFollowingsForFollowee(mandirId, FollowingType.MANDIR);
+        int followingCount = entityCounters.getFollowersCount(mandirId, FollowingType.MANDIR);
         mandirFeedHeader.setFollowersCount(followingCount);
 
         if (isUserAuthorizedForPosts) {
@@ -590,9 +613,9 @@ public class OneGodService {
         godFeedHeader.setDescription(god.get().getDescription());
         godFeedHeader.setImageUrls(god.get().getImageUrl());
         godFeedHeader.setMyProfilePage(isUserAuthorizedForPosts);
-        godFeedHeader.setCurrentUserFollowing(followingsDao.isUserFollowing(forUserId, godId, FollowingType.GOD));
+        godFeedHeader.setCurrentUserFollowing(followGraphCache.isFollowing(forUserId, godId, FollowingType.GOD));
 
-        int followingCount = followingsDao.countFollowingsForFollowee(godId, FollowingType.GOD);
+        int followingCount = entityCounters.getFollowersCount(godId, FollowingType.GOD);
         godFeedHeader.setFollowersCount(followingCount);
 
         if (isUserAuthorizedForPosts) {
@@ -661,11 +684,11 @@ public class OneGodService {
         influencerFeedHeader.setImageUrls(influencer.get().getImageUrl());
         influencerFeedHeader.setMyProfilePage(isUserAuthorizedForPosts);
         influencerFeedHeader.setCurrentUserFollowing(
-                followingsDao.isUserFollowing(forUserId,
+                followGraphCache.isFollowing(forUserId,
                         influencerId, FollowingType.INFLUENCER));
 
 
-        int followingCount = followingsDao.countFollowingsForFollowee(influencerId, FollowingType.INFLUENCER);
+        int followingCount = entityCounters.getFollowersCount(influencerId, FollowingType.INFLUENCER);
         influencerFeedHeader.setFollowersCount(followingCount);
 
         if (isUserAuthorizedForPosts) {
@@ -763,39 +786,7 @@ public class OneGodService {
     }
 
     public List<Darshan> getCuratedDarshans() {
-        Optional<CuratedDarshan> curatedDarshan =
-                curatedDarshanDao.getLastNCuratedDarshan(1).stream().findFirst();
-
-        Map<String, List<String>> curatedDarshans = curatedDarshan.get().getGodToDarshanIds();
-        List<Darshan> darshans = new ArrayList<>();
-
-        Map<String, Integer> godNameToCounter = new TreeMap<>(curatedDarshans.entrySet()
-                .stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size())));
-
-        while (true) {
-            for (Map.Entry<String, Integer> entry : godNameToCounter.entrySet()) {
-                int counter = entry.getValue();
-                if (counter > 0) {
-                    List<String> darshansForGod = curatedDarshans.get(entry.getKey());
-                    String darshanId = darshansForGod.get(darshansForGod.size() - counter);
-                    Darshan darshan = darshanDao.getDarshan(darshanId).get();
-                    darshans.add(darshan);
-                    counter--;
-                    entry.setValue(counter);
-                }
-            }
-            boolean allZero = true;
-            for (Map.Entry<String, Integer> entry : godNameToCounter.entrySet()) {
-                allZero = allZero && entry.getValue() <= 0;
-            }
-
-            if (allZero) {
-                break;
-            }
-        }
-
-        return darshans;
+        return curatedDarshansCache.getCuratedDarshans();
     }
 
     public MandirInitResponse initMandir(MandirInitRequest mandirInitRequest, String registrationToken) {
@@ -877,14 +868,13 @@ public class OneGodService {
     }
 
     public List<MandirForUser> getFollowedMandirsForUser(int limit, String userId) {
-        List<Following> followings = followingsDao.getFollowingsForUser(userId, FollowingType.MANDIR);
-        return followings.stream()
-                .map(following -> mandirDao.getMandir(following.getFolloweeId()))
-                .filter(Optional::isPresent)
+        List<Following> followings = followGraphCache.getFollowings(userId, FollowingType.MANDIR);
+        return mandirDao.getMandirs(followings.stream().map(Following::getFolloweeId).toList())
+                .stream()
                 .map(mandir ->
                 {
                     MandirForUser m = new MandirForUser();
-                    m.setMandir(mandir.get());
+                    m.setMandir(mandir);
                     m.setFollowed(true);
                     return m;
                 }).toList();
@@ -919,8 +909,14 @@ public class OneGodService {
     }
 
     public List<Page> getAuthorizedPagesForUser(String userId) {
+        List<AuthForUser> authsForUser = userAuthDao.getAuthWithAdminPermission(userId);
+        // loads the pages of each type in one go, the lookups below are served from the dao caches
+        godDao.getGods(getAuthResourceIds(authsForUser, AuthAssociationType.GOD));
+        mandirDao.getMandirs(getAuthResourceIds(authsForUser, AuthAssociationType.MANDIR));
+        influencerDao.getInfluencers(getAuthResourceIds(authsForUser, AuthAssociationType.INFLUENCER));
+
         List<Page> pages =
-                userAuthDao.getAuthWithAdminPermission(userId)
+                authsForUser
                         .stream()
                         .map(authForUser -> {
                             Page page = new Page();
@@ -968,6 +964,13 @@ public class OneGodService {
         return pages;
     }
 
+    private static List<String> getAuthResourceIds(List<AuthForUser> auths, AuthAssociationType associationType) {
+        return auths.stream()
+                .filter(auth -> auth.getAssociationType().equals(associationType))
+                .map(AuthForUser::getResourceId)
+                .toList();
+    }
+
     public void addMandirAuth(String mandirId, String userId, String registrationToken) {
         checkValidRegistrationToken(registrationToken);
         validateUserHasFirebaseAuth(userId);
@@ -988,29 +991,139 @@ public class OneGodService {
 
     public List<Mandir> getAuthorizedMandirForUser(String userId) {
         validateUserHasFirebaseAuth(userId);
-        return userAuthDao.getAuthWithAdminPermission(userId)
-                .stream()
-                .filter(auth -> auth.getAssociationType().equals(AuthAssociationType.MANDIR))
-                .map(auth -> mandirDao.getMandir(auth.getResourceId()).get())
-                .toList();
+        Set<String> mandirIds = new LinkedHashSet<>(
+                getAuthResourceIds(userAuthDao.getAuthWithAdminPermission(userId), AuthAssociationType.MANDIR));
+        List<Mandir> mandirs = mandirDao.getMandirs(mandirIds);
+        if (mandirs.size() != mandirIds.size()) {
+            throw new IllegalStateException(String.format("mandirs not found for auths of user:%s, mandirIds:%s, found:%s",
+                    userId, mandirIds, mandirs.stream().map(Mandir::getMandirId).toList()));
+        }
+        return mandirs;
     }
 
     public FeedPageResponse getCuratedFeedPage(CuratedFeedRequest curatedFeedRequest) {
-        CuratedFeedResponse curatedFeedResponse = getCuratedFeedV2(curatedFeedRequest);
+        String userId = curatedFeedRequest.getUserId();
+        checkUserExists(userId);
+
+        List<Following> followingsForUser = followGraphCache.getFollowings(userId);
+
+        CuratedFeedResponse curatedFeedResponse;
+        Optional<CuratedFeedCursorDao.CuratedFeedCursor> v2Cursor =
+                getCuratedFeedCursor(userId, curatedFeedRequest.getCuratedFeedPaginationKey());
+        if (v2Cursor.isPresent()) {
+            // the earlier pages were served by the followees merge, keep paginating it
+            curatedFeedResponse = getCuratedFeedV2(curatedFeedRequest, followingsForUser, v2Cursor.get());
+        } else {
+            Optional<String> lastPostId = getInboxLastPostId(curatedFeedRequest.getCuratedFeedPaginationKey());
+            List<Post> inboxPosts = getInboxFeedPosts(userId, followingsForUser, lastPostId, CURATED_FEED_PAGE_SIZE);
+
+            if (inboxPosts.isEmpty() && lastPostId.isEmpty() && !followingsForUser.isEmpty()) {
+                // inbox not materialized yet, serve from the followees directly and build it for the next requests
+                feedInboxHandler.rebuildInboxAsync(userId, followingsForUser);
+                curatedFeedResponse = getCuratedFeedV2(curatedFeedRequest, followingsForUser,
+                        new CuratedFeedCursorDao.CuratedFeedCursor());
+            } else {
+                curatedFeedResponse = new CuratedFeedResponse();
+                curatedFeedResponse.setPosts(inboxPosts);
+                curatedFeedResponse.setCuratedFeedPaginationKey(getInboxPaginationKey(inboxPosts));
+            }
+        }
+
         List<FeedItem> feedItems =
                 curatedFeedResponse.getPosts()
                         .stream()
                         .map(this::postToFeedItem)
                         .toList();
 
-        int followingsCount =
-                followingsDao.getFollowingsForUser(curatedFeedRequest.getUserId()).size();
+        int followingsCount = followingsForUser.size();
 
         FeedPageResponse feedPageResponse = getFeedPageResponse(followingsCount, feedItems, curatedFeedResponse);
 
         return feedPageResponse;
     }
 
+    /**
+     * Feed page from the materialized inbox, merged with the posts of followees which are served by pull.
+     * Inbox entries are written once at the fan-out, the posts deleted or no longer processed since are left out
+     * and the inbox is read further to fill the page.
+     */
+    private List<Post> getInboxFeedPosts(String userId, List<Following> followings,
+                                         Optional<String> lastPostId, int limit) {
+        List<Post> posts = new ArrayList<>();
+        Optional<String> inboxLastPostId = lastPostId;
+        for (int reads = 0; reads < INBOX_MAX_READS_PER_PAGE && posts.size() < limit; reads++) {
+            List<String> postIds = userFeedInboxDao.getPostIds(userId, limit, inboxLastPostId);
+            posts.addAll(postsDao.getProcessedPostsByIds(postIds));
+            if (postIds.size() < limit) {
+                break;
+            }
+            inboxLastPostId = Optional.of(postIds.get(postIds.size() - 1));
+        }
+
+        Set<String> pullSources = userFeedInboxDao.getPullSources(
+                followings.stream().map(Following::getFolloweeId).toList());
+        if (pullSources.isEmpty()) {
+            return posts;
+        }
+
+        List<Following> pullFollowings = followings.stream()
+                .filter(f -> pullSources.contains(f.getFolloweeId()))
+                .toList();
+        posts.addAll(getPullSourcePosts(pullFollowings, lastPostId, limit));
+
+        Set<String> postIds = new HashSet<>();
+        return posts.stream()
+                .filter(post -> postIds.add(post.getPostId()))
+                .sorted(Comparator.comparing((Post post) -> new ObjectId(post.getPostId())).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private List<Post> getPullSourcePosts(List<Following> pullFollowings, Optional<String> lastPostId, int limit) {
+        Set<String> mandirIds = getFolloweeIds(pullFollowings, FollowingType.MANDIR);
+        Set<String> influencerIds = getFolloweeIds(pullFollowings, FollowingType.INFLUENCER);
+        Set<String> godIds = getFolloweeIds(pullFollowings, FollowingType.GOD);
+
+        List<Post> posts = new ArrayList<>();
+        postsDao.getPostsForAssociations(mandirIds, PostAssociationType.MANDIR, limit, lastPostId)
+                .values().forEach(posts::addAll);
+        postsDao.getPostsForAssociations(influencerIds, PostAssociationType.INFLUENCER, limit, lastPostId)
+                .values().forEach(posts::addAll);
+        if (!godIds.isEmpty()) {
+            Map<String, String> godNameById = godDao.getGods(godIds)
+                    .stream()
+                    .collect(Collectors.toMap(God::getGodId, God::getGodName));
+            postsDao.getPostsOfGods(godNameById, limit, lastPostId)
+                    .values().forEach(posts::addAll);
+        }
+        return posts;
+    }
+
+    private static Set<String> getFolloweeIds(List<Following> followings, FollowingType followingType) {
+        return followings.stream()
+                .filter(f -> f.getFollowingType().equals(followingType))
+                .map(Following::getFolloweeId)
+                .collect(Collectors.toSet());
+    }
+
+    private static Optional<String> getInboxLastPostId(CuratedFeedPaginationKey paginationKey) {
+        if (!(paginationKey instanceof InboxFeedPaginationKey inboxPaginationKey)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(inboxPaginationKey.getInboxLastPostId());
+    }
+
+    /**
+     * the inbox is a single timeline across all followees, only the last post id of the page is carried
+     */
+    private static CuratedFeedPaginationKey getInboxPaginationKey(List<Post> posts) {
+        InboxFeedPaginationKey inboxPaginationKey = new InboxFeedPaginationKey();
+        if (!posts.isEmpty()) {
+            inboxPaginationKey.setInboxLastPostId(posts.get(posts.size() - 1).getPostId());
+        }
+        return inboxPaginationKey;
+    }
+
     private FeedItem postToFeedItem(Post post) {
         FeedItem feedItem = new FeedItem();
         feedItem.setPost(post);
@@ -1060,7 +1173,18 @@ public class OneGodService {
         String userId = curatedFeedRequest.getUserId();
         checkUserExists(userId);
 
-        List<Following> followingsForUser = followingsDao.getFollowingsForUser(userId);
+        List<Following> followingsForUser = followGraphCache.getFollowings(userId);
+        CuratedFeedCursorDao.CuratedFeedCursor cursor =
+                getCuratedFeedCursor(userId, curatedFeedRequest.getCuratedFeedPaginationKey())
+                        .orElseGet(CuratedFeedCursorDao.CuratedFeedCursor::new);
+
+        return getCuratedFeedV2(curatedFeedRequest, followingsForUser, cursor);
+    }
+
+    private CuratedFeedResponse getCuratedFeedV2(CuratedFeedRequest curatedFeedRequest,
+                                                 List<Following> followingsForUser,
+                                                 CuratedFeedCursorDao.CuratedFeedCursor cursor) {
+        String userId = curatedFeedRequest.getUserId();
 
         List<Following> mandirFollowings =
                 followingsForUser.stream()
@@ -1077,38 +1201,68 @@ public class OneGodService {
                         .filter(f -> f.getFollowingType().equals(FollowingType.GOD))
                         .toList();
 
-        Map<String, List<Post>> lastNMandirFollowingPosts =
-                mandirFollowings.stream()
-                        .collect(Collectors.toMap(Following::getFolloweeId,
-                                f -> postsDao.getPosts(f.getFolloweeId(), PostAssociationType.MANDIR, 50)));
+        Set<String> mandirIds = mandirFollowings.stream().map(Following::getFolloweeId).collect(Collectors.toSet());
+        Set<String> influencerIds = influencerFollowings.stream().map(Following::getFolloweeId).collect(Collectors.toSet());
+        Set<String> godIds = godFollowings.stream().map(Following::getFolloweeId).collect(Collectors.toSet());
+
+        // one batched query per followee type, the three of them are independent so run them concurrently
+        // and bound the latency by the slowest one rather than the sum of all of them.
+        // Each followee is read from after the last post consumed from it in the earlier pages.
+        Map<PostAssociationType, Callable<Map<String, List<Post>>>> tasks = new HashMap<>();
+        tasks.put(PostAssociationType.MANDIR,
+                () -> postsDao.getPostsForAssociations(mandirIds, PostAssociationType.MANDIR, 50,
+                        cursor.getLastPostIdByMandir()));
+        tasks.put(PostAssociationType.INFLUENCER,
+                () -> postsDao.getPostsForAssociations(influencerIds, PostAssociationType.INFLUENCER, 50,
+                        cursor.getLastPostIdByInfluencer()));
+        tasks.put(PostAssociationType.GOD, () -> {
+            if (godIds.isEmpty()) {
+                return new HashMap<>();
+            }
+            Map<String, String> godNameById = godDao.getGods(godIds)
+                    .stream()
+                    .collect(Collectors.toMap(God::getGodId, God::getGodName));
+            return postsDao.getPostsOfGods(godNameById, 50, cursor.getLastPostIdByGod());
+        });
 
+        Map<PostAssociationType, Map<String, List<Post>>> postsByType = feedFanOutExecutor.fetchAll(tasks);
+        Map<String, List<Post>> lastNMandirFollowingPosts =
+                postsByType.getOrDefault(PostAssociationType.MANDIR, new HashMap<>());
         Map<String, List<Post>> lastNInfluencerFollowingPosts =
-                influencerFollowings.stream()
-                        .collect(Collectors.toMap(Following::getFolloweeId,
-                                f -> postsDao.getPostForInfluencer(f.getFolloweeId(), 50, Optional.empty(), true)));
-
+                postsByType.getOrDefault(PostAssociationType.INFLUENCER, new HashMap<>());
         Map<String, List<Post>> lastNGodFollowingPosts =
-                godFollowings.stream()
-                        .map(godFollowing -> godDao.getGod(godFollowing.getFolloweeId()))
-                        .filter(Optional::isPresent)
-                        .collect(Collectors.toMap(g -> g.get().getGodId(),
-                                g -> postsDao.getPostOfGod(g.get().getGodId(),
-                                        g.get().getGodName(),
-                                        50, Optional.empty(), true)));
+                postsByType.getOrDefault(PostAssociationType.GOD, new HashMap<>());
 
         List<Post> curatedPosts = new ArrayList<>();
-        Set<String> curatedPostIds = new HashSet<>();
-        addCuratedPostsV2(curatedPosts, curatedPostIds,
+        Set<String> curatedPostIds = new HashSet<>(cursor.getServedPostIds());
+        addCuratedPostsV2(curatedPosts, curatedPostIds, cursor,
                 lastNMandirFollowingPosts, lastNInfluencerFollowingPosts, lastNGodFollowingPosts);
 
         CuratedFeedResponse curatedFeedResponse = new CuratedFeedResponse();
         curatedFeedResponse.setPosts(curatedPosts);
 
+        if (curatedPosts.isEmpty()) {
+            // end of the feed, the same key keeps pointing to the exhausted cursor
+            curatedFeedResponse.setCuratedFeedPaginationKey(curatedFeedRequest.getCuratedFeedPaginationKey());
+            return curatedFeedResponse;
+        }
+
+        List<String> servedPostIds = new ArrayList<>(cursor.getServedPostIds());
+        curatedPosts.forEach(post -> servedPostIds.add(post.getPostId()));
+        cursor.setServedPostIds(new ArrayList<>(servedPostIds.subList(
+                Math.max(0, servedPostIds.size() - CURATED_FEED_MAX_SERVED_POST_IDS), servedPostIds.size())));
+
+        CuratedFeedPaginationKey curatedFeedPaginationKey =
+                getCuratedFeedV2PaginationKey(curatedFeedRequest.getCuratedFeedPaginationKey(), curatedPosts);
+        curatedFeedCursorDao.saveCursor(userId, getCursorKey(curatedFeedPaginationKey), cursor);
+        curatedFeedResponse.setCuratedFeedPaginationKey(curatedFeedPaginationKey);
+
         return curatedFeedResponse;
     }
 
     public void addCuratedPostsV2(List<Post> curatedPosts,
                                   Set<String> curatedPostIds,
+                                  CuratedFeedCursorDao.CuratedFeedCursor cursor,
                                   Map<String, List<Post>> lastNMandirFollowingPosts,
                                   Map<String, List<Post>> lastNInfluencerFollowingPosts,
                                   Map<String, List<Post>> lastNGodFollowingPosts) {
@@ -1161,7 +1315,7 @@ public class OneGodService {
                         .stream()
                         .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size()));
 
-        while (curatedPosts.size() < 100 &&
+        while (curatedPosts.size() < CURATED_FEED_PAGE_SIZE &&
                 (mandirPostsTotalCount.get() > 0 ||
                         influencerPostsTotalCount.get() > 0 ||
                         godPostsTotalCount.get() > 0)
@@ -1196,13 +1350,82 @@ public class OneGodService {
                     new HashSet<>(),
                     curatedPosts);
         }
+
+        // posts before the pointers were consumed by this page, the next page resumes after them
+        updateLastPostIds(cursor.getLastPostIdByMandir(), lastNMandirFollowingPosts, postEntriesPtrByMandir);
+        updateLastPostIds(cursor.getLastPostIdByInfluencer(), lastNInfluencerFollowingPosts,
+                postEntriesPtrByInfluencer);
+        updateLastPostIds(cursor.getLastPostIdByGod(), lastNGodFollowingPosts, postEntriesPtrByGod);
+    }
+
+    private static void updateLastPostIds(Map<String, String> lastPostIdById,
+                                          Map<String, List<Post>> postsById,
+                                          Map<String, Integer> remainingPostsCountById) {
+        postsById.forEach((id, posts) -> {
+            int consumedCount = posts.size() - remainingPostsCountById.get(id);
+            if (consumedCount > 0) {
+                lastPostIdById.put(id, posts.get(consumedCount - 1).getPostId());
+            }
+        });
+    }
+
+    private Optional<CuratedFeedCursorDao.CuratedFeedCursor> getCuratedFeedCursor(
+            String userId, CuratedFeedPaginationKey paginationKey) {
+        CuratedFeedCursorDao.CursorKey cursorKey = getCursorKey(paginationKey);
+        if (cursorKey.getMandirLastPostId() == null &&
+                cursorKey.getInfluencerLastPostId() == null &&
+                cursorKey.getGodLastPostId() == null) {
+            // first page
+            return Optional.empty();
+        }
+        return curatedFeedCursorDao.getCursor(userId, cursorKey);
+    }
+
+    private static CuratedFeedCursorDao.CursorKey getCursorKey(CuratedFeedPaginationKey paginationKey) {
+        if (paginationKey == null) {
+            return new CuratedFeedCursorDao.CursorKey(null, null, null);
+        }
+        return new CuratedFeedCursorDao.CursorKey(
+                paginationKey.getMandirFeedPaginationKey() == null ? null :
+                        paginationKey.getMandirFeedPaginationKey().getLastPostId(),
+                paginationKey.getInfluencerFeedPaginationKey() == null ? null :
+                        paginationKey.getInfluencerFeedPaginationKey().getLastPostId(),
+                paginationKey.getGodFeedePaginationKey() == null ? null :
+                        paginationKey.getGodFeedePaginationKey().getLastPostId());
+    }
+
+    /**
+     * the last mandir, influencer and god post of the page, a type without posts in the page keeps the id of
+     * the previous key
+     */
+    private static CuratedFeedPaginationKey getCuratedFeedV2PaginationKey(CuratedFeedPaginationKey previousKey,
+                                                                          List<Post> curatedPosts) {
+        CuratedFeedCursorDao.CursorKey previousCursorKey = getCursorKey(previousKey);
+        Map<PostAssociationType, String> lastPostIdByType = new HashMap<>();
+        curatedPosts.forEach(post -> lastPostIdByType.put(post.getAssociationType(), post.getPostId()));
+
+        MandirFeedPaginationKey mandirFeedPaginationKey = new MandirFeedPaginationKey();
+        mandirFeedPaginationKey.setLastPostId(lastPostIdByType.getOrDefault(PostAssociationType.MANDIR,
+                previousCursorKey.getMandirLastPostId()));
+        InfluencerFeedPaginationKey influencerFeedPaginationKey = new InfluencerFeedPaginationKey();
+        influencerFeedPaginationKey.setLastPostId(lastPostIdByType.getOrDefault(PostAssociationType.INFLUENCER,
+                previousCursorKey.getInfluencerLastPostId()));
+        GodFeedePaginationKey godFeedePaginationKey = new GodFeedePaginationKey();
+        godFeedePaginationKey.setLastPostId(lastPostIdByType.getOrDefault(PostAssociationType.GOD,
+                previousCursorKey.getGodLastPostId()));
+
+        CuratedFeedPaginationKey curatedFeedPaginationKey = new CuratedFeedPaginationKey();
+        curatedFeedPaginationKey.setMandirFeedPaginationKey(mandirFeedPaginationKey);
+        curatedFeedPaginationKey.setInfluencerFeedPaginationKey(influencerFeedPaginationKey);
+        curatedFeedPaginationKey.setGodFeedePaginationKey(godFeedePaginationKey);
+        return curatedFeedPaginationKey;
     }
 
     public CuratedFeedResponse getCuratedFeed(CuratedFeedRequest curatedFeedRequest) {
         String userId = curatedFeedRequest.getUserId();
         checkUserExists(userId);
 
-        List<Following> followingsForUser = followingsDao.getFollowingsForUser(userId);
+        List<Following> followingsForUser = followGraphCache.getFollowings(userId);
 
         List<Following> mandirFollowings =
                 followingsForUser.stream()
@@ -1231,42 +1454,46 @@ public class OneGodService {
         List<String> newAudioPostIds = newPostsDao.getNewPostsByTypeNext(PostType.AUDIO, 100, Optional.empty())
                 .stream().map(NewPost::getPostId).toList();
 
-        Set<String> viewedPostIdsForUser = new HashSet<>(viewsDao.getViewsForUser(userId, 10000)
-                .stream().map(View::getPostId).toList());
-        log.info("viewedPostIdsForUser:{}", viewedPostIdsForUser);
+        SeenPostsCache.SeenPosts seenPosts = seenPostsCache.getSeenPosts(userId);
+        Predicate<String> isViewedByUser = seenPosts::isSeen;
 
         /**
          * Feed Logic:
          */
 
-        List<Post> curatedPosts = new ArrayList<>();
+        // the feed is built as ids, the followed mandir posts are already loaded and the other posts are loaded
+        // at once by loadCuratedPosts
+        List<String> curatedFeedPostIds = new ArrayList<>();
         Set<String> curatedPostIds = new HashSet<>();
+        Map<String, Post> loadedPostsById = new HashMap<>();
 
         addCuratedPosts(lastNMandirFollowingPosts,
                 scoredContentVideosPostIds,
                 newVideosPostIds,
                 scoredContentAudioPostIds,
                 newAudioPostIds,
-                viewedPostIdsForUser,
-                curatedPosts,
-                curatedPostIds);
+                isViewedByUser,
+                curatedFeedPostIds,
+                curatedPostIds,
+                loadedPostsById);
         // TODO: We can paginate here over more entries from followed mandir, new posts and scored content
 
         // fallback to add to curated feed irrespective of viewed or not but not adding duplicated if already in
         // curated list
-        if (curatedPosts.size() < 100) {
+        if (curatedFeedPostIds.size() < 100) {
             addCuratedPosts(lastNMandirFollowingPosts,
                     scoredContentVideosPostIds,
                     newVideosPostIds,
                     scoredContentAudioPostIds,
                     newAudioPostIds,
-                    Collections.emptySet(),
-                    curatedPosts,
-                    curatedPostIds);
+                    postId -> false,
+                    curatedFeedPostIds,
+                    curatedPostIds,
+                    loadedPostsById);
         }
 
         CuratedFeedResponse curatedFeedResponse = new CuratedFeedResponse();
-        curatedFeedResponse.setPosts(curatedPosts);
+        curatedFeedResponse.setPosts(loadCuratedPosts(curatedFeedPostIds, loadedPostsById));
         return curatedFeedResponse;
     }
 
@@ -1275,9 +1502,10 @@ public class OneGodService {
                                  List<String> newVideosPostIds,
                                  List<String> scoredContentAudioPostIds,
                                  List<String> newAudioPostIds,
-                                 Set<String> viewedPostIdsForUser,
-                                 List<Post> curatedPosts,
-                                 Set<String> curatedPostIds) {
+                                 Predicate<String> isViewedByUser,
+                                 List<String> curatedFeedPostIds,
+                                 Set<String> curatedPostIds,
+                                 Map<String, Post> loadedPostsById) {
         Integer countOfMandirPostPerIteration = 4;
         Integer countOfScoredVideoPostsPerIteration = 2;
         Integer countOfNewVideoPostsPerIteration = 2;
@@ -1305,7 +1533,7 @@ public class OneGodService {
         AtomicInteger scoredContentAudioPostIdsCount = new AtomicInteger(scoredContentAudioPostIds.size());
         AtomicInteger newAudioPostIdsCount = new AtomicInteger(newAudioPostIds.size());
 
-        while (curatedPosts.size() < 100 &&
+        while (curatedFeedPostIds.size() < 100 &&
                 (mandirPostsTotalCount.get() > 0 ||
                         scoredContentVideosPostIdsCount.get() > 0 ||
                         newVideosPostIdsCount.get() > 0 ||
@@ -1314,46 +1542,51 @@ public class OneGodService {
         ) {
 
             // mandir posts
+            List<Post> mandirPosts = new ArrayList<>();
             addMandirPosts(countOfMandirPostPerIteration,
                     mandirPostsTotalCount,
                     postEntriesByMandir,
                     postEntriesByMandirPtr,
                     postEntriesPtrByMandir,
                     curatedPostIds,
-                    viewedPostIdsForUser,
-                    curatedPosts);
+                    isViewedByUser,
+                    mandirPosts);
+            mandirPosts.forEach(post -> {
+                curatedFeedPostIds.add(post.getPostId());
+                loadedPostsById.put(post.getPostId(), post);
+            });
 
             // scored content video posts
             addContent(countOfScoredVideoPostsPerIteration,
                     scoredContentVideosPostIdsCount,
                     scoredContentVideosPostIds,
                     curatedPostIds,
-                    viewedPostIdsForUser,
-                    curatedPosts);
+                    isViewedByUser,
+                    curatedFeedPostIds);
 
             // scored content audio posts
             addContent(countOfScoredAudioPostsPerIteration,
                     scoredContentAudioPostIdsCount,
                     scoredContentAudioPostIds,
                     curatedPostIds,
-                    viewedPostIdsForUser,
-                    curatedPosts);
+                    isViewedByUser,
+                    curatedFeedPostIds);
 
             // new videos
             addContent(countOfNewVideoPostsPerIteration,
                     newVideosPostIdsCount,
                     newVideosPostIds,
                     curatedPostIds,
-                    viewedPostIdsForUser,
-                    curatedPosts);
+                    isViewedByUser,
+                    curatedFeedPostIds);
 
             // new audio
             addContent(countOfNewAudioPostsPerIteration,
                     newAudioPostIdsCount,
                     newAudioPostIds,
                     curatedPostIds,
-                    viewedPostIdsForUser,
-                    curatedPosts);
+                    isViewedByUser,
+                    curatedFeedPostIds);
         }
     }
 
@@ -1367,7 +1600,7 @@ public class OneGodService {
                                 AtomicInteger postEntriesByMandirPtr,
                                 Map<String, Integer> postEntriesPtrByMandir,
                                 Set<String> curatedPostIds,
-                                Set<String> viewedPostIdsForUser,
+                                Predicate<String> isViewedByUser,
                                 List<Post> curatedPosts) {
 
         List<Post> mandirPosts = new ArrayList<>();
@@ -1382,7 +1615,7 @@ public class OneGodService {
                 entryValuePtr--;
                 postEntriesPtrByMandir.put(entry.getKey(), entryValuePtr);
                 mandirPostsTotalCount.decrementAndGet();
-                if (!viewedPostIdsForUser.contains(post.getPostId()) && !curatedPostIds.contains(post.getPostId())) {
+                if (!isViewedByUser.test(post.getPostId()) && !curatedPostIds.contains(post.getPostId())) {
                     // found mandir post to put
                     mandirPosts.add(post);
                     break;
@@ -1403,44 +1636,84 @@ public class OneGodService {
                            AtomicInteger scoredContentVideosPostIdsCount,
                            List<String> scoredContentVideosPostIds,
                            Set<String> curatedPostIds,
-                           Set<String> viewedPostIdsForUser,
-                           List<Post> curatedPosts) {
+                           Predicate<String> isViewedByUser,
+                           List<String> curatedFeedPostIds) {
         List<String> scoredContentPostIds = new ArrayList<>();
         while (scoredContentPostIds.size() < contentPostCount && scoredContentVideosPostIdsCount.get() > 0) {
             String postId = scoredContentVideosPostIds.get(scoredContentVideosPostIds.size() -
                     scoredContentVideosPostIdsCount.get());
             scoredContentVideosPostIdsCount.decrementAndGet();
 
-            if (!viewedPostIdsForUser.contains(postId) && !curatedPostIds.contains(postId)) {
+            if (!isViewedByUser.test(postId) && !curatedPostIds.contains(postId)) {
                 // found scored content post id to put
                 scoredContentPostIds.add(postId);
             }
         }
         if (!scoredContentPostIds.isEmpty()) {
             curatedPostIds.addAll(scoredContentPostIds);
-            scoredContentPostIds.forEach(scPostId ->
-                    postsDao.getPost(scPostId).ifPresent(curatedPosts::add));
+            curatedFeedPostIds.addAll(scoredContentPostIds);
         }
     }
 
+    /**
+     * @return the posts of the feed in order, the ones not loaded yet are loaded in a single query and the posts
+     * which are not found are left out
+     */
+    private List<Post> loadCuratedPosts(List<String> curatedFeedPostIds, Map<String, Post> loadedPostsById) {
+        List<String> postIdsToLoad = curatedFeedPostIds.stream()
+                .filter(postId -> !loadedPostsById.containsKey(postId))
+                .toList();
+        Map<String, Post> postsById = new HashMap<>(loadedPostsById);
+        // scored and new posts can have been deleted or failed a re-encode since the last rescoring
+        postsDao.getProcessedPostsByIds(postIdsToLoad).forEach(post -> postsById.put(post.getPostId(), post));
+        return curatedFeedPostIds.stream()
+                .map(postsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
     public void addFollowing(Following following) {
-        followingsDao.upsertFollowing(following);
+        followGraphCache.upsertFollowing(following);
+        feedInboxHandler.backfillFollowingAsync(following);
     }
 
     public void removeFollowing(Following following) {
-        followingsDao.removeFollowing(following);
+        followGraphCache.removeFollowing(following);
+        feedInboxHandler.removeFollowing(following);
     }
 
     public List<Following> getFollowingsForUser(String userId) {
-        return followingsDao.getFollowingsForUser(userId);
+        return followGraphCache.getFollowings(userId);
     }
 
-    public void addViewForUser(View view) {
-        viewsDao.upsertView(view);
+    /**
+     * @return false if the view was refused as the views buffer is full
+     */
+    public boolean addViewForUser(View view) {
+        if (!viewsDao.upsertView(view)) {
+            return false;
+        }
+        seenPostsCache.markSeen(view.getUserId(), view.getPostId());
+        return true;
     }
 
-    public void addDarshanViewForUser(DarshanView darshanView) {
-        darshanViewsDao.upsertView(darshanView);
+    public boolean addDarshanViewForUser(DarshanView darshanView) {
+        return darshanViewsDao.upsertView(darshanView);
+    }
+
+    /**
+     * @return false if the views were refused as the views buffer is full, none of them is added then
+     */
+    public boolean addViewsForUser(List<View> views) {
+        if (!viewsDao.upsertViews(views)) {
+            return false;
+        }
+        views.forEach(view -> seenPostsCache.markSeen(view.getUserId(), view.getPostId()));
+        return true;
+    }
+
+    public boolean addDarshanViewsForUser(List<DarshanView> darshanViews) {
+        return darshanViewsDao.upsertViews(darshanViews);
     }
 
     public void initCollsAndIndexes(String registrationToken) {
@@ -1459,13 +1732,15 @@ public class OneGodService {
         userAuthDao.initCollectionAndIndexes();
         userFeaturesDao.initCollectionAndIndexes();
         userRegistrationDao.initCollectionAndIndexes();
+        userFeedInboxDao.initCollectionAndIndexes();
+        curatedFeedCursorDao.initCollectionAndIndexes();
+        uploadSessionDao.initCollectionAndIndexes();
+        seenPostsDao.initCollectionAndIndexes();
+        countersDao.initCollectionAndIndexes();
     }
 
     private Set<String> getFolloweeIdsForUser(String userId, FollowingType followingType) {
-        return followingsDao.getFollowingsForUser(userId, followingType)
-                .stream()
-                .map(Following::getFolloweeId)
-                .collect(Collectors.toSet());
+        return followGraphCache.getFolloweeIds(userId, followingType);
     }
 
     private void checkUserExists(String userId) {
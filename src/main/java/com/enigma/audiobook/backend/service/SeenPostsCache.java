@@ -0,0 +1,162 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.dao.SeenPostsDao;
+import com.enigma.audiobook.backend.dao.ViewsDao;
+import com.google.common.cache.*;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bloom filters of the posts seen by the users, over the 12 bytes of the post ObjectIds. A filter of
+ * EXPECTED_POSTS posts is about 12KB, against the 10k decoded views it replaces per feed request. A false
+ * positive only leaves an unseen post out of the feed.
+ * <p>
+ * The filters are persisted when they leave the cache, with the time up to which they have all the views of
+ * the user. Loading one catches up with the views updated since, so views served by the other nodes are not
+ * missed. Entries are reloaded every RELOAD_AFTER_MINUTES for the same reason.
+ */
+@Slf4j
+@Component
+public class SeenPostsCache {
+    private static final int EXPECTED_POSTS = 10000;
+    private static final double FPP = 0.01;
+    // filled up past its capacity, rebuilt from the latest views
+    private static final double MAX_FPP = 0.05;
+    private static final long RELOAD_AFTER_MINUTES = 30;
+    // views are timestamped when the write behind buffer flushes them
+    private static final long CATCH_UP_OVERLAP_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ViewsDao viewsDao;
+    private final SeenPostsDao seenPostsDao;
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("seen-posts-persist-%d").setDaemon(true).build());
+    private final LoadingCache<String, SeenPosts> cache;
+
+    public SeenPostsCache(ViewsDao viewsDao, SeenPostsDao seenPostsDao,
+                          @Value("${feed-config.seenPostsCacheSize:5000}") long cacheSize) {
+        this.viewsDao = viewsDao;
+        this.seenPostsDao = seenPostsDao;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(RELOAD_AFTER_MINUTES, TimeUnit.MINUTES)
+                .removalListener(RemovalListeners.asynchronous(
+                        (RemovalListener<String, SeenPosts>) removal -> persistIfDirty(removal.getKey(), removal.getValue()),
+                        persistExecutor))
+                .build(CacheLoader.from(this::load));
+    }
+
+    public SeenPosts getSeenPosts(String userId) {
+        return cache.getUnchecked(userId);
+    }
+
+    /**
+     * Only updates a cached filter, an uncached one catches up with the view when it is loaded.
+     */
+    public void markSeen(String userId, String postId) {
+        SeenPosts seenPosts = cache.getIfPresent(userId);
+        if (seenPosts != null) {
+            seenPosts.markSeen(postId);
+        }
+    }
+
+    @PreDestroy
+    public void persistAll() {
+        cache.asMap().forEach(this::persistIfDirty);
+        persistExecutor.shutdown();
+    }
+
+    private SeenPosts load(String userId) {
+        Date loadTime = new Date();
+        Optional<SeenPostsDao.PersistedSeenPosts> persisted = seenPostsDao.getSeenPosts(userId);
+        if (persisted.isPresent()) {
+            BloomFilter<String> filter = readFilter(persisted.get().getFilter());
+            if (filter.expectedFpp() <= MAX_FPP) {
+                Date since = new Date(persisted.get().getCaughtUpTo().getTime() - CATCH_UP_OVERLAP_MS);
+                List<String> newPostIds = viewsDao.getViewedPostIdsForUserSince(userId, since, EXPECTED_POSTS);
+                newPostIds.forEach(filter::put);
+                return new SeenPosts(filter, loadTime, !newPostIds.isEmpty());
+            }
+        }
+
+        BloomFilter<String> filter = BloomFilter.create(PostIdFunnel.INSTANCE, EXPECTED_POSTS, FPP);
+        viewsDao.getViewedPostIdsForUser(userId, EXPECTED_POSTS).forEach(filter::put);
+        log.info("built seen posts of user:{}, approximate count:{}", userId, filter.approximateElementCount());
+        return new SeenPosts(filter, loadTime, true);
+    }
+
+    private void persistIfDirty(String userId, SeenPosts seenPosts) {
+        if (!seenPosts.dirty) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            seenPosts.filter.writeTo(out);
+            seenPostsDao.upsertSeenPosts(userId, out.toByteArray(), seenPosts.caughtUpTo);
+            seenPosts.dirty = false;
+        } catch (IOException | RuntimeException e) {
+            log.error("unable to persist seen posts of user:" + userId, e);
+        }
+    }
+
+    private static BloomFilter<String> readFilter(byte[] bytes) {
+        try {
+            return BloomFilter.readFrom(new ByteArrayInputStream(bytes), PostIdFunnel.INSTANCE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static class SeenPosts {
+        private final BloomFilter<String> filter;
+        // all the views updated before this are in the filter, the later ones only if served by this node
+        private final Date caughtUpTo;
+        private volatile boolean dirty;
+
+        SeenPosts(BloomFilter<String> filter, Date caughtUpTo, boolean dirty) {
+            this.filter = filter;
+            this.caughtUpTo = caughtUpTo;
+            this.dirty = dirty;
+        }
+
+        public boolean isSeen(String postId) {
+            return filter.mightContain(postId);
+        }
+
+        void markSeen(String postId) {
+            if (filter.put(postId)) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Hashes the 12 bytes of the hex post id in place, without decoding it to an ObjectId.
+     */
+    enum PostIdFunnel implements Funnel<String> {
+        INSTANCE;
+
+        @Override
+        public void funnel(String postId, PrimitiveSink into) {
+            for (int i = 0; i + 1 < postId.length(); i += 2) {
+                into.putByte((byte) Integer.parseInt(postId, i, i + 2, 16));
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.enigma.audiobook.backend.utils;
 
 import com.enigma.audiobook.backend.aws.S3UploadHandler;
+import com.enigma.audiobook.backend.aws.models.MPUAbortedReason;
 import com.enigma.audiobook.backend.aws.models.MPURequestStatus;
 import com.enigma.audiobook.backend.aws.models.S3MPUCompleteResponse;
+import com.enigma.audiobook.backend.aws.models.S3MPUCompletedPart;
 import com.enigma.audiobook.backend.aws.models.S3MPUInitiationResponse;
 import com.enigma.audiobook.backend.aws.models.S3MPUPreSignedUrlsResponse;
+import com.enigma.audiobook.backend.dao.UploadSessionDao;
 import com.enigma.audiobook.backend.models.requests.UploadCompletionReq;
 import com.enigma.audiobook.backend.models.requests.UploadFileCompletionReq;
 import com.enigma.audiobook.backend.models.requests.UploadFileInitReq;
@@ -18,10 +21,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
@@ -30,19 +37,24 @@ public class ContentUploadUtils {
     static long ONE_MB = 1024 * 1024;
     static long ONE_GB = ONE_MB * 1024;
     static long allowed_size = 500 * ONE_MB;
-    static long chunk_size = 5 * ONE_MB;
 
 
     S3UploadHandler uploadHandler;
+    UploadSessionDao uploadSessionDao;
     String bucket = "one-god-dev";
     String bucket_url = "https://one-god-dev.s3.ap-south-1.amazonaws.com";
+    long uploadSessionTtlMs;
 
     public ContentUploadUtils(@Autowired S3UploadHandler uploadHandler,
+                              @Autowired UploadSessionDao uploadSessionDao,
                               @Value("${s3-config.bucket_url}") String bucket_url,
-                              @Value("${s3-config.bucket}") String bucket) {
+                              @Value("${s3-config.bucket}") String bucket,
+                              @Value("${s3-config.uploadSessionTtlHours:24}") long uploadSessionTtlHours) {
         this.uploadHandler = uploadHandler;
+        this.uploadSessionDao = uploadSessionDao;
         this.bucket = bucket;
         this.bucket_url = bucket_url;
+        this.uploadSessionTtlMs = TimeUnit.HOURS.toMillis(uploadSessionTtlHours);
     }
 
     public String getObjectUrl(String objectKey) {
@@ -119,8 +131,7 @@ public class ContentUploadUtils {
 
         S3MPUPreSignedUrlsResponse preSignedUrlsResponse =
                 uploadHandler.generatePreSignedS3Urls(bucket, objectKey, response.getUploadId(),
-                        uploadFileInitReq.getTotalSize(),
-                        chunk_size, contentTypeByExtension.getAllowedContentSize());
+                        uploadFileInitReq.getTotalSize(), contentTypeByExtension.getAllowedContentSize());
 
         uploadFileInitRes.setS3MPUPreSignedUrlsResponse(preSignedUrlsResponse);
 
@@ -132,10 +143,90 @@ public class ContentUploadUtils {
             return uploadFileInitRes;
         }
 
+        UploadSessionDao.UploadSession session = new UploadSessionDao.UploadSession();
+        session.setUploadId(response.getUploadId());
+        session.setObjectKey(objectKey);
+        session.setTotalSize(uploadFileInitReq.getTotalSize());
+        session.setChunkSize(preSignedUrlsResponse.getChunkSize());
+        session.setTotalNumOfParts(preSignedUrlsResponse.getTotalNumOfParts());
+        session.setExpiry(new Date(System.currentTimeMillis() + uploadSessionTtlMs));
+        uploadSessionDao.createSession(session);
+
         uploadFileInitRes.setRequestStatus(MPURequestStatus.COMPLETED);
         return uploadFileInitRes;
     }
 
+    /**
+     * Urls of only the parts S3 doesn't have yet, at most MAX_PRESIGNED_PARTS_PER_WINDOW of them. The client
+     * resumes again for the rest.
+     */
+    public UploadFileInitRes resumeUpload(String uploadId) {
+        UploadFileInitRes uploadFileInitRes = new UploadFileInitRes();
+        uploadFileInitRes.setUploadId(uploadId);
+
+        Optional<UploadSessionDao.UploadSession> session = uploadSessionDao.getSession(uploadId)
+                .filter(s -> s.getState() == UploadSessionDao.UploadSessionState.ACTIVE)
+                .filter(s -> s.getExpiry().getTime() > System.currentTimeMillis());
+        if (session.isEmpty()) {
+            log.info("no active upload session for uploadId:{}", uploadId);
+            uploadFileInitRes.setRequestStatus(MPURequestStatus.ABORTED);
+            uploadFileInitRes.setAbortedReason(MPUAbortedReason.URLS_NOT_GENERATED);
+            return uploadFileInitRes;
+        }
+        String objectKey = session.get().getObjectKey();
+        uploadFileInitRes.setObjectKey(objectKey);
+
+        List<Integer> confirmedPartNums = uploadHandler.listUploadedParts(bucket, objectKey, uploadId)
+                .stream()
+                .map(S3MPUCompletedPart::getPartNum)
+                .sorted()
+                .toList();
+        uploadSessionDao.updateConfirmedParts(uploadId, confirmedPartNums,
+                new Date(System.currentTimeMillis() + uploadSessionTtlMs));
+
+        Set<Integer> confirmed = new HashSet<>(confirmedPartNums);
+        List<Integer> missingPartNums = new ArrayList<>();
+        for (int partNum = 1; partNum <= session.get().getTotalNumOfParts() &&
+                missingPartNums.size() < S3UploadHandler.MAX_PRESIGNED_PARTS_PER_WINDOW; partNum++) {
+            if (!confirmed.contains(partNum)) {
+                missingPartNums.add(partNum);
+            }
+        }
+        log.info("resuming uploadId:{}, confirmed parts:{}, missing parts:{}", uploadId,
+                confirmedPartNums.size(), session.get().getTotalNumOfParts() - confirmedPartNums.size());
+
+        // the chunk size of the session, the configured one could have changed since the upload began
+        uploadFileInitRes.setS3MPUPreSignedUrlsResponse(
+                uploadHandler.generatePreSignedS3Urls(bucket, objectKey, uploadId,
+                        session.get().getTotalSize(), session.get().getChunkSize(), missingPartNums));
+        uploadFileInitRes.setRequestStatus(MPURequestStatus.COMPLETED);
+        return uploadFileInitRes;
+    }
+
+    /**
+     * Aborts the multipart uploads of the sessions that expired while still active, S3 keeps and bills for
+     * their parts otherwise.
+     *
+     * @return number of sessions aborted
+     */
+    public int abortExpiredUploads(int limit) {
+        int abortedCount = 0;
+        for (UploadSessionDao.UploadSession session : uploadSessionDao.getExpiredActiveSessions(limit)) {
+            try {
+                uploadHandler.abort(bucket, session.getObjectKey(), session.getUploadId());
+            } catch (NoSuchUploadException e) {
+                log.info("upload already gone, uploadId:{}", session.getUploadId());
+            } catch (RuntimeException e) {
+                // left active, retried in the next run
+                log.error("unable to abort expired upload, uploadId:" + session.getUploadId(), e);
+                continue;
+            }
+            uploadSessionDao.updateState(session.getUploadId(), UploadSessionDao.UploadSessionState.ABORTED);
+            abortedCount++;
+        }
+        return abortedCount;
+    }
+
     private String getContentType(String suffixExtension, ContentTypeByExtension contentTypeByExtension) {
         Map<String, String> fileExtensionToS3ContentType = contentTypeByExtension.getFileExtensionToS3ContentType();
         if (StringUtils.isEmpty(suffixExtension)) {
@@ -145,11 +236,36 @@ public class ContentUploadUtils {
                 .orElse(fileExtensionToS3ContentType.get("*"));
     }
 
+    /**
+     * Urls of a window of parts of an active upload. The key, size and chunk size come from the upload session,
+     * the ones of the request are only checked against it.
+     */
+    public S3MPUPreSignedUrlsResponse getPreSignedUrls(String objectKey, String uploadId, long totalSize,
+                                                       int fromPartNum, int count) {
+        UploadSessionDao.UploadSession session = uploadSessionDao.getSession(uploadId)
+                .filter(s -> s.getState() == UploadSessionDao.UploadSessionState.ACTIVE)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "no active upload session for uploadId:" + uploadId));
+        if (!session.getObjectKey().equals(objectKey) || session.getTotalSize() != totalSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("objectKey:%s, totalSize:%s not of the uploadId:%s", objectKey, totalSize, uploadId));
+        }
+
+        try {
+            return uploadHandler.generatePreSignedS3UrlsWindow(bucket, session.getObjectKey(), uploadId,
+                    session.getTotalSize(), session.getChunkSize(), fromPartNum, count);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
     public void abortAllCompletionReq(UploadCompletionReq uploadCompletionReq) {
         for (UploadFileCompletionReq uploadFileCompletionReq : uploadCompletionReq.getUploadFileCompletionReqs()) {
             uploadHandler.abort(bucket,
                     uploadFileCompletionReq.getObjectKey(),
                     uploadFileCompletionReq.getUploadId());
+            uploadSessionDao.updateState(uploadFileCompletionReq.getUploadId(),
+                    UploadSessionDao.UploadSessionState.ABORTED);
         }
     }
 
@@ -184,6 +300,10 @@ public class ContentUploadUtils {
                 uploadFileCompletionReq.getUploadId(),
                 uploadFileCompletionReq.getS3MPUCompletedParts(),
                 contentTypeByExtension.getAllowedContentSize());
+        uploadSessionDao.updateState(uploadFileCompletionReq.getUploadId(),
+                s3MPUCompleteResponse.getState().equals(MPURequestStatus.COMPLETED) ?
+                        UploadSessionDao.UploadSessionState.COMPLETED :
+                        UploadSessionDao.UploadSessionState.ABORTED);
         UploadFileCompletionRes res = new UploadFileCompletionRes();
         res.setS3MPUCompleteResponse(s3MPUCompleteResponse);
         return res;
@@ -0,0 +1,176 @@
+package com.enigma.audiobook.backend.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonTimestamp;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+
+/**
+ * Decodes BSON straight into the jackson mapped models, without rendering the document to an extended json
+ * string first. The BSON values are streamed into a jackson token buffer in the same shape as the relaxed
+ * extended json the driver would have written ({"$oid": ..}, {"$date": ..}), so the existing model
+ * annotations and the ObjectIdDeserializer keep working unchanged.
+ */
+public class JacksonBsonCodecProvider implements CodecProvider {
+    private static final String MODELS_PACKAGE = "com.enigma.audiobook.backend.models";
+    private static final long MAX_ISO_DATE_MILLIS = 253402300799999L;
+
+    private final SerDe serde;
+
+    public JacksonBsonCodecProvider(SerDe serde) {
+        this.serde = serde;
+    }
+
+    @Override
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        // enums are left to the driver's enum codec, filters are built with them
+        if (clazz.isEnum() || !clazz.getPackageName().startsWith(MODELS_PACKAGE)) {
+            return null;
+        }
+        return new JacksonBsonCodec<>(clazz, serde, registry.get(Document.class));
+    }
+
+    static class JacksonBsonCodec<T> implements Codec<T> {
+        private final Class<T> clazz;
+        private final SerDe serde;
+        private final Codec<Document> documentCodec;
+
+        JacksonBsonCodec(Class<T> clazz, SerDe serde, Codec<Document> documentCodec) {
+            this.clazz = clazz;
+            this.serde = serde;
+            this.documentCodec = documentCodec;
+        }
+
+        @Override
+        public T decode(BsonReader reader, DecoderContext decoderContext) {
+            TokenBuffer buffer = serde.newTokenBuffer();
+            try {
+                writeDocument(reader, buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return serde.fromTokenBuffer(buffer, clazz);
+        }
+
+        @Override
+        public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+            documentCodec.encode(writer, serde.toDocument(value), encoderContext);
+        }
+
+        @Override
+        public Class<T> getEncoderClass() {
+            return clazz;
+        }
+
+        private static void writeDocument(BsonReader reader, JsonGenerator gen) throws IOException {
+            reader.readStartDocument();
+            gen.writeStartObject();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                gen.writeFieldName(reader.readName());
+                writeValue(reader, gen);
+            }
+            reader.readEndDocument();
+            gen.writeEndObject();
+        }
+
+        private static void writeValue(BsonReader reader, JsonGenerator gen) throws IOException {
+            switch (reader.getCurrentBsonType()) {
+                case DOCUMENT:
+                    writeDocument(reader, gen);
+                    break;
+                case ARRAY:
+                    reader.readStartArray();
+                    gen.writeStartArray();
+                    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                        writeValue(reader, gen);
+                    }
+                    reader.readEndArray();
+                    gen.writeEndArray();
+                    break;
+                case STRING:
+                    gen.writeString(reader.readString());
+                    break;
+                case OBJECT_ID:
+                    gen.writeStartObject();
+                    gen.writeStringField("$oid", reader.readObjectId().toHexString());
+                    gen.writeEndObject();
+                    break;
+                case BOOLEAN:
+                    gen.writeBoolean(reader.readBoolean());
+                    break;
+                case INT32:
+                    gen.writeNumber(reader.readInt32());
+                    break;
+                case INT64:
+                    gen.writeNumber(reader.readInt64());
+                    break;
+                case DOUBLE:
+                    gen.writeNumber(reader.readDouble());
+                    break;
+                case DECIMAL128:
+                    gen.writeStartObject();
+                    gen.writeStringField("$numberDecimal", reader.readDecimal128().toString());
+                    gen.writeEndObject();
+                    break;
+                case DATE_TIME:
+                    writeDate(reader.readDateTime(), gen);
+                    break;
+                case BINARY:
+                    BsonBinary binary = reader.readBinaryData();
+                    gen.writeStartObject();
+                    gen.writeObjectFieldStart("$binary");
+                    gen.writeStringField("base64", Base64.getEncoder().encodeToString(binary.getData()));
+                    gen.writeStringField("subType", String.format("%02X", binary.getType()));
+                    gen.writeEndObject();
+                    gen.writeEndObject();
+                    break;
+                case TIMESTAMP:
+                    BsonTimestamp timestamp = reader.readTimestamp();
+                    gen.writeStartObject();
+                    gen.writeObjectFieldStart("$timestamp");
+                    gen.writeNumberField("t", timestamp.getTime());
+                    gen.writeNumberField("i", timestamp.getInc());
+                    gen.writeEndObject();
+                    gen.writeEndObject();
+                    break;
+                case NULL:
+                    reader.readNull();
+                    gen.writeNull();
+                    break;
+                default:
+                    // none of the models map these types
+                    reader.skipValue();
+                    gen.writeNull();
+            }
+        }
+
+        private static void writeDate(long millis, JsonGenerator gen) throws IOException {
+            gen.writeStartObject();
+            if (millis >= 0 && millis <= MAX_ISO_DATE_MILLIS) {
+                gen.writeStringField("$date", DateTimeFormatter.ISO_OFFSET_DATE_TIME
+                        .format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC)));
+            } else {
+                gen.writeObjectFieldStart("$date");
+                gen.writeStringField("$numberLong", Long.toString(millis));
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package com.enigma.audiobook.backend.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.bson.Document;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
 
 public class SerDe {
 
     private static final ObjectMapper om = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
     static {
         om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
@@ -26,4 +36,23 @@ public class SerDe {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Same fields as Document.parse(toJson(obj)) but converted in memory, without an intermediate json string.
+     */
+    public Document toDocument(Object obj) {
+        return new Document(om.convertValue(obj, MAP_TYPE));
+    }
+
+    public TokenBuffer newTokenBuffer() {
+        return new TokenBuffer(om, false);
+    }
+
+    public <T> T fromTokenBuffer(TokenBuffer buffer, Class<T> clazz) {
+        try {
+            return om.readValue(buffer.asParser(om), clazz);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
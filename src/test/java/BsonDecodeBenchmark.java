@@ -0,0 +1,89 @@
+import com.enigma.audiobook.backend.models.Post;
+import com.enigma.audiobook.backend.utils.JacksonBsonCodecProvider;
+import com.enigma.audiobook.backend.utils.SerDe;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a Posts document through Document.toJson + jackson (the old DAO read path) with the
+ * BSON codec path. Both start from the raw BSON as it comes off the wire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BsonDecodeBenchmark {
+    private static final SerDe serde = new SerDe();
+
+    private RawBsonDocument rawPost;
+    private Codec<Document> documentCodec;
+    private Codec<Post> postCodec;
+
+    @Setup
+    public void setup() {
+        CodecRegistry registry = CodecRegistries.fromRegistries(
+                MongoClientSettings.getDefaultCodecRegistry(),
+                CodecRegistries.fromProviders(new JacksonBsonCodecProvider(serde)));
+        documentCodec = registry.get(Document.class);
+        postCodec = registry.get(Post.class);
+
+        Document post = new Document("_id", new ObjectId())
+                .append("createTime", new Date())
+                .append("updateTime", new Date())
+                .append("associatedMandirId", new ObjectId())
+                .append("fromUserId", new ObjectId())
+                .append("tag", "SHIVA")
+                .append("associationType", "MANDIR")
+                .append("type", "VIDEO")
+                .append("title", "Shiva ji ki pooja ka tarika")
+                .append("description", "Ye video mai shiva ji ki pooja ka tarika dekhiye")
+                .append("videoUrl", "https://one-god-dev.s3.ap-south-1.amazonaws.com/posts/videos/user/" +
+                        "65a7936792bb9e2f44a1ea47/video/65c25f30b0ba6251a747e6ee/hls/master.m3u8")
+                .append("contentUploadStatus", "PROCESSED")
+                .append("initMetadata", Map.of("user-agent", "okhttp/4.12.0", "remote-addr", "10.0.0.1"))
+                .append("isDeleted", false);
+        rawPost = new RawBsonDocument(post, documentCodec);
+    }
+
+    @Benchmark
+    public void documentToJsonThenJackson(Blackhole bh) {
+        Document doc = documentCodec.decode(reader(), DecoderContext.builder().build());
+        bh.consume(serde.fromJson(doc.toJson(), Post.class));
+    }
+
+    @Benchmark
+    public void bsonCodec(Blackhole bh) {
+        bh.consume(postCodec.decode(reader(), DecoderContext.builder().build()));
+    }
+
+    private BsonBinaryReader reader() {
+        return new BsonBinaryReader(rawPost.getByteBuffer().asNIO());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BsonDecodeBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
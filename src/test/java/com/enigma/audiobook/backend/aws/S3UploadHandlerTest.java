@@ -0,0 +1,64 @@
+package com.enigma.audiobook.backend.aws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class S3UploadHandlerTest {
+    private static final long ONE_MB = 1024 * 1024;
+
+    // chunk sizes and windows don't reach S3
+    private final S3UploadHandler uploadHandler = new S3UploadHandler(null, 100, 100);
+
+    @Test
+    void singlePartUpToMaxSize() {
+        assertEquals(1, uploadHandler.getChunkSize(0));
+        assertEquals(10 * ONE_MB, uploadHandler.getChunkSize(10 * ONE_MB));
+        assertEquals(16 * ONE_MB, uploadHandler.getChunkSize(16 * ONE_MB));
+        assertEquals(1, uploadHandler.getNumOfChunks(16 * ONE_MB, uploadHandler.getChunkSize(16 * ONE_MB)));
+    }
+
+    @Test
+    void chunkSizeNotBelowS3Minimum() {
+        assertEquals(5 * ONE_MB, uploadHandler.getChunkSize(16 * ONE_MB + 1));
+        assertEquals(5 * ONE_MB, uploadHandler.getChunkSize(100 * ONE_MB));
+    }
+
+    @Test
+    void chunkSizeGrowsToTargetNumOfPartsInWholeMbs() {
+        long totalSize = 2048 * ONE_MB;
+        long chunkSize = uploadHandler.getChunkSize(totalSize);
+
+        assertEquals(21 * ONE_MB, chunkSize);
+        assertEquals(98, uploadHandler.getNumOfChunks(totalSize, chunkSize));
+    }
+
+    @Test
+    void windowCappedAtMaxPartsPerWindow() {
+        List<Integer> partNums = uploadHandler.getPartNumsWindow(250, 1, 500);
+
+        assertEquals(range(1, S3UploadHandler.MAX_PRESIGNED_PARTS_PER_WINDOW), partNums);
+    }
+
+    @Test
+    void windowEndsAtLastPart() {
+        assertEquals(range(240, 250), uploadHandler.getPartNumsWindow(250, 240, 50));
+        assertEquals(List.of(250), uploadHandler.getPartNumsWindow(250, 250, 1));
+    }
+
+    @Test
+    void windowOutOfTheUploadRejected() {
+        assertThrows(IllegalArgumentException.class, () -> uploadHandler.getPartNumsWindow(250, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> uploadHandler.getPartNumsWindow(250, 251, 10));
+        assertThrows(IllegalArgumentException.class, () -> uploadHandler.getPartNumsWindow(250, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> uploadHandler.getPartNumsWindow(250, 1, -1));
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.rangeClosed(from, to).boxed().toList();
+    }
+}
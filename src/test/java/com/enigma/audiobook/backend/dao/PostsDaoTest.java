@@ -0,0 +1,149 @@
+package com.enigma.audiobook.backend.dao;
+
+import com.enigma.audiobook.backend.models.*;
+import com.enigma.audiobook.backend.utils.JacksonBsonCodecProvider;
+import com.enigma.audiobook.backend.utils.SerDe;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.*;
+import org.bson.*;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The aggregation runs on a mocked collection, which returns the groups mongo makes of the posts for each
+ * branch of the pipeline.
+ */
+class PostsDaoTest {
+    private static final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(
+            MongoClientSettings.getDefaultCodecRegistry(),
+            CodecRegistries.fromProviders(new JacksonBsonCodecProvider(new SerDe())));
+
+    private final String followedInfluencerId = new ObjectId().toHexString();
+    private final String otherInfluencerId = new ObjectId().toHexString();
+
+    @Test
+    void postOfFollowedInfluencerAssociatedToAnotherNotShadowed() {
+        // from the followed influencer, associated to the other one
+        Post post = newInfluencerPost(followedInfluencerId, otherInfluencerId);
+        MongoCollection<Document> collection = mockCollection(List.of(
+                // grouped by associatedInfluencerId
+                group(otherInfluencerId, post),
+                // grouped by fromUserId
+                group(followedInfluencerId, post)));
+        PostsDao postsDao = newPostsDao(collection);
+
+        Map<String, List<Post>> postsById = postsDao.getPostsForAssociations(Set.of(followedInfluencerId),
+                PostAssociationType.INFLUENCER, 10);
+
+        assertEquals(Set.of(followedInfluencerId), postsById.keySet());
+        assertEquals(List.of(post.getPostId()), getPostIds(postsById.get(followedInfluencerId)));
+    }
+
+    @Test
+    void postInBothBranchesReturnedOnce() {
+        Post ownPost = newInfluencerPost(followedInfluencerId, followedInfluencerId);
+        Post associatedPost = newInfluencerPost(otherInfluencerId, followedInfluencerId);
+        MongoCollection<Document> collection = mockCollection(List.of(
+                group(followedInfluencerId, associatedPost, ownPost),
+                group(followedInfluencerId, ownPost)));
+        PostsDao postsDao = newPostsDao(collection);
+
+        Map<String, List<Post>> postsById = postsDao.getPostsForAssociations(Set.of(followedInfluencerId),
+                PostAssociationType.INFLUENCER, 10);
+
+        // newest first
+        assertEquals(List.of(associatedPost.getPostId(), ownPost.getPostId()),
+                getPostIds(postsById.get(followedInfluencerId)));
+    }
+
+    @Test
+    void influencerPostsGroupedByAssociationAndByPostingUser() {
+        MongoCollection<Document> collection = mockCollection(List.of());
+        PostsDao postsDao = newPostsDao(collection);
+
+        postsDao.getPostsForAssociations(Set.of(followedInfluencerId), PostAssociationType.INFLUENCER, 10);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Bson>> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(collection).aggregate(pipeline.capture(), eq(RawBsonDocument.class));
+        String stages = pipeline.getValue().stream()
+                .map(stage -> stage.toBsonDocument(BsonDocument.class, CODEC_REGISTRY).toJson())
+                .collect(Collectors.joining());
+        assertTrue(stages.contains("\"_id\": \"$associatedInfluencerId\""), stages);
+        assertTrue(stages.contains("\"_id\": \"$fromUserId\""), stages);
+    }
+
+    private static PostsDao newPostsDao(MongoCollection<Document> collection) {
+        MongoClient mongoClient = mock(MongoClient.class);
+        MongoDatabase db = mock(MongoDatabase.class);
+        when(mongoClient.getDatabase("test")).thenReturn(db);
+        when(db.getCollection(anyString())).thenReturn(collection);
+        return new PostsDao(mongoClient, "test", mock(CountersDao.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<Document> mockCollection(List<RawBsonDocument> groups) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        AggregateIterable<RawBsonDocument> aggregateIterable = mock(AggregateIterable.class);
+        MongoCursor<RawBsonDocument> cursor = mock(MongoCursor.class);
+        Iterator<RawBsonDocument> iter = groups.iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> iter.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iter.next());
+        when(aggregateIterable.iterator()).thenReturn(cursor);
+        when(collection.aggregate(anyList(), eq(RawBsonDocument.class))).thenReturn(aggregateIterable);
+        when(collection.getCodecRegistry()).thenReturn(CODEC_REGISTRY);
+        return collection;
+    }
+
+    private static RawBsonDocument group(String key, Post... posts) {
+        BsonArray postDocs = new BsonArray();
+        for (Post post : posts) {
+            postDocs.add(toStoredDocument(post));
+        }
+        BsonDocument group = new BsonDocument("_id", new BsonObjectId(new ObjectId(key)))
+                .append("posts", postDocs);
+        return new RawBsonDocument(group, new BsonDocumentCodec());
+    }
+
+    /**
+     * The post as PostsDao.initPost stores it.
+     */
+    private static BsonDocument toStoredDocument(Post post) {
+        Document doc = new SerDe().toDocument(post)
+                .append("_id", new ObjectId(post.getPostId()))
+                .append("associatedInfluencerId", new ObjectId(post.getAssociatedInfluencerId()))
+                .append("fromUserId", new ObjectId(post.getFromUserId()))
+                .append("isDeleted", false);
+        return doc.toBsonDocument(BsonDocument.class, CODEC_REGISTRY);
+    }
+
+    private static Post newInfluencerPost(String fromUserId, String associatedInfluencerId) {
+        Post post = new Post();
+        post.setPostId(new ObjectId().toHexString());
+        post.setType(PostType.TEXT);
+        post.setAssociationType(PostAssociationType.INFLUENCER);
+        post.setAssociatedInfluencerId(associatedInfluencerId);
+        post.setFromUserId(fromUserId);
+        post.setContentUploadStatus(ContentUploadStatus.PROCESSED);
+        return post;
+    }
+
+    private static List<String> getPostIds(List<Post> posts) {
+        return posts.stream().map(Post::getPostId).toList();
+    }
+}
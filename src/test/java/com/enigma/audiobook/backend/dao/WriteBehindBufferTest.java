@@ -0,0 +1,146 @@
+package com.enigma.audiobook.backend.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindBufferTest {
+    // long enough for the periodic flush not to run within a test
+    private static final long FLUSH_INTERVAL_MS = 60_000;
+
+    @Test
+    void writesOfSameKeyCoalesced() {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (WriteBehindBuffer<String, Integer> buffer = newBuffer(1, 10, 100, 3, batches::add)) {
+            buffer.add("a", 1);
+            buffer.add("a", 2);
+            buffer.add("b", 5);
+            assertEquals(2, buffer.getPendingCount());
+
+            buffer.flushAll();
+        }
+
+        assertEquals(1, batches.size());
+        assertEquals(List.of(3, 5), batches.get(0).stream().sorted().toList());
+    }
+
+    @Test
+    void shardFlushedOnBatchSize() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (WriteBehindBuffer<String, Integer> buffer = newBuffer(1, 3, 100, 3, batch -> {
+            batches.add(batch);
+            written.countDown();
+        })) {
+            buffer.add("a", 1);
+            buffer.add("b", 1);
+            assertEquals(1, written.getCount());
+
+            buffer.add("c", 1);
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            assertEquals(3, batches.get(0).size());
+        }
+    }
+
+    @Test
+    void failedBatchRequeuedAndMergedWithNewWrites() {
+        AtomicInteger failures = new AtomicInteger(1);
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (WriteBehindBuffer<String, Integer> buffer = newBuffer(1, 10, 100, 3, batch -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new RuntimeException("write failed");
+            }
+            batches.add(batch);
+        })) {
+            buffer.add("a", 1);
+            buffer.flushAll();
+            assertEquals(1, buffer.getPendingCount());
+
+            buffer.add("a", 2);
+            buffer.flushAll();
+
+            assertEquals(0, buffer.getPendingCount());
+            assertEquals(0, buffer.getDroppedCount());
+        }
+
+        assertEquals(List.of(List.of(3)), batches);
+    }
+
+    @Test
+    void failedBatchDroppedAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        try (WriteBehindBuffer<String, Integer> buffer = newBuffer(1, 10, 100, 2, batch -> {
+            attempts.incrementAndGet();
+            throw new RuntimeException("write failed");
+        })) {
+            buffer.add("a", 1);
+            buffer.flushAll();
+            buffer.flushAll();
+            buffer.flushAll();
+
+            assertEquals(2, attempts.get());
+            assertEquals(0, buffer.getPendingCount());
+            assertEquals(1, buffer.getDroppedCount());
+        }
+    }
+
+    @Test
+    void newKeysDroppedWhenFull() {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocked = new CountDownLatch(1);
+        try (WriteBehindBuffer<String, Integer> buffer = newBuffer(1, 10, 2, 3, batch -> {
+            awaitQuietly(blocked);
+            batches.add(batch);
+        })) {
+            assertTrue(buffer.add("a", 1));
+            assertTrue(buffer.add("b", 1));
+            assertFalse(buffer.add("c", 1));
+            // a pending key still takes writes
+            assertTrue(buffer.add("a", 1));
+
+            assertEquals(1, buffer.getDroppedCount());
+            blocked.countDown();
+        }
+
+        // the write to a is merged or written in a later batch, depending on when the flush took the shard
+        assertEquals(3, batches.stream().flatMap(List::stream).mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void batchTakenInWholeOrRefused() {
+        try (WriteBehindBuffer<String, Integer> buffer = newBuffer(1, 10, 3, 3, batch -> {
+        })) {
+            assertTrue(buffer.add("k1", 1));
+
+            assertFalse(buffer.addAll(List.of(2, 3, 4), value -> "k" + value));
+            assertEquals(1, buffer.getPendingCount());
+            assertEquals(3, buffer.getDroppedCount());
+
+            // room is reserved for every write, the one merged into k1 gives its room back
+            assertTrue(buffer.addAll(List.of(1, 2), value -> "k" + value));
+            assertEquals(2, buffer.getPendingCount());
+        }
+    }
+
+    private static WriteBehindBuffer<String, Integer> newBuffer(int numOfShards, int batchSize, int maxPending,
+                                                                int maxAttempts, Consumer<List<Integer>> writer) {
+        return new WriteBehindBuffer<>("test", numOfShards, batchSize, maxPending, maxAttempts, FLUSH_INTERVAL_MS,
+                Integer::sum, writer);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
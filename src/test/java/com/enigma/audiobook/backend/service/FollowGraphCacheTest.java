@@ -0,0 +1,75 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.dao.FollowingsDao;
+import com.enigma.audiobook.backend.models.Following;
+import com.enigma.audiobook.backend.models.FollowingType;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FollowGraphCacheTest {
+    private static final String USER_ID = new ObjectId().toHexString();
+
+    private final FollowingsDao followingsDao = mock(FollowingsDao.class);
+    private final FollowGraphCache followGraphCache = new FollowGraphCache(followingsDao, 10);
+
+    @Test
+    void writesAppliedToCachedEntry() {
+        Following followed = newFollowing(FollowingType.GOD);
+        Following unfollowed = newFollowing(FollowingType.MANDIR);
+        when(followingsDao.getFollowingsForUser(USER_ID)).thenReturn(List.of(unfollowed));
+        followGraphCache.getFollowings(USER_ID);
+
+        followGraphCache.upsertFollowing(followed);
+        followGraphCache.removeFollowing(unfollowed);
+
+        assertEquals(Set.of(followed.getFolloweeId()), followGraphCache.getFolloweeIds(USER_ID, FollowingType.GOD));
+        assertFalse(followGraphCache.isFollowing(USER_ID, unfollowed.getFolloweeId(), FollowingType.MANDIR));
+        verify(followingsDao, times(1)).getFollowingsForUser(USER_ID);
+    }
+
+    @Test
+    void entryLoadedConcurrentlyWithWriteReloaded() throws Exception {
+        Following followed = newFollowing(FollowingType.GOD);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        when(followingsDao.getFollowingsForUser(USER_ID))
+                .thenAnswer(invocation -> {
+                    // read from mongo before the write
+                    loading.countDown();
+                    assertTrue(written.await(5, TimeUnit.SECONDS));
+                    return List.of();
+                })
+                .thenReturn(List.of(followed));
+        doAnswer(invocation -> {
+            written.countDown();
+            return null;
+        }).when(followingsDao).upsertFollowing(followed);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Following>> inFlightRead = executor.submit(() -> followGraphCache.getFollowings(USER_ID));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            followGraphCache.upsertFollowing(followed);
+            inFlightRead.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(followGraphCache.isFollowing(USER_ID, followed.getFolloweeId(), FollowingType.GOD));
+    }
+
+    private static Following newFollowing(FollowingType followingType) {
+        Following following = new Following();
+        following.setFollowerUserId(USER_ID);
+        following.setFolloweeId(new ObjectId().toHexString());
+        following.setFollowingType(followingType);
+        return following;
+    }
+}
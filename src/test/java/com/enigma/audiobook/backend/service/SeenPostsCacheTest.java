@@ -0,0 +1,119 @@
+package com.enigma.audiobook.backend.service;
+
+import com.enigma.audiobook.backend.dao.SeenPostsDao;
+import com.enigma.audiobook.backend.dao.ViewsDao;
+import com.google.common.hash.BloomFilter;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SeenPostsCacheTest {
+    private static final String USER_ID = new ObjectId().toHexString();
+    // EXPECTED_POSTS of SeenPostsCache
+    private static final int EXPECTED_POSTS = 10000;
+
+    private final ViewsDao viewsDao = mock(ViewsDao.class);
+    private final SeenPostsDao seenPostsDao = mock(SeenPostsDao.class);
+    private final SeenPostsCache seenPostsCache = new SeenPostsCache(viewsDao, seenPostsDao, 10);
+
+    @Test
+    void viewedPostsAlwaysSeen() {
+        List<String> viewedPostIds = newPostIds(EXPECTED_POSTS);
+        when(seenPostsDao.getSeenPosts(USER_ID)).thenReturn(Optional.empty());
+        when(viewsDao.getViewedPostIdsForUser(eq(USER_ID), anyInt())).thenReturn(viewedPostIds);
+
+        SeenPostsCache.SeenPosts seenPosts = seenPostsCache.getSeenPosts(USER_ID);
+
+        assertTrue(viewedPostIds.stream().allMatch(seenPosts::isSeen));
+    }
+
+    @Test
+    void falsePositivesWithinFppAtCapacity() {
+        when(seenPostsDao.getSeenPosts(USER_ID)).thenReturn(Optional.empty());
+        when(viewsDao.getViewedPostIdsForUser(eq(USER_ID), anyInt())).thenReturn(newPostIds(EXPECTED_POSTS));
+
+        SeenPostsCache.SeenPosts seenPosts = seenPostsCache.getSeenPosts(USER_ID);
+        long falsePositives = newPostIds(EXPECTED_POSTS).stream().filter(seenPosts::isSeen).count();
+
+        // FPP of 1%, with room for the variance of the sample
+        assertTrue(falsePositives < EXPECTED_POSTS * 0.02, "false positives:" + falsePositives);
+    }
+
+    @Test
+    void persistedFilterCaughtUpWithLaterViews() throws IOException {
+        String persistedPostId = new ObjectId().toHexString();
+        String laterPostId = new ObjectId().toHexString();
+        BloomFilter<String> filter = newFilter();
+        filter.put(persistedPostId);
+        when(seenPostsDao.getSeenPosts(USER_ID)).thenReturn(Optional.of(
+                new SeenPostsDao.PersistedSeenPosts(toBytes(filter), new Date())));
+        when(viewsDao.getViewedPostIdsForUserSince(eq(USER_ID), any(), anyInt())).thenReturn(List.of(laterPostId));
+
+        SeenPostsCache.SeenPosts seenPosts = seenPostsCache.getSeenPosts(USER_ID);
+
+        assertTrue(seenPosts.isSeen(persistedPostId));
+        assertTrue(seenPosts.isSeen(laterPostId));
+        verify(viewsDao, never()).getViewedPostIdsForUser(any(), anyInt());
+    }
+
+    @Test
+    void overfilledFilterRebuiltFromLatestViews() throws IOException {
+        BloomFilter<String> overfilled = newFilter();
+        List<String> oldPostIds = newPostIds(3 * EXPECTED_POSTS);
+        oldPostIds.forEach(overfilled::put);
+        List<String> latestPostIds = newPostIds(100);
+        when(seenPostsDao.getSeenPosts(USER_ID)).thenReturn(Optional.of(
+                new SeenPostsDao.PersistedSeenPosts(toBytes(overfilled), new Date())));
+        when(viewsDao.getViewedPostIdsForUser(eq(USER_ID), anyInt())).thenReturn(latestPostIds);
+
+        SeenPostsCache.SeenPosts seenPosts = seenPostsCache.getSeenPosts(USER_ID);
+
+        assertTrue(latestPostIds.stream().allMatch(seenPosts::isSeen));
+        long oldStillSeen = oldPostIds.subList(0, 1000).stream().filter(seenPosts::isSeen).count();
+        assertTrue(oldStillSeen < 50, "old posts still seen:" + oldStillSeen);
+        verify(viewsDao, never()).getViewedPostIdsForUserSince(any(), any(), anyInt());
+    }
+
+    @Test
+    void markSeenOfUncachedUserNotLoaded() {
+        seenPostsCache.markSeen(USER_ID, new ObjectId().toHexString());
+
+        verifyNoInteractions(viewsDao, seenPostsDao);
+    }
+
+    @Test
+    void markSeenOfCachedUser() {
+        String postId = new ObjectId().toHexString();
+        when(seenPostsDao.getSeenPosts(USER_ID)).thenReturn(Optional.empty());
+        when(viewsDao.getViewedPostIdsForUser(eq(USER_ID), anyInt())).thenReturn(List.of());
+        SeenPostsCache.SeenPosts seenPosts = seenPostsCache.getSeenPosts(USER_ID);
+
+        seenPostsCache.markSeen(USER_ID, postId);
+
+        assertTrue(seenPosts.isSeen(postId));
+    }
+
+    private static BloomFilter<String> newFilter() {
+        return BloomFilter.create(SeenPostsCache.PostIdFunnel.INSTANCE, EXPECTED_POSTS, 0.01);
+    }
+
+    private static byte[] toBytes(BloomFilter<String> filter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static List<String> newPostIds(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new ObjectId().toHexString()).toList();
+    }
+}